@@ -0,0 +1,241 @@
+package org.schabi.newpipe.database
+
+import android.content.Context
+import android.os.Build
+import android.util.Log
+import androidx.room.Room
+import androidx.test.core.app.ApplicationProvider
+import androidx.test.platform.app.InstrumentationRegistry
+import org.json.JSONObject
+import org.junit.AfterClass
+import org.junit.Assert.assertTrue
+import org.junit.Assume.assumeTrue
+import org.junit.BeforeClass
+import org.junit.Test
+import org.schabi.newpipe.database.feed.model.FeedEntity
+import org.schabi.newpipe.database.feed.model.FeedGroupEntity
+import org.schabi.newpipe.database.history.model.StreamHistoryEntity
+import org.schabi.newpipe.database.playlist.model.PlaylistEntity
+import org.schabi.newpipe.database.playlist.model.PlaylistStreamEntity
+import org.schabi.newpipe.database.stream.model.StreamEntity
+import org.schabi.newpipe.database.stream.model.StreamStateEntity
+import org.schabi.newpipe.database.subscription.SubscriptionEntity
+import org.schabi.newpipe.extractor.ServiceList
+import org.schabi.newpipe.extractor.stream.StreamType
+import java.io.File
+import java.time.OffsetDateTime
+
+/**
+ * Measures the queries which get slow as the database grows, on a database filled with
+ * [SUBSCRIPTIONS] subscriptions, [STREAMS] streams in their feeds and [HISTORY_ENTRIES] history
+ * entries. Every benchmark is run [WARMUP_ITERATIONS] times before being timed
+ * [MEASURED_ITERATIONS] times.
+ *
+ * Filling the database takes a while, so the benchmarks are skipped unless they are enabled
+ * explicitly:
+ * ```
+ * ./gradlew connectedDebugAndroidTest \
+ *     -Pandroid.testInstrumentationRunnerArguments.class=org.schabi.newpipe.database.DatabaseBenchmarkTest \
+ *     -Pandroid.testInstrumentationRunnerArguments.benchmark=true
+ * ```
+ * A benchmark fails if its median is more than [MAX_REGRESSION] times the one in
+ * `app/src/androidTest/assets/database_benchmark_baseline.json`, which names the device it was
+ * measured on. The committed baseline holds conservative upper bounds, since no device was
+ * available to measure it, so it only catches big regressions.
+ *
+ * The medians are logged and written in the same format to `database_benchmark.json` in the
+ * external files directory of the app. To check a change more closely, pull this file after
+ * running the benchmarks on the same device without the change and use it as the baseline.
+ */
+class DatabaseBenchmarkTest {
+
+    @Test
+    fun feedGetStreams() = benchmark("feedGetStreams") {
+        db.feedDAO().getStreams(FeedGroupEntity.GROUP_ALL_ID, false, true, null).blockingGet()
+    }
+
+    @Test
+    fun feedUnlinkStreamsOlderThan() = benchmark("feedUnlinkStreamsOlderThan") {
+        rollingBack { db.feedDAO().unlinkStreamsOlderThan(BASE_DATE.minusDays(30)) }
+    }
+
+    @Test
+    fun streamDeleteOrphans() = benchmark("streamDeleteOrphans") {
+        rollingBack {
+            db.feedDAO().unlinkStreamsOlderThan(BASE_DATE.minusDays(30))
+            db.streamDAO().deleteOrphans()
+        }
+    }
+
+    @Test
+    fun streamHistoryGetStatistics() = benchmark("streamHistoryGetStatistics") {
+        db.streamHistoryDAO().statistics.blockingFirst()
+    }
+
+    @Test
+    fun playlistGetOrderedStreamsOf() = benchmark("playlistGetOrderedStreamsOf") {
+        db.playlistStreamDAO().getOrderedStreamsOf(playlistId).blockingFirst()
+    }
+
+    @Test
+    fun subscriptionGetSubscription() = benchmark("subscriptionGetSubscription") {
+        // like opening [SUBSCRIPTION_LOOKUPS] channel pages
+        for (i in 1..SUBSCRIPTIONS step SUBSCRIPTIONS / SUBSCRIPTION_LOOKUPS) {
+            db.subscriptionDAO()
+                .getSubscription(ServiceList.YouTube.serviceId, channelUrl(i))
+                .blockingGet()
+        }
+    }
+
+    @Test
+    fun subscriptionUpsertAll() = benchmark("subscriptionUpsertAll") {
+        // like importing the subscriptions again
+        rollingBack { db.subscriptionDAO().upsertAll(subscriptions) }
+    }
+
+    private fun benchmark(name: String, block: () -> Unit) {
+        repeat(WARMUP_ITERATIONS) { block() }
+
+        val timesMillis = LongArray(MEASURED_ITERATIONS) {
+            val start = System.nanoTime()
+            block()
+            (System.nanoTime() - start) / 1_000_000
+        }
+        timesMillis.sort()
+        val median = timesMillis[MEASURED_ITERATIONS / 2]
+        results.put(name, median)
+        Log.i(TAG, "$name: median = $median ms, min = ${timesMillis.first()} ms")
+
+        val expected = baseline.getJSONObject("medians").getLong(name)
+        assertTrue(
+            "$name regressed: median $median ms, baseline $expected ms on " +
+                baseline.getString("device"),
+            median <= expected * MAX_REGRESSION
+        )
+    }
+
+    /**
+     * Runs a query which changes the database and rolls back its changes (and the ones of the
+     * triggers), so that every iteration runs on the same data.
+     */
+    private fun rollingBack(block: () -> Unit) {
+        val database = db.openHelper.writableDatabase
+        database.beginTransaction()
+        try {
+            block()
+        } finally {
+            database.endTransaction()
+        }
+    }
+
+    companion object {
+        private const val TAG = "DatabaseBenchmarkTest"
+
+        private const val SUBSCRIPTIONS = 5_000
+        private const val STREAMS = 200_000
+        private const val HISTORY_ENTRIES = 50_000
+        private const val PLAYLIST_STREAMS = 5_000
+        private const val SUBSCRIPTION_LOOKUPS = 1_000
+
+        private const val WARMUP_ITERATIONS = 3
+        private const val MEASURED_ITERATIONS = 10
+        private const val MAX_REGRESSION = 1.5
+        private const val BASELINE_FILE = "database_benchmark_baseline.json"
+
+        private val BASE_DATE = OffsetDateTime.parse("2024-01-01T00:00:00Z")
+
+        private lateinit var db: AppDatabase
+        private lateinit var baseline: JSONObject
+        private val results = JSONObject()
+        private var playlistId = 0L
+        private lateinit var subscriptions: List<SubscriptionEntity>
+
+        @JvmStatic
+        @BeforeClass
+        fun createDb() {
+            val arguments = InstrumentationRegistry.getArguments()
+            assumeTrue(arguments.getString("benchmark") == "true")
+
+            val context = ApplicationProvider.getApplicationContext<Context>()
+            db = Room.inMemoryDatabaseBuilder(context, AppDatabase::class.java)
+                .addCallback(DatabaseCallback())
+                .build()
+            db.runInTransaction { fillTables() }
+
+            baseline = InstrumentationRegistry.getInstrumentation().context.assets
+                .open(BASELINE_FILE)
+                .bufferedReader()
+                .use { JSONObject(it.readText()) }
+        }
+
+        @JvmStatic
+        @AfterClass
+        fun closeDb() {
+            if (!::db.isInitialized) {
+                return
+            }
+            db.close()
+
+            val context = ApplicationProvider.getApplicationContext<Context>()
+            val device = "${Build.MANUFACTURER} ${Build.MODEL}, Android ${Build.VERSION.RELEASE}"
+            File(context.getExternalFilesDir(null), "database_benchmark.json")
+                .writeText(JSONObject().put("device", device).put("medians", results).toString(2))
+        }
+
+        private fun channelUrl(i: Int) = "https://youtube.com/channel/UC$i"
+
+        private fun fillTables() {
+            val serviceId = ServiceList.YouTube.serviceId
+
+            subscriptions = (1..SUBSCRIPTIONS).map { i ->
+                SubscriptionEntity().apply {
+                    uid = i.toLong()
+                    this.serviceId = serviceId
+                    url = channelUrl(i)
+                    name = "channel-$i"
+                }
+            }
+            db.subscriptionDAO().insertAll(subscriptions)
+
+            // every channel uploaded a stream a day, so most of them are older than the 30 days
+            // used by the unlink benchmarks
+            for (chunk in (1..STREAMS).chunked(10_000)) {
+                db.streamDAO().insertAll(
+                    chunk.map { i ->
+                        val channel = (i - 1) % SUBSCRIPTIONS + 1
+                        val uploadDate = BASE_DATE.minusDays(((i - 1) / SUBSCRIPTIONS).toLong())
+                        StreamEntity(
+                            i.toLong(), serviceId, "https://youtube.com/watch?v=$i",
+                            "stream $i", StreamType.VIDEO_STREAM, 1000, "channel-$channel",
+                            channelUrl(channel),
+                            "https://i.ytimg.com/vi/$i/hqdefault.jpg", 100,
+                            uploadDate.toLocalDate().toString(), uploadDate
+                        )
+                    }
+                )
+                db.feedDAO().insertAll(
+                    chunk.map { i -> FeedEntity(i.toLong(), ((i - 1) % SUBSCRIPTIONS + 1).toLong()) }
+                )
+            }
+
+            // spread the history over all the streams, half of them watched partially
+            val historyStep = STREAMS / HISTORY_ENTRIES
+            for (i in 0 until HISTORY_ENTRIES) {
+                val streamId = (i * historyStep + 1).toLong()
+                db.streamHistoryDAO().insert(
+                    StreamHistoryEntity(streamId, BASE_DATE.minusMinutes(i.toLong()), 1)
+                )
+                db.streamStateDAO().insert(
+                    StreamStateEntity(streamId, if (i % 2 == 0) 500_000 else 999_000)
+                )
+            }
+
+            playlistId = db.playlistDAO().insert(PlaylistEntity("playlist", false, 1, 0))
+            db.playlistStreamDAO().insertAll(
+                (0 until PLAYLIST_STREAMS).map { i ->
+                    PlaylistStreamEntity(playlistId, (i * 37 % STREAMS + 1).toLong(), i)
+                }
+            )
+        }
+    }
+}
@@ -35,6 +35,8 @@ class DatabaseMigrationTest {
 
         private const val DEFAULT_THIRD_SERVICE_ID = 2
         private const val DEFAULT_THIRD_URL = "https://www.youtube.com/watch?v=dQw4w9WgXcQ"
+
+        private const val DEFAULT_CHANNEL_URL = "https://www.youtube.com/channel/UCF_Ow2wU8s0qLqP4bLdXq8A"
     }
 
     @get:Rule
@@ -128,6 +130,41 @@ class DatabaseMigrationTest {
             Migrations.MIGRATION_8_9
         )
 
+        testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME,
+            Migrations.DB_VER_10,
+            true,
+            Migrations.MIGRATION_9_10
+        )
+
+        testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME,
+            Migrations.DB_VER_11,
+            true,
+            Migrations.MIGRATION_10_11
+        )
+
+        testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME,
+            Migrations.DB_VER_12,
+            true,
+            Migrations.MIGRATION_11_12
+        )
+
+        testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME,
+            Migrations.DB_VER_13,
+            true,
+            Migrations.MIGRATION_12_13
+        )
+
+        testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME,
+            Migrations.DB_VER_14,
+            true,
+            Migrations.MIGRATION_13_14
+        )
+
         val migratedDatabaseV3 = getMigratedDatabase()
         val listFromDB = migratedDatabaseV3.streamDAO().all.blockingFirst()
 
@@ -216,6 +253,31 @@ class DatabaseMigrationTest {
             true, Migrations.MIGRATION_8_9
         )
 
+        testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME, Migrations.DB_VER_10,
+            true, Migrations.MIGRATION_9_10
+        )
+
+        testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME, Migrations.DB_VER_11,
+            true, Migrations.MIGRATION_10_11
+        )
+
+        testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME, Migrations.DB_VER_12,
+            true, Migrations.MIGRATION_11_12
+        )
+
+        testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME, Migrations.DB_VER_13,
+            true, Migrations.MIGRATION_12_13
+        )
+
+        testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME, Migrations.DB_VER_14,
+            true, Migrations.MIGRATION_13_14
+        )
+
         val migratedDatabaseV8 = getMigratedDatabase()
         val listFromDB = migratedDatabaseV8.searchHistoryDAO().all.blockingFirst()
 
@@ -282,6 +344,41 @@ class DatabaseMigrationTest {
             Migrations.MIGRATION_8_9
         )
 
+        testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME,
+            Migrations.DB_VER_10,
+            true,
+            Migrations.MIGRATION_9_10
+        )
+
+        testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME,
+            Migrations.DB_VER_11,
+            true,
+            Migrations.MIGRATION_10_11
+        )
+
+        testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME,
+            Migrations.DB_VER_12,
+            true,
+            Migrations.MIGRATION_11_12
+        )
+
+        testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME,
+            Migrations.DB_VER_13,
+            true,
+            Migrations.MIGRATION_12_13
+        )
+
+        testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME,
+            Migrations.DB_VER_14,
+            true,
+            Migrations.MIGRATION_13_14
+        )
+
         val migratedDatabaseV9 = getMigratedDatabase()
         var localListFromDB = migratedDatabaseV9.playlistDAO().all.blockingFirst()
         var remoteListFromDB = migratedDatabaseV9.playlistRemoteDAO().all.blockingFirst()
@@ -313,6 +410,48 @@ class DatabaseMigrationTest {
         assertEquals(-1, remoteListFromDB[1].displayIndex)
     }
 
+    @Test
+    fun migrateDatabaseFrom13to14() {
+        val databaseInV13 = testHelper.createDatabase(AppDatabase.DATABASE_NAME, Migrations.DB_VER_13)
+
+        databaseInV13.run {
+            insert(
+                "subscriptions", SQLiteDatabase.CONFLICT_FAIL,
+                ContentValues().apply {
+                    put("service_id", DEFAULT_SERVICE_ID)
+                    put("url", DEFAULT_CHANNEL_URL)
+                    put("name", DEFAULT_NAME)
+                    put("notification_mode", 0)
+                }
+            )
+            close()
+        }
+
+        testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME, Migrations.DB_VER_14,
+            true, Migrations.MIGRATION_13_14
+        )
+
+        val migratedDatabaseV14 = getMigratedDatabase()
+        val subscriptionDAO = migratedDatabaseV14.subscriptionDAO()
+
+        // the lookups still ignore the case, like the LIKE they replace
+        val subscription = subscriptionDAO
+            .getSubscription(DEFAULT_SERVICE_ID, DEFAULT_CHANNEL_URL.lowercase())
+            .blockingGet()
+        assertEquals(DEFAULT_CHANNEL_URL, subscription.url)
+        assertEquals(DEFAULT_CHANNEL_URL.lowercase(), subscription.normalizedUrl)
+
+        // but don't treat the `_` in the URL as a wildcard anymore
+        assertNull(
+            subscriptionDAO
+                .getSubscription(DEFAULT_SERVICE_ID, DEFAULT_CHANNEL_URL.replace('_', 'x'))
+                .blockingGet()
+        )
+
+        assertEquals(1, subscriptionDAO.deleteSubscription(DEFAULT_SERVICE_ID, DEFAULT_CHANNEL_URL))
+    }
+
     private fun getMigratedDatabase(): AppDatabase {
         val database: AppDatabase = Room.databaseBuilder(
             ApplicationProvider.getApplicationContext(),
@@ -12,9 +12,12 @@ import org.junit.Test
 import org.schabi.newpipe.database.feed.dao.FeedDAO
 import org.schabi.newpipe.database.feed.model.FeedEntity
 import org.schabi.newpipe.database.feed.model.FeedGroupEntity
+import org.schabi.newpipe.database.feed.model.FeedViewEntity
+import org.schabi.newpipe.database.history.model.StreamHistoryEntity
 import org.schabi.newpipe.database.stream.StreamWithState
 import org.schabi.newpipe.database.stream.dao.StreamDAO
 import org.schabi.newpipe.database.stream.model.StreamEntity
+import org.schabi.newpipe.database.stream.model.StreamStateEntity
 import org.schabi.newpipe.database.subscription.SubscriptionDAO
 import org.schabi.newpipe.database.subscription.SubscriptionEntity
 import org.schabi.newpipe.extractor.ServiceList
@@ -49,7 +52,9 @@ class FeedDAOTest {
         val context = ApplicationProvider.getApplicationContext<Context>()
         db = Room.inMemoryDatabaseBuilder(
             context, AppDatabase::class.java
-        ).build()
+        )
+            .addCallback(DatabaseCallback())
+            .build()
         feedDAO = db.feedDAO()
         streamDAO = db.streamDAO()
         subscriptionDAO = db.subscriptionDAO()
@@ -83,6 +88,68 @@ class FeedDAOTest {
         assertEqual(streams, allowedStreams)
     }
 
+    @Test
+    fun testDeleteOrphanCandidates_InBatches() {
+        clearAndFillTables()
+        val date = OffsetDateTime.parse("2023-08-15T00:00:00Z")
+        while (feedDAO.unlinkStreamsOlderThan(date, 1) > 0) {
+            // unlink one stream at a time
+        }
+        while (streamDAO.deleteOrphanCandidates(2) > 0) {
+            // check two streams at a time
+        }
+
+        assertEquals(
+            listOf(stream3, stream5, stream6, stream7),
+            streamDAO.all.blockingFirst().sortedBy { it.uid }
+        )
+    }
+
+    @Test
+    fun testGetStreams_FollowsPlaybackState() {
+        clearAndFillTables()
+        db.streamHistoryDAO().insert(StreamHistoryEntity(stream5.uid, OffsetDateTime.now(), 1))
+        db.streamStateDAO().insert(StreamStateEntity(stream5.uid, 999_000))
+        db.streamHistoryDAO().insert(StreamHistoryEntity(stream6.uid, OffsetDateTime.now(), 1))
+        db.streamStateDAO().insert(StreamStateEntity(stream6.uid, 500_000))
+
+        assertEqual(
+            feedDAO.getStreams(FeedGroupEntity.GROUP_ALL_ID, false, true, null).blockingGet(),
+            listOf(stream1, stream2, stream3, stream4, stream6, stream7)
+        )
+        assertEqual(
+            feedDAO.getStreams(FeedGroupEntity.GROUP_ALL_ID, true, false, null).blockingGet(),
+            listOf(stream1, stream2, stream3, stream4, stream5, stream7)
+        )
+
+        // removing a stream from the history makes it appear again
+        db.streamHistoryDAO().deleteStreamHistory(stream5.uid)
+        assertEqual(
+            feedDAO.getStreams(FeedGroupEntity.GROUP_ALL_ID, false, true, null).blockingGet(),
+            listOf(stream1, stream2, stream3, stream4, stream5, stream6, stream7)
+        )
+    }
+
+    @Test
+    fun testGetStreamsPage_PagesMatchWholeFeed() {
+        clearAndFillTables()
+        val wholeFeed = feedDAO.getStreams(FeedGroupEntity.GROUP_ALL_ID, true, true, null)
+            .blockingGet()!!
+
+        val pages = ArrayList<StreamWithState>()
+        do {
+            val last = pages.lastOrNull()?.stream
+            val page = feedDAO.getStreamsPage(
+                FeedGroupEntity.GROUP_ALL_ID, true, true, null,
+                last?.let { FeedViewEntity.sortDateOf(it.uploadDate) }, last?.uid, 2
+            ).blockingGet()!!
+            pages.addAll(page)
+        } while (page.isNotEmpty())
+
+        assertEquals(wholeFeed.map { it.stream.uid }, pages.map { it.stream.uid })
+        assertEquals(allStreams.size, pages.size)
+    }
+
     private fun assertEqual(streams: List<StreamWithState>?, allowedStreams: List<StreamEntity>) {
         assertNotNull(streams)
         assertEquals(
@@ -9,6 +9,11 @@ import org.junit.Rule
 import org.junit.Test
 import org.schabi.newpipe.database.AppDatabase
 import org.schabi.newpipe.database.history.model.SearchHistoryEntry
+import org.schabi.newpipe.database.stream.model.StreamEntity
+import org.schabi.newpipe.database.stream.model.StreamStateEntity
+import org.schabi.newpipe.extractor.stream.StreamInfo
+import org.schabi.newpipe.extractor.stream.StreamInfoItem
+import org.schabi.newpipe.extractor.stream.StreamType
 import org.schabi.newpipe.testUtil.TestDatabase
 import org.schabi.newpipe.testUtil.TrampolineSchedulerRule
 import java.time.LocalDateTime
@@ -27,6 +32,7 @@ class HistoryRecordManagerTest {
     fun setup() {
         database = TestDatabase.createReplacingNewPipeDatabase()
         manager = HistoryRecordManager(ApplicationProvider.getApplicationContext())
+        StreamStateCache.getInstance().clear()
     }
 
     @After
@@ -162,6 +168,50 @@ class HistoryRecordManagerTest {
         assertThat(searches).isEqualTo(searches2)
     }
 
+    @Test
+    fun prefetchStreamStates() {
+        val streams = (1..3).map {
+            StreamEntity(
+                serviceId = 0, url = "https://youtube.com/watch?v=$it", title = "stream $it",
+                streamType = StreamType.VIDEO_STREAM, duration = 1000, uploader = "channel",
+                uploaderUrl = "https://youtube.com/channel/1"
+            )
+        }
+        val ids = database.streamDAO().insertAll(streams)
+        database.streamStateDAO().upsert(StreamStateEntity(ids[0], 10_000))
+        database.streamStateDAO().upsert(StreamStateEntity(ids[2], 30_000))
+
+        val items = streams.map { StreamInfoItem(it.serviceId, it.url, it.title, it.streamType) }
+        manager.prefetchStreamStates(items).test().await().assertComplete()
+
+        // the states are served from the cache, even if the database changes behind its back
+        database.streamStateDAO().deleteAll()
+        assertThat(items.map { manager.loadStreamState(it).blockingGet()[0]?.progressMillis })
+            .containsExactly(10_000L, null, 30_000L)
+
+        // clearing the states through the manager invalidates the cache
+        manager.deleteCompleteStreamStateHistory().test().await()
+        assertThat(items.map { manager.loadStreamState(it).blockingGet()[0] })
+            .containsOnlyNulls()
+    }
+
+    @Test
+    fun saveStreamState_isBufferedUntilFlushed() {
+        val info = StreamInfo(0, "https://youtube.com/watch?v=1", "https://youtube.com/watch?v=1", StreamType.VIDEO_STREAM, "1", "stream 1", 0)
+        manager.saveStreamState(info, 10_000).test().await().assertComplete()
+        manager.saveStreamState(info, 20_000).test().await().assertComplete()
+        assertThat(database.streamStateDAO().all.blockingFirst()).isEmpty()
+
+        // loading the state takes the pending progress into account
+        assertEquals(20_000L, manager.loadStreamState(info).blockingGet().progressMillis)
+
+        manager.saveStreamState(info, 30_000).test().await()
+        manager.flushStreamStates().test().await().assertComplete()
+        val states = database.streamStateDAO().all.blockingFirst()
+        assertThat(states).hasSize(1)
+        assertEquals(30_000L, states[0].progressMillis)
+    }
+
     companion object {
         private val time = OffsetDateTime.of(LocalDateTime.of(2000, 1, 1, 1, 1), ZoneOffset.UTC)
 
@@ -1,6 +1,7 @@
 package org.schabi.newpipe.local.playlist
 
 import org.junit.After
+import org.junit.Assert.assertEquals
 import org.junit.Before
 import org.junit.Rule
 import org.junit.Test
@@ -74,4 +75,33 @@ class LocalPlaylistManagerTest {
         result.test().await().assertComplete()
         database.streamDAO().all.test().awaitCount(1).assertValue(listOf(stream, upserted))
     }
+
+    @Test
+    fun updateJoin_movesAndRemovesStreams() {
+        val streams = (1..5).map {
+            StreamEntity(
+                serviceId = 1, url = "https://newpipe.net/$it", title = "title$it",
+                streamType = StreamType.VIDEO_STREAM, duration = 1, uploader = "uploader",
+                uploaderUrl = "https://newpipe.net/"
+            )
+        }
+        val streamIds = manager.createPlaylist("name", streams).test().await().values()[0]
+        val playlistId = database.playlistDAO().all.blockingFirst()[0].uid
+
+        // move the last stream to the top, then remove the second to last one
+        val newStreamIds = listOf(streamIds[4], streamIds[0], streamIds[1], streamIds[2])
+        manager.updateJoin(playlistId, newStreamIds).test().await().assertComplete()
+
+        val joins = database.playlistStreamDAO().getJoinsOf(playlistId).sortedBy { it.index }
+        assertEquals((0..3).toList(), joins.map { it.index })
+        assertEquals(newStreamIds, joins.map { it.streamUid })
+
+        // saving the same order again changes nothing
+        manager.updateJoin(playlistId, newStreamIds).test().await().assertComplete()
+        assertEquals(
+            newStreamIds,
+            database.playlistStreamDAO().getJoinsOf(playlistId)
+                .sortedBy { it.index }.map { it.streamUid }
+        )
+    }
 }
@@ -75,6 +75,12 @@ import java.util.zip.GZIPInputStream;
  * There are many unused methods in this class because everything was copied from {@link
  * com.google.android.exoplayer2.upstream.DefaultHttpDataSource} with as little changes as possible.
  * SonarQube warnings were also suppressed for the same reason.
+ *
+ * <p>
+ * It was used for YouTube streams before {@link YoutubeOkHttpDataSource}, and is only kept as the
+ * baseline of {@link YoutubeHttpDataSourceBenchmarkTest} and as a reference if the playback
+ * through OkHttp regresses.
+ * </p>
  */
 @SuppressWarnings({"squid:S3011", "squid:S4738"})
 public final class YoutubeHttpDataSource extends BaseDataSource implements HttpDataSource {
@@ -0,0 +1,181 @@
+package org.schabi.newpipe.player.datasource
+
+import android.net.Uri
+import android.util.Log
+import androidx.test.platform.app.InstrumentationRegistry
+import com.google.android.exoplayer2.upstream.DataSpec
+import com.google.android.exoplayer2.upstream.HttpDataSource
+import okhttp3.OkHttpClient
+import okhttp3.mockwebserver.Dispatcher
+import okhttp3.mockwebserver.MockResponse
+import okhttp3.mockwebserver.MockWebServer
+import okhttp3.mockwebserver.RecordedRequest
+import okhttp3.tls.HandshakeCertificates
+import okhttp3.tls.HeldCertificate
+import okio.Buffer
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assume.assumeTrue
+import org.junit.Before
+import org.junit.Test
+import java.net.InetAddress
+import javax.net.ssl.HttpsURLConnection
+import javax.net.ssl.SSLSocketFactory
+import kotlin.random.Random
+
+/**
+ * Compares the latency of seeks, i.e. the time between opening a range of a stream and reading
+ * its first byte, of [YoutubeHttpDataSource] (`HttpURLConnection`) and [YoutubeOkHttpDataSource]
+ * against a local HTTPS server, which answers the `range` parameter like YouTube does.
+ *
+ * The benchmarks are skipped unless they are enabled explicitly:
+ * ```
+ * ./gradlew connectedDebugAndroidTest \
+ *     -Pandroid.testInstrumentationRunnerArguments.class=org.schabi.newpipe.player.datasource.YoutubeHttpDataSourceBenchmarkTest \
+ *     -Pandroid.testInstrumentationRunnerArguments.benchmark=true
+ * ```
+ * The medians are logged with the [TAG] tag.
+ */
+class YoutubeHttpDataSourceBenchmarkTest {
+    private lateinit var server: MockWebServer
+    private lateinit var clientCertificates: HandshakeCertificates
+    private lateinit var defaultSocketFactory: SSLSocketFactory
+
+    @Before
+    fun setUp() {
+        assumeTrue(InstrumentationRegistry.getArguments().getString("benchmark") == "true")
+
+        val localhost = InetAddress.getByName("localhost").canonicalHostName
+        val certificate = HeldCertificate.Builder()
+            .addSubjectAlternativeName(localhost)
+            .build()
+        val serverCertificates = HandshakeCertificates.Builder()
+            .heldCertificate(certificate)
+            .build()
+        clientCertificates = HandshakeCertificates.Builder()
+            .addTrustedCertificate(certificate.certificate)
+            .build()
+
+        // the HttpURLConnection of YoutubeHttpDataSource can only use the default settings
+        defaultSocketFactory = HttpsURLConnection.getDefaultSSLSocketFactory()
+        HttpsURLConnection.setDefaultSSLSocketFactory(clientCertificates.sslSocketFactory())
+
+        server = MockWebServer()
+        server.useHttps(serverCertificates.sslSocketFactory(), false)
+        server.dispatcher = RangeDispatcher()
+        server.start()
+    }
+
+    @After
+    fun tearDown() {
+        if (!::server.isInitialized) {
+            return
+        }
+        server.shutdown()
+        HttpsURLConnection.setDefaultSSLSocketFactory(defaultSocketFactory)
+    }
+
+    @Test
+    fun httpUrlConnectionSeeks() {
+        benchmark("httpUrlConnectionSeeks") {
+            YoutubeHttpDataSource.Factory()
+                .setRangeParameterEnabled(true)
+                .setRnParameterEnabled(true)
+                .createDataSource()
+        }
+    }
+
+    @Test
+    fun okHttpSeeks() {
+        val client = OkHttpClient.Builder()
+            .sslSocketFactory(
+                clientCertificates.sslSocketFactory(),
+                clientCertificates.trustManager
+            )
+            .build()
+
+        benchmark("okHttpSeeks") {
+            YoutubeOkHttpDataSource.Factory(client)
+                .setRangeParameterEnabled(true)
+                .setRnParameterEnabled(true)
+                .createDataSource()
+        }
+
+        // every seek after the first one must reuse the pooled connection
+        var connections = 0
+        repeat(server.requestCount) {
+            if (server.takeRequest().sequenceNumber == 0) {
+                connections++
+            }
+        }
+        assertEquals(1, connections)
+    }
+
+    /**
+     * Seeks to random positions of the stream with a new data source each time, like ExoPlayer
+     * does for the chunks of a DASH stream, and logs the median time to the first byte.
+     */
+    private fun benchmark(name: String, createDataSource: () -> HttpDataSource) {
+        val uri = Uri.parse(server.url("/videoplayback?itag=251").toString())
+        val random = Random(42)
+        val buffer = ByteArray(CHUNK_SIZE)
+
+        val timesMillis = DoubleArray(WARMUP_ITERATIONS + MEASURED_ITERATIONS) {
+            val position = random.nextInt(MEDIA_SIZE - CHUNK_SIZE).toLong()
+            val dataSource = createDataSource()
+
+            val dataSpec = DataSpec.Builder()
+                .setUri(uri)
+                .setPosition(position)
+                .setLength(CHUNK_SIZE.toLong())
+                .build()
+
+            val start = System.nanoTime()
+            dataSource.open(dataSpec)
+            val read = dataSource.read(buffer, 0, 1)
+            val time = (System.nanoTime() - start) / 1_000_000.0
+
+            assertEquals(1, read)
+            assertEquals(MEDIA[position.toInt()], buffer[0])
+            // read the rest of the chunk, as ExoPlayer would do
+            while (dataSource.read(buffer, 0, buffer.size) > 0) {
+                // nothing to do
+            }
+            dataSource.close()
+            time
+        }.drop(WARMUP_ITERATIONS).sorted()
+
+        Log.i(
+            TAG,
+            "$name: median = ${timesMillis[MEASURED_ITERATIONS / 2]} ms, " +
+                "min = ${timesMillis.first()} ms, max = ${timesMillis.last()} ms"
+        )
+    }
+
+    /**
+     * Serves the slice of [MEDIA] requested with the `range` parameter.
+     */
+    private class RangeDispatcher : Dispatcher() {
+        override fun dispatch(request: RecordedRequest): MockResponse {
+            val range = request.requestUrl?.queryParameter("range")
+                ?: return MockResponse().setResponseCode(400)
+            val (start, end) = range.split("-").map { it.toInt() }
+
+            return MockResponse()
+                .setHeader("Content-Type", "audio/webm")
+                .setBody(Buffer().write(MEDIA, start, end - start + 1))
+        }
+    }
+
+    companion object {
+        private const val TAG = "YoutubeHttpDataSourceBenchmarkTest"
+
+        private const val MEDIA_SIZE = 16 * 1024 * 1024
+        private const val CHUNK_SIZE = 64 * 1024
+
+        private const val WARMUP_ITERATIONS = 5
+        private const val MEASURED_ITERATIONS = 50
+
+        private val MEDIA = Random(0).nextBytes(MEDIA_SIZE)
+    }
+}
@@ -5,6 +5,7 @@ import androidx.test.core.app.ApplicationProvider
 import org.junit.Assert.assertSame
 import org.schabi.newpipe.NewPipeDatabase
 import org.schabi.newpipe.database.AppDatabase
+import org.schabi.newpipe.database.DatabaseCallback
 
 class TestDatabase {
     companion object {
@@ -14,6 +15,7 @@ class TestDatabase {
                 AppDatabase::class.java
             )
                 .allowMainThreadQueries()
+                .addCallback(DatabaseCallback())
                 .build()
 
             val databaseField = NewPipeDatabase::class.java.getDeclaredField("databaseInstance")
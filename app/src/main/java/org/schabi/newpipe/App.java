@@ -20,6 +20,7 @@ import org.schabi.newpipe.extractor.downloader.Downloader;
 import org.schabi.newpipe.ktx.ExceptionUtils;
 import org.schabi.newpipe.settings.NewPipeSettings;
 import org.schabi.newpipe.util.BridgeStateSaverInitializer;
+import org.schabi.newpipe.util.InfoCache;
 import org.schabi.newpipe.util.Localization;
 import org.schabi.newpipe.util.ServiceHelper;
 import org.schabi.newpipe.util.StateSaver;
@@ -104,6 +105,7 @@ public class App extends Application {
 
         BridgeStateSaverInitializer.init(this);
         StateSaver.init(this);
+        InfoCache.initDiskCache(this);
         initNotificationChannels();
 
         ServiceHelper.initServices(this);
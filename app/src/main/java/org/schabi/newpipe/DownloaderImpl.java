@@ -64,6 +64,16 @@ public final class DownloaderImpl extends Downloader {
         return instance;
     }
 
+    /**
+     * Clients needing other settings (e.g. timeouts) should be built from this one with
+     * {@link OkHttpClient#newBuilder()}, so that they share its connection pool.
+     *
+     * @return the {@link OkHttpClient} used by this downloader
+     */
+    public OkHttpClient getClient() {
+        return client;
+    }
+
     public String getCookies(final String url) {
         final String youtubeCookie = url.contains(YOUTUBE_DOMAIN)
                 ? getCookie(YOUTUBE_RESTRICTED_MODE_COOKIE_KEY) : null;
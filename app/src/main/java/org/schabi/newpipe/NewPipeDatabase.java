@@ -9,16 +9,28 @@ import static org.schabi.newpipe.database.Migrations.MIGRATION_5_6;
 import static org.schabi.newpipe.database.Migrations.MIGRATION_6_7;
 import static org.schabi.newpipe.database.Migrations.MIGRATION_7_8;
 import static org.schabi.newpipe.database.Migrations.MIGRATION_8_9;
+import static org.schabi.newpipe.database.Migrations.MIGRATION_9_10;
+import static org.schabi.newpipe.database.Migrations.MIGRATION_10_11;
+import static org.schabi.newpipe.database.Migrations.MIGRATION_11_12;
+import static org.schabi.newpipe.database.Migrations.MIGRATION_12_13;
+import static org.schabi.newpipe.database.Migrations.MIGRATION_13_14;
 
 import android.content.Context;
 import android.database.Cursor;
 
 import androidx.annotation.NonNull;
 import androidx.room.Room;
+import androidx.room.RoomDatabase;
 
 import org.schabi.newpipe.database.AppDatabase;
+import org.schabi.newpipe.database.DatabaseCallback;
+import org.schabi.newpipe.database.QueryPlanLogger;
+
+import java.util.concurrent.Executors;
 
 public final class NewPipeDatabase {
+    private static final boolean DEBUG = MainActivity.DEBUG;
+
     private static volatile AppDatabase databaseInstance;
 
     private NewPipeDatabase() {
@@ -26,11 +38,27 @@ public final class NewPipeDatabase {
     }
 
     private static AppDatabase getDatabase(final Context context) {
-        return Room
+        final RoomDatabase.Builder<AppDatabase> builder = Room
                 .databaseBuilder(context.getApplicationContext(), AppDatabase.class, DATABASE_NAME)
                 .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5,
-                        MIGRATION_5_6, MIGRATION_6_7, MIGRATION_7_8, MIGRATION_8_9)
+                        MIGRATION_5_6, MIGRATION_6_7, MIGRATION_7_8, MIGRATION_8_9,
+                        MIGRATION_9_10, MIGRATION_10_11, MIGRATION_11_12, MIGRATION_12_13,
+                        MIGRATION_13_14)
+                .addCallback(new DatabaseCallback())
+                // Room would not use it on low-RAM devices, but without it every write blocks
+                // all the reads, e.g. the feed list while the feed is being updated
+                .setJournalMode(RoomDatabase.JournalMode.WRITE_AHEAD_LOGGING);
+
+        if (!DEBUG) {
+            return builder.build();
+        }
+
+        final QueryPlanLogger queryPlanLogger = new QueryPlanLogger();
+        final AppDatabase database = builder
+                .setQueryCallback(queryPlanLogger, Executors.newSingleThreadExecutor())
                 .build();
+        queryPlanLogger.setDatabase(database);
+        return database;
     }
 
     @NonNull
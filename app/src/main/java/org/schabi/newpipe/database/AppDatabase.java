@@ -1,6 +1,6 @@
 package org.schabi.newpipe.database;
 
-import static org.schabi.newpipe.database.Migrations.DB_VER_9;
+import static org.schabi.newpipe.database.Migrations.DB_VER_14;
 
 import androidx.room.Database;
 import androidx.room.RoomDatabase;
@@ -12,6 +12,7 @@ import org.schabi.newpipe.database.feed.model.FeedEntity;
 import org.schabi.newpipe.database.feed.model.FeedGroupEntity;
 import org.schabi.newpipe.database.feed.model.FeedGroupSubscriptionEntity;
 import org.schabi.newpipe.database.feed.model.FeedLastUpdatedEntity;
+import org.schabi.newpipe.database.feed.model.FeedViewEntity;
 import org.schabi.newpipe.database.history.dao.SearchHistoryDAO;
 import org.schabi.newpipe.database.history.dao.StreamHistoryDAO;
 import org.schabi.newpipe.database.history.model.SearchHistoryEntry;
@@ -25,6 +26,7 @@ import org.schabi.newpipe.database.playlist.model.PlaylistStreamEntity;
 import org.schabi.newpipe.database.stream.dao.StreamDAO;
 import org.schabi.newpipe.database.stream.dao.StreamStateDAO;
 import org.schabi.newpipe.database.stream.model.StreamEntity;
+import org.schabi.newpipe.database.stream.model.StreamOrphanCandidateEntity;
 import org.schabi.newpipe.database.stream.model.StreamStateEntity;
 import org.schabi.newpipe.database.subscription.SubscriptionDAO;
 import org.schabi.newpipe.database.subscription.SubscriptionEntity;
@@ -36,9 +38,9 @@ import org.schabi.newpipe.database.subscription.SubscriptionEntity;
                 StreamEntity.class, StreamHistoryEntity.class, StreamStateEntity.class,
                 PlaylistEntity.class, PlaylistStreamEntity.class, PlaylistRemoteEntity.class,
                 FeedEntity.class, FeedGroupEntity.class, FeedGroupSubscriptionEntity.class,
-                FeedLastUpdatedEntity.class
+                FeedLastUpdatedEntity.class, FeedViewEntity.class, StreamOrphanCandidateEntity.class
         },
-        version = DB_VER_9
+        version = DB_VER_14
 )
 public abstract class AppDatabase extends RoomDatabase {
     public static final String DATABASE_NAME = "newpipe.db";
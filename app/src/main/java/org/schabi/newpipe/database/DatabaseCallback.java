@@ -0,0 +1,47 @@
+package org.schabi.newpipe.database;
+
+import androidx.annotation.NonNull;
+import androidx.room.RoomDatabase;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+/**
+ * Sets up the parts of the database schema which Room can't manage by itself, when a new
+ * database is created. Databases created by older versions get them through {@link Migrations}.
+ * Also applies the performance settings of SQLite every time the database is opened.
+ * <p>
+ * Every database of the {@link AppDatabase} must be built with this callback, including the
+ * in-memory ones used in tests.
+ * </p>
+ */
+public final class DatabaseCallback extends RoomDatabase.Callback {
+    /**
+     * Number of pages in the write-ahead log which triggers a checkpoint. Android lowers it to
+     * 100 pages, which makes big transactions (e.g. feed updates) checkpoint very often.
+     */
+    private static final int WAL_AUTO_CHECKPOINT_PAGES = 1000;
+    /**
+     * Size the write-ahead log is truncated to after a checkpoint, about the size it reaches
+     * before a checkpoint, so that it isn't shrunk and grown again all the time.
+     */
+    private static final int JOURNAL_SIZE_LIMIT = 4 * 1024 * 1024;
+
+    @Override
+    public void onCreate(@NonNull final SupportSQLiteDatabase db) {
+        Migrations.createFeedViewTriggers(db);
+        Migrations.createOrphanCandidateTriggers(db);
+    }
+
+    @Override
+    public void onOpen(@NonNull final SupportSQLiteDatabase db) {
+        if (db.isWriteAheadLoggingEnabled()) {
+            // with a write-ahead log, syncing only on checkpoints can't corrupt the database,
+            // at most the last transactions are lost on a power failure
+            db.query("PRAGMA synchronous = NORMAL").close();
+            db.query("PRAGMA wal_autocheckpoint = " + WAL_AUTO_CHECKPOINT_PAGES).close();
+            db.query("PRAGMA journal_size_limit = " + JOURNAL_SIZE_LIMIT).close();
+        }
+
+        // let SQLite refresh the statistics of the query planner, if it thinks they are outdated
+        db.query("PRAGMA optimize").close();
+    }
+}
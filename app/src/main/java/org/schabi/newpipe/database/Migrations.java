@@ -1,5 +1,6 @@
 package org.schabi.newpipe.database;
 
+import android.database.Cursor;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -7,6 +8,8 @@ import androidx.room.migration.Migration;
 import androidx.sqlite.db.SupportSQLiteDatabase;
 
 import org.schabi.newpipe.MainActivity;
+import org.schabi.newpipe.database.feed.model.FeedViewEntity;
+import org.schabi.newpipe.database.subscription.SubscriptionEntity;
 
 public final class Migrations {
 
@@ -27,6 +30,11 @@ public final class Migrations {
     public static final int DB_VER_7 = 7;
     public static final int DB_VER_8 = 8;
     public static final int DB_VER_9 = 9;
+    public static final int DB_VER_10 = 10;
+    public static final int DB_VER_11 = 11;
+    public static final int DB_VER_12 = 12;
+    public static final int DB_VER_13 = 13;
+    public static final int DB_VER_14 = 14;
 
     private static final String TAG = Migrations.class.getName();
     public static final boolean DEBUG = MainActivity.DEBUG;
@@ -302,6 +310,256 @@ public final class Migrations {
         }
     };
 
+    public static final Migration MIGRATION_9_10 = new Migration(DB_VER_9, DB_VER_10) {
+        @Override
+        public void migrate(@NonNull final SupportSQLiteDatabase database) {
+            // Add the watermark of the last feed update, existing rows just get a full update
+            // the next time
+            database.execSQL("ALTER TABLE `feed_last_updated` "
+                    + "ADD COLUMN `newest_stream_url` TEXT");
+            database.execSQL("ALTER TABLE `feed_last_updated` "
+                    + "ADD COLUMN `newest_upload_date` INTEGER");
+            database.execSQL("ALTER TABLE `feed_last_updated` "
+                    + "ADD COLUMN `content_hash` INTEGER");
+        }
+    };
+
+    public static final Migration MIGRATION_10_11 = new Migration(DB_VER_10, DB_VER_11) {
+        @Override
+        public void migrate(@NonNull final SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `feed_view` "
+                    + "(`group_id` INTEGER NOT NULL, `stream_id` INTEGER NOT NULL, "
+                    + "`subscription_id` INTEGER NOT NULL, `upload_date` INTEGER, "
+                    + "`sort_date` INTEGER NOT NULL, `progress_time` INTEGER, "
+                    + "`is_played` INTEGER NOT NULL, `is_partially_played` INTEGER NOT NULL, "
+                    + "PRIMARY KEY(`stream_id`, `subscription_id`, `group_id`))");
+            database.execSQL("CREATE INDEX IF NOT EXISTS "
+                    + "`index_feed_view_group_id_sort_date_stream_id` "
+                    + "ON `feed_view` (`group_id`, `sort_date`, `stream_id`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_feed_view_subscription_id` "
+                    + "ON `feed_view` (`subscription_id`)");
+
+            createFeedViewTriggers(database);
+
+            // Fill the new table with the current feed
+            database.execSQL(insertIntoFeedViewForAllGroup("1"));
+            database.execSQL(insertIntoFeedViewForGroups("1"));
+        }
+    };
+
+    public static final Migration MIGRATION_11_12 = new Migration(DB_VER_11, DB_VER_12) {
+        @Override
+        public void migrate(@NonNull final SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `stream_orphan_candidates` "
+                    + "(`stream_id` INTEGER NOT NULL, PRIMARY KEY(`stream_id`))");
+
+            // Allows to find the newest stream of a subscription without scanning its feed
+            database.execSQL("DROP INDEX IF EXISTS `index_feed_view_subscription_id`");
+            database.execSQL("CREATE INDEX IF NOT EXISTS "
+                    + "`index_feed_view_subscription_id_group_id_upload_date` "
+                    + "ON `feed_view` (`subscription_id`, `group_id`, `upload_date`)");
+
+            createOrphanCandidateTriggers(database);
+
+            // Check every stream once, later cleanups only look at the new candidates
+            database.execSQL("INSERT OR IGNORE INTO `stream_orphan_candidates` (`stream_id`) "
+                    + "SELECT `uid` FROM `streams`");
+        }
+    };
+
+    public static final Migration MIGRATION_12_13 = new Migration(DB_VER_12, DB_VER_13) {
+        @Override
+        public void migrate(@NonNull final SupportSQLiteDatabase database) {
+            // Allow to sort the watch and search history without scanning the whole table
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_stream_history_access_date` "
+                    + "ON `stream_history` (`access_date`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_search_history_creation_date` "
+                    + "ON `search_history` (`creation_date`)");
+        }
+    };
+
+    public static final Migration MIGRATION_13_14 = new Migration(DB_VER_13, DB_VER_14) {
+        @Override
+        public void migrate(@NonNull final SupportSQLiteDatabase database) {
+            // Subscriptions were looked up with `url LIKE :url`, which can't use an index, so
+            // store the normalized URL to look them up with an exact and indexed comparison
+            database.execSQL("ALTER TABLE `subscriptions` ADD COLUMN `normalized_url` TEXT");
+
+            // Normalize the URLs like the app does, SQLite's lower() only handles ASCII
+            try (Cursor cursor = database.query("SELECT `uid`, `url` FROM `subscriptions` "
+                    + "WHERE `url` IS NOT NULL")) {
+                while (cursor.moveToNext()) {
+                    database.execSQL("UPDATE `subscriptions` SET `normalized_url` = ? "
+                                    + "WHERE `uid` = ?",
+                            new Object[]{SubscriptionEntity.normalizeUrl(cursor.getString(1)),
+                                    cursor.getLong(0)});
+                }
+            }
+
+            database.execSQL("CREATE INDEX IF NOT EXISTS "
+                    + "`index_subscriptions_service_id_normalized_url` "
+                    + "ON `subscriptions` (`service_id`, `normalized_url`)");
+        }
+    };
+
+    private static final String FEED_VIEW_COLUMNS = "`group_id`, `stream_id`, "
+            + "`subscription_id`, `upload_date`, `sort_date`, `progress_time`, `is_played`, "
+            + "`is_partially_played`";
+
+    private static final String IN_HISTORY = "EXISTS (SELECT 1 FROM `stream_history` sh "
+            + "WHERE sh.`stream_id` = f.`stream_id`) AND sst.`stream_id` IS NOT NULL";
+
+    // Same conditions as StreamStateEntity.isFinished() and isValid(), with
+    // PLAYBACK_FINISHED_END_MILLISECONDS = 60000 and
+    // PLAYBACK_SAVE_THRESHOLD_START_MILLISECONDS = 5000
+    private static final String FINISHED = "(sst.`progress_time` >= s.`duration` * 1000 - 60000 "
+            + "AND sst.`progress_time` >= s.`duration` * 1000 * 3 / 4)";
+    private static final String NOT_STARTED = "(sst.`progress_time` <= 5000 "
+            + "AND sst.`progress_time` <= s.`duration` * 1000 / 4)";
+
+    private static final String FEED_VIEW_VALUES = "f.`stream_id`, f.`subscription_id`, "
+            + "s.`upload_date`, COALESCE(s.`upload_date`, " + FeedViewEntity.NO_UPLOAD_DATE + "), "
+            + "sst.`progress_time`, "
+            + "(" + IN_HISTORY + " AND " + FINISHED + " AND s.`stream_type` "
+            + "NOT IN ('LIVE_STREAM', 'AUDIO_LIVE_STREAM')), "
+            + "(" + IN_HISTORY + " AND NOT " + NOT_STARTED + " AND NOT " + FINISHED + ")";
+
+    /**
+     * Creates the triggers that keep the {@code feed_view} table in sync with the {@code feed},
+     * {@code feed_group_subscription_join}, {@code streams}, {@code stream_state} and
+     * {@code stream_history} tables.
+     * <p>
+     * Room doesn't know about triggers, so they are created both when migrating and when the
+     * database is created from scratch (see {@link DatabaseCallback}). If the triggers ever need
+     * to be changed, drop and recreate them in a new migration and update this method.
+     * </p>
+     *
+     * @param database the database to create the triggers in
+     */
+    static void createFeedViewTriggers(@NonNull final SupportSQLiteDatabase database) {
+        // Streams added to or removed from the feed of a subscription
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS `feed_view_after_feed_insert` "
+                + "AFTER INSERT ON `feed` BEGIN "
+                + insertIntoFeedViewForAllGroup(
+                        "f.`stream_id` = NEW.`stream_id` "
+                        + "AND f.`subscription_id` = NEW.`subscription_id`") + "; "
+                + insertIntoFeedViewForGroups(
+                        "f.`stream_id` = NEW.`stream_id` "
+                        + "AND f.`subscription_id` = NEW.`subscription_id`") + "; "
+                + "END");
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS `feed_view_after_feed_delete` "
+                + "AFTER DELETE ON `feed` BEGIN "
+                + "DELETE FROM `feed_view` WHERE `stream_id` = OLD.`stream_id` "
+                + "AND `subscription_id` = OLD.`subscription_id`; "
+                + "END");
+
+        // Subscriptions added to or removed from a feed group
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS `feed_view_after_group_insert` "
+                + "AFTER INSERT ON `feed_group_subscription_join` BEGIN "
+                + insertIntoFeedViewForGroups(
+                        "f.`subscription_id` = NEW.`subscription_id` "
+                        + "AND fgs.`group_id` = NEW.`group_id`") + "; "
+                + "END");
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS `feed_view_after_group_delete` "
+                + "AFTER DELETE ON `feed_group_subscription_join` BEGIN "
+                + "DELETE FROM `feed_view` WHERE `group_id` = OLD.`group_id` "
+                + "AND `subscription_id` = OLD.`subscription_id`; "
+                + "END");
+
+        // Changes to the stream, its state or its history, which affect sorting or filtering
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS `feed_view_after_stream_update` "
+                + "AFTER UPDATE OF `upload_date`, `duration`, `stream_type` ON `streams` "
+                + "WHEN OLD.`upload_date` IS NOT NEW.`upload_date` "
+                + "OR OLD.`duration` IS NOT NEW.`duration` "
+                + "OR OLD.`stream_type` IS NOT NEW.`stream_type` BEGIN "
+                + refreshFeedView("NEW.`uid`")
+                + "END");
+        createRefreshTrigger(database, "feed_view_after_state_insert",
+                "AFTER INSERT ON `stream_state`", "NEW.`stream_id`");
+        createRefreshTrigger(database, "feed_view_after_state_update",
+                "AFTER UPDATE ON `stream_state`", "NEW.`stream_id`");
+        createRefreshTrigger(database, "feed_view_after_state_delete",
+                "AFTER DELETE ON `stream_state`", "OLD.`stream_id`");
+        createRefreshTrigger(database, "feed_view_after_history_insert",
+                "AFTER INSERT ON `stream_history`", "NEW.`stream_id`");
+        createRefreshTrigger(database, "feed_view_after_history_delete",
+                "AFTER DELETE ON `stream_history`", "OLD.`stream_id`");
+    }
+
+    /**
+     * Creates the triggers that add a stream to the {@code stream_orphan_candidates} table when
+     * it is inserted or when a reference to it from the {@code feed}, {@code stream_history} or
+     * {@code playlist_stream_join} tables is removed.
+     * <p>
+     * Like {@link #createFeedViewTriggers(SupportSQLiteDatabase)}, this is also called when the
+     * database is created from scratch.
+     * </p>
+     *
+     * @param database the database to create the triggers in
+     */
+    static void createOrphanCandidateTriggers(@NonNull final SupportSQLiteDatabase database) {
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS "
+                + "`stream_orphan_candidates_after_streams_insert` "
+                + "AFTER INSERT ON `streams` BEGIN "
+                + "INSERT OR IGNORE INTO `stream_orphan_candidates` (`stream_id`) "
+                + "VALUES (NEW.`uid`); "
+                + "END");
+        for (final String table : new String[]{"feed", "stream_history", "playlist_stream_join"}) {
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS `stream_orphan_candidates_after_"
+                    + table + "_delete` AFTER DELETE ON `" + table + "` BEGIN "
+                    + "INSERT OR IGNORE INTO `stream_orphan_candidates` (`stream_id`) "
+                    + "VALUES (OLD.`stream_id`); "
+                    + "END");
+        }
+    }
+
+    private static void createRefreshTrigger(@NonNull final SupportSQLiteDatabase database,
+                                             final String name,
+                                             final String event,
+                                             final String streamId) {
+        database.execSQL("CREATE TRIGGER IF NOT EXISTS `" + name + "` " + event + " BEGIN "
+                + refreshFeedView(streamId)
+                + "END");
+    }
+
+    /**
+     * @param streamId an SQL expression for the id of the stream whose rows need to be updated
+     * @return the statements recomputing all the {@code feed_view} rows of a stream
+     */
+    private static String refreshFeedView(final String streamId) {
+        return insertIntoFeedViewForAllGroup("f.`stream_id` = " + streamId) + "; "
+                + insertIntoFeedViewForGroups("f.`stream_id` = " + streamId) + "; ";
+    }
+
+    /**
+     * @param condition an SQL condition on the {@code feed} table (aliased as {@code f})
+     * @return a statement (re)computing the {@code feed_view} rows of the "all" group
+     *         (-1) for the matching {@code feed} rows
+     */
+    private static String insertIntoFeedViewForAllGroup(final String condition) {
+        return "INSERT OR REPLACE INTO `feed_view` (" + FEED_VIEW_COLUMNS + ") "
+                + "SELECT -1, " + FEED_VIEW_VALUES + " FROM `feed` f "
+                + "INNER JOIN `streams` s ON s.`uid` = f.`stream_id` "
+                + "LEFT JOIN `stream_state` sst ON sst.`stream_id` = f.`stream_id` "
+                + "WHERE " + condition;
+    }
+
+    /**
+     * @param condition an SQL condition on the {@code feed} table (aliased as {@code f}) and the
+     *                  {@code feed_group_subscription_join} table (aliased as {@code fgs})
+     * @return a statement (re)computing the {@code feed_view} rows of the feed groups containing
+     *         the subscriptions of the matching {@code feed} rows
+     */
+    private static String insertIntoFeedViewForGroups(final String condition) {
+        return "INSERT OR REPLACE INTO `feed_view` (" + FEED_VIEW_COLUMNS + ") "
+                + "SELECT fgs.`group_id`, " + FEED_VIEW_VALUES + " FROM `feed` f "
+                + "INNER JOIN `feed_group_subscription_join` fgs "
+                + "ON fgs.`subscription_id` = f.`subscription_id` "
+                + "INNER JOIN `streams` s ON s.`uid` = f.`stream_id` "
+                + "LEFT JOIN `stream_state` sst ON sst.`stream_id` = f.`stream_id` "
+                + "WHERE " + condition;
+    }
+
     private Migrations() {
     }
 }
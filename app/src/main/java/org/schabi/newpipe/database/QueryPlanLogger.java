@@ -0,0 +1,71 @@
+package org.schabi.newpipe.database;
+
+import android.database.Cursor;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.room.RoomDatabase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Debug helper which warns about queries that will get slow as the database grows, i.e. queries
+ * which scan a whole table or have to sort their results in a temporary b-tree, instead of
+ * using an index. Room's {@link RoomDatabase.QueryCallback} doesn't provide the duration of the
+ * queries, so the query plan of every distinct statement is checked once instead.
+ */
+public final class QueryPlanLogger implements RoomDatabase.QueryCallback {
+    private static final String TAG = QueryPlanLogger.class.getSimpleName();
+
+    private final Set<String> checkedQueries = ConcurrentHashMap.newKeySet();
+    @Nullable
+    private volatile RoomDatabase database;
+
+    /**
+     * @param roomDatabase the database built with this callback, queries run before it is set
+     *                     are not checked
+     */
+    public void setDatabase(@Nullable final RoomDatabase roomDatabase) {
+        this.database = roomDatabase;
+    }
+
+    @Override
+    public void onQuery(@NonNull final String sqlQuery, @NonNull final List<?> bindArgs) {
+        final RoomDatabase db = database;
+        if (db == null || !shouldCheck(sqlQuery) || !checkedQueries.add(sqlQuery)) {
+            return;
+        }
+
+        final List<String> problems = new ArrayList<>();
+        try (Cursor cursor = db.query("EXPLAIN QUERY PLAN " + sqlQuery, bindArgs.toArray())) {
+            final int detailIndex = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                final String detail = cursor.getString(detailIndex);
+                if ((detail.startsWith("SCAN") && !detail.contains(" USING "))
+                        || detail.startsWith("USE TEMP B-TREE")) {
+                    problems.add(detail);
+                }
+            }
+        } catch (final Exception e) {
+            Log.w(TAG, "Could not get the query plan of: " + sqlQuery, e);
+            return;
+        }
+
+        if (!problems.isEmpty()) {
+            Log.w(TAG, "Query not fully using indices " + problems + ": " + sqlQuery);
+        }
+    }
+
+    private static boolean shouldCheck(@NonNull final String sqlQuery) {
+        final String sql = sqlQuery.trim().toUpperCase(Locale.ROOT);
+        return (sql.startsWith("SELECT") || sql.startsWith("UPDATE") || sql.startsWith("DELETE"))
+                // Room's own bookkeeping, on tiny temporary tables
+                && !sql.contains("ROOM_TABLE_MODIFICATION_LOG")
+                && !sql.contains("SQLITE_MASTER");
+    }
+}
@@ -11,6 +11,7 @@ import io.reactivex.rxjava3.core.Maybe
 import org.schabi.newpipe.database.feed.model.FeedEntity
 import org.schabi.newpipe.database.feed.model.FeedGroupEntity
 import org.schabi.newpipe.database.feed.model.FeedLastUpdatedEntity
+import org.schabi.newpipe.database.feed.model.FeedViewEntity
 import org.schabi.newpipe.database.stream.StreamWithState
 import org.schabi.newpipe.database.stream.model.StreamStateEntity
 import org.schabi.newpipe.database.subscription.NotificationMode
@@ -24,73 +25,93 @@ abstract class FeedDAO {
 
     /**
      * @param groupId          the group id to get feed streams of; use
-     *                         [FeedGroupEntity.GROUP_ALL_ID] to not filter by group
+     *                         `FeedGroupEntity.GROUP_ALL_ID` to not filter by group
      * @param includePlayed    if false, only return all of the live, never-played or non-finished
      *                         feed streams (see `@see` items); if true no filter is applied
      * @param uploadDateBefore get only streams uploaded before this date (useful to filter out
      *                         future streams); use null to not filter by upload date
-     * @return the feed streams filtered according to the conditions provided in the parameters
+     * @return the first [MAX_FEED_SIZE] feed streams filtered according to the conditions
+     * provided in the parameters, see [getStreamsPage]
      * @see StreamStateEntity.isFinished()
      * @see StreamStateEntity.PLAYBACK_FINISHED_END_MILLISECONDS
      * @see StreamStateEntity.PLAYBACK_SAVE_THRESHOLD_START_MILLISECONDS
      */
-    @Query(
-        """
-        SELECT s.*, sst.progress_time
-        FROM streams s
-
-        LEFT JOIN stream_state sst
-        ON s.uid = sst.stream_id
-        
-        LEFT JOIN stream_history sh
-        ON s.uid = sh.stream_id
-        
-        INNER JOIN feed f
-        ON s.uid = f.stream_id
-
-        LEFT JOIN feed_group_subscription_join fgs
-        ON (
-            :groupId <> ${FeedGroupEntity.GROUP_ALL_ID}
-            AND fgs.subscription_id = f.subscription_id
-        )
-
-        WHERE (
-            :groupId = ${FeedGroupEntity.GROUP_ALL_ID}
-            OR fgs.group_id = :groupId
-        )
-        AND (
-            :includePlayed
-            OR sh.stream_id IS NULL
-            OR sst.stream_id IS NULL
-            OR sst.progress_time < s.duration * 1000 - ${StreamStateEntity.PLAYBACK_FINISHED_END_MILLISECONDS}
-            OR sst.progress_time < s.duration * 1000 * 3 / 4
-            OR s.stream_type = 'LIVE_STREAM'
-            OR s.stream_type = 'AUDIO_LIVE_STREAM'
-        )
-        AND (
-            :includePartiallyPlayed
-            OR sh.stream_id IS NULL
-            OR sst.stream_id IS NULL
-            OR (sst.progress_time <= ${StreamStateEntity.PLAYBACK_SAVE_THRESHOLD_START_MILLISECONDS}
-            AND sst.progress_time <= s.duration * 1000 / 4)
-            OR (sst.progress_time >= s.duration * 1000 - ${StreamStateEntity.PLAYBACK_FINISHED_END_MILLISECONDS}
-            AND sst.progress_time >= s.duration * 1000 * 3 / 4)
-        )
-        AND (
-            :uploadDateBefore IS NULL
-            OR s.upload_date IS NULL
-            OR s.upload_date < :uploadDateBefore
+    fun getStreams(
+        groupId: Long,
+        includePlayed: Boolean,
+        includePartiallyPlayed: Boolean,
+        uploadDateBefore: OffsetDateTime?
+    ): Maybe<List<StreamWithState>> {
+        return getStreamsPage(
+            groupId, includePlayed, includePartiallyPlayed, uploadDateBefore,
+            null, null, MAX_FEED_SIZE
         )
+    }
 
-        ORDER BY s.upload_date IS NULL DESC, s.upload_date DESC, s.uploader ASC
-        LIMIT 500
+    /**
+     * Loads a page of the feed from the `feed_view` table (see [FeedViewEntity]), which is already
+     * split by group and has the played state of every stream, so that no join is needed other
+     * than the one with the streams of the page.
+     *
+     * The streams are sorted by their `sort_date` (streams without an upload date first, then
+     * newest first) and then by stream id, which makes (sort date, stream id) a unique cursor:
+     * pass the values of the last stream of a page to get the next one. Since the sort date is
+     * never null, both the sorting and the cursor use the (group id, sort date, stream id) index,
+     * without sorting the feed in a temporary table.
+     *
+     * @param groupId               the group id to get feed streams of; use
+     *                              `FeedGroupEntity.GROUP_ALL_ID` to not filter by group
+     * @param includePlayed         if false, only return all of the live, never-played or
+     *                              non-finished feed streams; if true no filter is applied
+     * @param includePartiallyPlayed if false, only return the streams which were never played or
+     *                              were finished; if true no filter is applied
+     * @param uploadDateBefore      get only streams uploaded before this date (useful to filter
+     *                              out future streams); use null to not filter by upload date
+     * @param afterSortDate         the sort date of the last stream of the previous page, see
+     *                              [FeedViewEntity.sortDateOf]
+     * @param afterStreamId         the id of the last stream of the previous page, or null to
+     *                              get the first page
+     * @param limit                 the maximum number of streams to return
+     * @return the feed streams of the page
+     */
+    @Query(
+        """
+        SELECT s.*, fv.progress_time
+        FROM (
+            SELECT stream_id, sort_date, progress_time FROM feed_view
+
+            WHERE group_id = :groupId
+            AND (:includePlayed OR NOT is_played)
+            AND (:includePartiallyPlayed OR NOT is_partially_played)
+            AND (
+                :uploadDateBefore IS NULL
+                OR upload_date IS NULL
+                OR upload_date < :uploadDateBefore
+            )
+            AND (
+                :afterStreamId IS NULL
+                OR sort_date < :afterSortDate
+                OR (sort_date = :afterSortDate AND stream_id < :afterStreamId)
+            )
+
+            ORDER BY sort_date DESC, stream_id DESC
+            LIMIT :limit
+        ) fv
+
+        INNER JOIN streams s
+        ON s.uid = fv.stream_id
+
+        ORDER BY fv.sort_date DESC, fv.stream_id DESC
         """
     )
-    abstract fun getStreams(
+    abstract fun getStreamsPage(
         groupId: Long,
         includePlayed: Boolean,
         includePartiallyPlayed: Boolean,
-        uploadDateBefore: OffsetDateTime?
+        uploadDateBefore: OffsetDateTime?,
+        afterSortDate: Long?,
+        afterStreamId: Long?,
+        limit: Int
     ): Maybe<List<StreamWithState>>
 
     /**
@@ -101,25 +122,41 @@ abstract class FeedDAO {
      * when fetching new streams to check if they are new or not.
      * @param offsetDateTime the newest date to keep, older streams are removed
      */
+    fun unlinkStreamsOlderThan(offsetDateTime: OffsetDateTime) {
+        unlinkStreamsOlderThan(offsetDateTime, -1)
+    }
+
+    /**
+     * Like [unlinkStreamsOlderThan], but removes at most [limit] links, so that the database
+     * is not locked for too long. The old streams are found through the `feed_view` indexes,
+     * without scanning the whole feed.
+     *
+     * @param offsetDateTime the newest date to keep, older streams are removed
+     * @param limit the maximum number of links to remove, or -1 to remove all of them
+     * @return the number of removed links
+     */
     @Query(
         """
         DELETE FROM feed
-        WHERE feed.stream_id IN (SELECT uid from (
-              SELECT s.uid,
-              (SELECT MAX(upload_date)
-                    FROM streams s1
-                    INNER JOIN feed f1
-                    ON s1.uid = f1.stream_id
-                    WHERE f1.subscription_id = f.subscription_id) max_upload_date
-              FROM streams s
-              INNER JOIN feed f
-              ON s.uid = f.stream_id
-        
-              WHERE s.upload_date < :offsetDateTime
-              AND   s.upload_date <> max_upload_date))
+        WHERE feed.rowid IN (
+            SELECT f.rowid FROM feed_view fv
+
+            INNER JOIN feed f
+            ON f.stream_id = fv.stream_id AND f.subscription_id = fv.subscription_id
+
+            WHERE fv.group_id = ${FeedGroupEntity.GROUP_ALL_ID}
+            AND fv.upload_date < :offsetDateTime
+            AND fv.upload_date < (
+                SELECT MAX(fv1.upload_date) FROM feed_view fv1
+                WHERE fv1.subscription_id = fv.subscription_id
+                AND fv1.group_id = ${FeedGroupEntity.GROUP_ALL_ID}
+            )
+
+            LIMIT :limit
+        )
         """
     )
-    abstract fun unlinkStreamsOlderThan(offsetDateTime: OffsetDateTime)
+    abstract fun unlinkStreamsOlderThan(offsetDateTime: OffsetDateTime, limit: Int): Int
 
     @Query(
         """
@@ -160,6 +197,20 @@ abstract class FeedDAO {
         }
     }
 
+    @Query("SELECT * FROM feed_last_updated WHERE subscription_id = :subscriptionId")
+    abstract fun getLastUpdated(subscriptionId: Long): FeedLastUpdatedEntity?
+
+    /**
+     * Only updates the date of the last update, keeping the watermark of the previous update.
+     */
+    @Query(
+        """
+        UPDATE feed_last_updated SET last_updated = :lastUpdated
+        WHERE subscription_id = :subscriptionId
+        """
+    )
+    abstract fun touchLastUpdated(subscriptionId: Long, lastUpdated: OffsetDateTime)
+
     @Query(
         """
         SELECT MIN(lu.last_updated) FROM feed_last_updated lu
@@ -234,4 +285,11 @@ abstract class FeedDAO {
         outdatedThreshold: OffsetDateTime,
         @NotificationMode notificationMode: Int
     ): Flowable<List<SubscriptionEntity>>
+
+    companion object {
+        /**
+         * The maximum number of streams loaded by [getStreams].
+         */
+        const val MAX_FEED_SIZE = 500
+    }
 }
@@ -20,18 +20,42 @@ import java.time.OffsetDateTime
         )
     ]
 )
+/**
+ * Keeps track of when the feed of a subscription was last updated, together with a watermark of
+ * what was loaded, which allows the next refresh to skip unchanged channels and already known
+ * streams.
+ *
+ * @param newestStreamUrl the url of the newest stream with a precise upload date that was
+ * loaded, or `null` if there was none
+ * @param newestUploadDate the upload date of the stream at [newestStreamUrl]
+ * @param contentHash a hash of the list of streams that was loaded (see
+ * [FeedDatabaseManager.contentHashOf][org.schabi.newpipe.local.feed.FeedDatabaseManager.contentHashOf]),
+ * used as a validator to detect whether anything changed since
+ */
 data class FeedLastUpdatedEntity(
     @PrimaryKey
     @ColumnInfo(name = SUBSCRIPTION_ID)
     var subscriptionId: Long,
 
     @ColumnInfo(name = LAST_UPDATED)
-    var lastUpdated: OffsetDateTime? = null
+    var lastUpdated: OffsetDateTime? = null,
+
+    @ColumnInfo(name = NEWEST_STREAM_URL)
+    var newestStreamUrl: String? = null,
+
+    @ColumnInfo(name = NEWEST_UPLOAD_DATE)
+    var newestUploadDate: OffsetDateTime? = null,
+
+    @ColumnInfo(name = CONTENT_HASH)
+    var contentHash: Long? = null
 ) {
     companion object {
         const val FEED_LAST_UPDATED_TABLE = "feed_last_updated"
 
         const val SUBSCRIPTION_ID = "subscription_id"
         const val LAST_UPDATED = "last_updated"
+        const val NEWEST_STREAM_URL = "newest_stream_url"
+        const val NEWEST_UPLOAD_DATE = "newest_upload_date"
+        const val CONTENT_HASH = "content_hash"
     }
 }
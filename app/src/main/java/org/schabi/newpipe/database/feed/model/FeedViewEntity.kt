@@ -0,0 +1,91 @@
+package org.schabi.newpipe.database.feed.model
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.Index
+import org.schabi.newpipe.database.feed.model.FeedViewEntity.Companion.FEED_VIEW_TABLE
+import org.schabi.newpipe.database.feed.model.FeedViewEntity.Companion.GROUP_ID
+import org.schabi.newpipe.database.feed.model.FeedViewEntity.Companion.SORT_DATE
+import org.schabi.newpipe.database.feed.model.FeedViewEntity.Companion.STREAM_ID
+import org.schabi.newpipe.database.feed.model.FeedViewEntity.Companion.SUBSCRIPTION_ID
+import org.schabi.newpipe.database.feed.model.FeedViewEntity.Companion.UPLOAD_DATE
+import java.time.OffsetDateTime
+
+/**
+ * Denormalized copy of the feed, with one row for every [FeedEntity] in every group it is shown
+ * in (including [FeedGroupEntity.GROUP_ALL_ID]). It already contains everything needed to filter
+ * and sort the feed, so that loading it doesn't have to join the stream, state, history and group
+ * tables for every stream.
+ *
+ * This table is never written to directly: it is kept up to date by triggers on the tables it is
+ * built from, see `Migrations.createFeedViewTriggers`.
+ *
+ * @param sortDate the upload date in milliseconds, or [NO_UPLOAD_DATE] for streams without one,
+ * so that the feed can be sorted and paged through with the index on
+ * ([groupId], [sortDate], [streamId]) alone, see [sortDateOf]
+ * @param isPlayed whether the stream is in the history and was watched until the end, i.e. it is
+ * hidden when played streams are not shown (see `StreamStateEntity.isFinished`)
+ * @param isPartiallyPlayed whether the stream is in the history and was watched for a while, but
+ * not until the end, i.e. it is hidden when partially played streams are not shown
+ */
+@Entity(
+    tableName = FEED_VIEW_TABLE,
+    primaryKeys = [STREAM_ID, SUBSCRIPTION_ID, GROUP_ID],
+    indices = [
+        Index(GROUP_ID, SORT_DATE, STREAM_ID),
+        Index(SUBSCRIPTION_ID, GROUP_ID, UPLOAD_DATE)
+    ]
+)
+data class FeedViewEntity(
+    @ColumnInfo(name = GROUP_ID)
+    var groupId: Long,
+
+    @ColumnInfo(name = STREAM_ID)
+    var streamId: Long,
+
+    @ColumnInfo(name = SUBSCRIPTION_ID)
+    var subscriptionId: Long,
+
+    @ColumnInfo(name = UPLOAD_DATE)
+    var uploadDate: OffsetDateTime?,
+
+    @ColumnInfo(name = SORT_DATE)
+    var sortDate: Long,
+
+    @ColumnInfo(name = PROGRESS_TIME)
+    var progressMillis: Long?,
+
+    @ColumnInfo(name = IS_PLAYED)
+    var isPlayed: Boolean,
+
+    @ColumnInfo(name = IS_PARTIALLY_PLAYED)
+    var isPartiallyPlayed: Boolean
+) {
+
+    companion object {
+        const val FEED_VIEW_TABLE = "feed_view"
+
+        const val GROUP_ID = "group_id"
+        const val STREAM_ID = "stream_id"
+        const val SUBSCRIPTION_ID = "subscription_id"
+        const val UPLOAD_DATE = "upload_date"
+        const val SORT_DATE = "sort_date"
+        const val PROGRESS_TIME = "progress_time"
+        const val IS_PLAYED = "is_played"
+        const val IS_PARTIALLY_PLAYED = "is_partially_played"
+
+        /**
+         * The [sortDate] of streams without an upload date, which are shown first.
+         */
+        const val NO_UPLOAD_DATE = Long.MAX_VALUE
+
+        /**
+         * @param uploadDate the upload date of a stream
+         * @return the [sortDate] of the stream
+         */
+        @JvmStatic
+        fun sortDateOf(uploadDate: OffsetDateTime?): Long {
+            return uploadDate?.toInstant()?.toEpochMilli() ?: NO_UPLOAD_DATE
+        }
+    }
+}
@@ -9,7 +9,10 @@ import java.time.OffsetDateTime
 
 @Entity(
     tableName = SearchHistoryEntry.TABLE_NAME,
-    indices = [Index(value = [SearchHistoryEntry.SEARCH])]
+    indices = [
+        Index(value = [SearchHistoryEntry.SEARCH]),
+        Index(value = [SearchHistoryEntry.CREATION_DATE])
+    ]
 )
 data class SearchHistoryEntry(
     @field:ColumnInfo(name = CREATION_DATE) var creationDate: OffsetDateTime?,
@@ -17,8 +17,8 @@ import static org.schabi.newpipe.database.history.model.StreamHistoryEntity.STRE
 
 @Entity(tableName = STREAM_HISTORY_TABLE,
         primaryKeys = {JOIN_STREAM_ID, STREAM_ACCESS_DATE},
-        // No need to index for timestamp as they will almost always be unique
-        indices = {@Index(value = {JOIN_STREAM_ID})},
+        // The timestamp is indexed to sort the history by it
+        indices = {@Index(value = {JOIN_STREAM_ID}), @Index(value = {STREAM_ACCESS_DATE})},
         foreignKeys = {
                 @ForeignKey(entity = StreamEntity.class,
                         parentColumns = StreamEntity.STREAM_ID,
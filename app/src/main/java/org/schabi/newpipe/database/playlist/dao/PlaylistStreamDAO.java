@@ -11,6 +11,7 @@ import org.schabi.newpipe.database.playlist.PlaylistMetadataEntry;
 import org.schabi.newpipe.database.playlist.PlaylistStreamEntry;
 import org.schabi.newpipe.database.playlist.model.PlaylistEntity;
 import org.schabi.newpipe.database.playlist.model.PlaylistStreamEntity;
+import org.schabi.newpipe.database.stream.dao.StreamDAO;
 
 import java.util.List;
 
@@ -57,6 +58,21 @@ public interface PlaylistStreamDAO extends BasicDAO<PlaylistStreamEntity> {
             + " WHERE " + JOIN_PLAYLIST_ID + " = :playlistId")
     void deleteBatch(long playlistId);
 
+    @Query("SELECT * FROM " + PLAYLIST_STREAM_JOIN_TABLE
+            + " WHERE " + JOIN_PLAYLIST_ID + " = :playlistId")
+    List<PlaylistStreamEntity> getJoinsOf(long playlistId);
+
+    /**
+     * Don't pass more than {@link StreamDAO#MAX_VARIABLES_PER_QUERY} indices at once.
+     *
+     * @param playlistId the id of the playlist
+     * @param indices    the positions in the playlist to remove
+     */
+    @Query("DELETE FROM " + PLAYLIST_STREAM_JOIN_TABLE
+            + " WHERE " + JOIN_PLAYLIST_ID + " = :playlistId"
+            + " AND " + JOIN_INDEX + " IN (:indices)")
+    void deleteIndices(long playlistId, List<Integer> indices);
+
     @Query("SELECT COALESCE(MAX(" + JOIN_INDEX + "), -1)"
             + " FROM " + PLAYLIST_STREAM_JOIN_TABLE
             + " WHERE " + JOIN_PLAYLIST_ID + " = :playlistId")
@@ -2,6 +2,7 @@ package org.schabi.newpipe.database.stream.dao
 
 import androidx.room.ColumnInfo
 import androidx.room.Dao
+import androidx.room.Embedded
 import androidx.room.Insert
 import androidx.room.OnConflictStrategy
 import androidx.room.Query
@@ -11,6 +12,7 @@ import io.reactivex.rxjava3.core.Flowable
 import org.schabi.newpipe.database.BasicDAO
 import org.schabi.newpipe.database.stream.model.StreamEntity
 import org.schabi.newpipe.database.stream.model.StreamEntity.Companion.STREAM_ID
+import org.schabi.newpipe.database.stream.model.StreamStateEntity
 import org.schabi.newpipe.extractor.stream.StreamType
 import org.schabi.newpipe.util.StreamTypeUtil
 import java.time.OffsetDateTime
@@ -41,14 +43,115 @@ abstract class StreamDAO : BasicDAO<StreamEntity> {
     @Query("SELECT COUNT(*) != 0 FROM streams WHERE url = :url AND service_id = :serviceId")
     internal abstract fun exists(serviceId: Int, url: String): Boolean
 
+    @Query("SELECT COUNT(*) != 0 FROM streams WHERE uid = :streamId")
+    abstract fun exists(streamId: Long): Boolean
+
+    /**
+     * Don't call this directly, as the number of urls is limited by the maximum number of
+     * variables in a statement, use [getExistingUrls] instead.
+     */
+    @Query("SELECT url FROM streams WHERE service_id = :serviceId AND url IN (:urls)")
+    internal abstract fun getExistingUrlsInternal(serviceId: Int, urls: List<String>): List<String>
+
+    /**
+     * Looks up which of the given streams already exist, using one query for every
+     * [MAX_VARIABLES_PER_QUERY] streams of the same service instead of one query per stream.
+     *
+     * @param streams pairs of service id and url of the streams to look up
+     * @return the subset of [streams] which exist in the database
+     */
+    fun getExistingUrls(streams: Collection<Pair<Int, String>>): Set<Pair<Int, String>> {
+        val existing = HashSet<Pair<Int, String>>()
+        for ((serviceId, urls) in streams.groupBy({ it.first }, { it.second })) {
+            for (chunk in urls.distinct().chunked(MAX_VARIABLES_PER_QUERY)) {
+                getExistingUrlsInternal(serviceId, chunk).mapTo(existing) { serviceId to it }
+            }
+        }
+        return existing
+    }
+
     @Query(
         """
-        SELECT uid, stream_type, textual_upload_date, upload_date, is_upload_date_approximation, duration 
+        SELECT uid, url, stream_type, textual_upload_date, upload_date, is_upload_date_approximation, duration 
         FROM streams WHERE url = :url AND service_id = :serviceId
         """
     )
     internal abstract fun getMinimalStreamForCompare(serviceId: Int, url: String): StreamCompareFeed?
 
+    /**
+     * Don't call this directly, as the number of urls is limited by the maximum number of
+     * variables in a statement, use [getMinimalStreamsForCompare] instead.
+     */
+    @Query(
+        """
+        SELECT uid, url, stream_type, textual_upload_date, upload_date, is_upload_date_approximation, duration 
+        FROM streams WHERE service_id = :serviceId AND url IN (:urls)
+        """
+    )
+    internal abstract fun getMinimalStreamsForCompareInternal(
+        serviceId: Int,
+        urls: List<String>
+    ): List<StreamCompareFeed>
+
+    /**
+     * @return the [StreamCompareFeed]s of all the given streams which exist in the database,
+     * by service id and url, loaded with one query for every [MAX_VARIABLES_PER_QUERY] streams
+     * of the same service
+     */
+    internal fun getMinimalStreamsForCompare(
+        streams: Collection<StreamEntity>
+    ): Map<Pair<Int, String>, StreamCompareFeed> {
+        val result = HashMap<Pair<Int, String>, StreamCompareFeed>()
+        for ((serviceId, urls) in streams.groupBy({ it.serviceId }, { it.url })) {
+            for (chunk in urls.distinct().chunked(MAX_VARIABLES_PER_QUERY)) {
+                for (stream in getMinimalStreamsForCompareInternal(serviceId, chunk)) {
+                    result[serviceId to stream.url] = stream
+                }
+            }
+        }
+        return result
+    }
+
+    /**
+     * Don't call this directly, as the number of urls is limited by the maximum number of
+     * variables in a statement, use [getStreamStates] instead.
+     */
+    @Query(
+        """
+        SELECT s.url, ss.stream_id, ss.progress_time FROM streams s
+
+        INNER JOIN stream_state ss
+        ON ss.stream_id = s.uid
+
+        WHERE s.service_id = :serviceId AND s.url IN (:urls)
+        """
+    )
+    internal abstract fun getStreamStatesInternal(
+        serviceId: Int,
+        urls: List<String>
+    ): List<StreamUrlState>
+
+    /**
+     * Loads the states of the given streams with one query for every [MAX_VARIABLES_PER_QUERY]
+     * streams of the same service, instead of looking up every stream and then its state.
+     *
+     * @param streams pairs of service id and url of the streams to look up
+     * @return the states of the streams which have one, by service id and url
+     */
+    fun getStreamStates(
+        streams: Collection<Pair<Int, String>>
+    ): Map<Pair<Int, String>, StreamStateEntity> {
+        val result = HashMap<Pair<Int, String>, StreamStateEntity>()
+        for ((serviceId, urls) in streams.groupBy({ it.first }, { it.second })) {
+            for (chunk in urls.distinct().chunked(MAX_VARIABLES_PER_QUERY)) {
+                for (state in getStreamStatesInternal(serviceId, chunk)) {
+                    result[serviceId to state.url] = state.state
+                }
+            }
+        }
+        return result
+    }
+
     @Transaction
     open fun upsert(newerStream: StreamEntity): Long {
         val uid = silentInsertInternal(newerStream)
@@ -58,7 +161,10 @@ abstract class StreamDAO : BasicDAO<StreamEntity> {
             return uid
         }
 
-        compareAndUpdateStream(newerStream)
+        compareAndUpdateStream(
+            newerStream,
+            getMinimalStreamForCompare(newerStream.serviceId, newerStream.url)
+        )
 
         update(newerStream)
         return newerStream.uid
@@ -68,6 +174,13 @@ abstract class StreamDAO : BasicDAO<StreamEntity> {
     open fun upsertAll(streams: List<StreamEntity>): List<Long> {
         val insertUidList = silentInsertAllInternal(streams)
 
+        val conflictingStreams = streams.filterIndexed { index, _ -> insertUidList[index] == -1L }
+        val existentMinimalStreams = if (conflictingStreams.isEmpty()) {
+            emptyMap()
+        } else {
+            getMinimalStreamsForCompare(conflictingStreams)
+        }
+
         val streamIds = ArrayList<Long>(streams.size)
         for ((index, uid) in insertUidList.withIndex()) {
             val newerStream = streams[index]
@@ -77,7 +190,10 @@ abstract class StreamDAO : BasicDAO<StreamEntity> {
                 continue
             }
 
-            compareAndUpdateStream(newerStream)
+            compareAndUpdateStream(
+                newerStream,
+                existentMinimalStreams[newerStream.serviceId to newerStream.url]
+            )
             streamIds.add(newerStream.uid)
         }
 
@@ -85,9 +201,13 @@ abstract class StreamDAO : BasicDAO<StreamEntity> {
         return streamIds
     }
 
-    private fun compareAndUpdateStream(newerStream: StreamEntity) {
-        val existentMinimalStream = getMinimalStreamForCompare(newerStream.serviceId, newerStream.url)
-            ?: throw IllegalStateException("Stream cannot be null just after insertion.")
+    private fun compareAndUpdateStream(
+        newerStream: StreamEntity,
+        existentMinimalStream: StreamCompareFeed?
+    ) {
+        if (existentMinimalStream == null) {
+            throw IllegalStateException("Stream cannot be null just after insertion.")
+        }
         newerStream.uid = existentMinimalStream.uid
 
         if (!StreamTypeUtil.isLiveStream(newerStream.streamType)) {
@@ -124,6 +244,47 @@ abstract class StreamDAO : BasicDAO<StreamEntity> {
     )
     abstract fun deleteOrphans(): Int
 
+    @Query("SELECT stream_id FROM stream_orphan_candidates LIMIT :limit")
+    internal abstract fun getOrphanCandidates(limit: Int): List<Long>
+
+    @Query(
+        """
+        DELETE FROM streams WHERE uid IN (:streamIds)
+
+        AND NOT EXISTS (SELECT 1 FROM stream_history sh
+        WHERE sh.stream_id = streams.uid)
+
+        AND NOT EXISTS (SELECT 1 FROM playlist_stream_join ps
+        WHERE ps.stream_id = streams.uid)
+
+        AND NOT EXISTS (SELECT 1 FROM feed f
+        WHERE f.stream_id = streams.uid)
+        """
+    )
+    internal abstract fun deleteOrphansAmong(streamIds: List<Long>): Int
+
+    @Query("DELETE FROM stream_orphan_candidates WHERE stream_id IN (:streamIds)")
+    internal abstract fun removeOrphanCandidates(streamIds: List<Long>)
+
+    /**
+     * Incremental version of [deleteOrphans]: only checks a batch of the streams which were
+     * inserted or lost a reference since they were last checked (see
+     * [StreamOrphanCandidateEntity][org.schabi.newpipe.database.stream.model.StreamOrphanCandidateEntity]).
+     *
+     * @param batchSize the maximum number of streams to check, at most [MAX_VARIABLES_PER_QUERY]
+     * @return the number of streams that were checked, if it is lower than [batchSize] there are
+     * no candidates left
+     */
+    @Transaction
+    open fun deleteOrphanCandidates(batchSize: Int): Int {
+        val candidates = getOrphanCandidates(batchSize)
+        if (candidates.isNotEmpty()) {
+            deleteOrphansAmong(candidates)
+            removeOrphanCandidates(candidates)
+        }
+        return candidates.size
+    }
+
     /**
      * Minimal entry class used when comparing/updating an existent stream.
      */
@@ -131,6 +292,9 @@ abstract class StreamDAO : BasicDAO<StreamEntity> {
         @ColumnInfo(name = STREAM_ID)
         var uid: Long = 0,
 
+        @ColumnInfo(name = StreamEntity.STREAM_URL)
+        var url: String,
+
         @ColumnInfo(name = StreamEntity.STREAM_TYPE)
         var streamType: StreamType,
 
@@ -146,4 +310,23 @@ abstract class StreamDAO : BasicDAO<StreamEntity> {
         @ColumnInfo(name = StreamEntity.STREAM_DURATION)
         var duration: Long
     )
+
+    /**
+     * The state of a stream, along with its url.
+     */
+    internal data class StreamUrlState(
+        @ColumnInfo(name = StreamEntity.STREAM_URL)
+        var url: String,
+
+        @Embedded
+        var state: StreamStateEntity
+    )
+
+    companion object {
+        /**
+         * The maximum number of values to pass to a single `IN (...)` query, staying below
+         * SQLite's default limit of 999 variables per statement on older Android versions.
+         */
+        const val MAX_VARIABLES_PER_QUERY = 900
+    }
 }
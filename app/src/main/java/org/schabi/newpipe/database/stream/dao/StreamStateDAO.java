@@ -34,6 +34,16 @@ public interface StreamStateDAO extends BasicDAO<StreamStateEntity> {
     @Query("SELECT * FROM " + STREAM_STATE_TABLE + " WHERE " + JOIN_STREAM_ID + " = :streamId")
     Flowable<List<StreamStateEntity>> getState(long streamId);
 
+    /**
+     * Don't pass more than {@link StreamDAO#MAX_VARIABLES_PER_QUERY} ids at once.
+     *
+     * @param streamIds the ids of the streams
+     * @return the states of the streams which have one
+     */
+    @Query("SELECT * FROM " + STREAM_STATE_TABLE + " WHERE " + JOIN_STREAM_ID
+            + " IN (:streamIds)")
+    List<StreamStateEntity> getStates(List<Long> streamIds);
+
     @Query("DELETE FROM " + STREAM_STATE_TABLE + " WHERE " + JOIN_STREAM_ID + " = :streamId")
     int deleteState(long streamId);
 
@@ -0,0 +1,27 @@
+package org.schabi.newpipe.database.stream.model
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.PrimaryKey
+import org.schabi.newpipe.database.stream.model.StreamOrphanCandidateEntity.Companion.STREAM_ORPHAN_CANDIDATES_TABLE
+
+/**
+ * A stream which may not be referenced by the feed, the history or a playlist anymore, because it
+ * was just inserted or one of its references was removed since the last cleanup.
+ *
+ * Rows are added by triggers (see `Migrations.createOrphanCandidateTriggers`) and consumed by
+ * [StreamDAO.deleteOrphanCandidates][org.schabi.newpipe.database.stream.dao.StreamDAO.deleteOrphanCandidates],
+ * so that the cleanup only has to look at these streams instead of the whole table.
+ */
+@Entity(tableName = STREAM_ORPHAN_CANDIDATES_TABLE)
+data class StreamOrphanCandidateEntity(
+    @PrimaryKey
+    @ColumnInfo(name = STREAM_ID)
+    var streamId: Long
+) {
+    companion object {
+        const val STREAM_ORPHAN_CANDIDATES_TABLE = "stream_orphan_candidates"
+
+        const val STREAM_ID = "stream_id"
+    }
+}
@@ -68,27 +68,69 @@ abstract class SubscriptionDAO : BasicDAO<SubscriptionEntity> {
         filter: String
     ): Flowable<List<SubscriptionEntity>>
 
-    @Query("SELECT * FROM subscriptions WHERE url LIKE :url AND service_id = :serviceId")
-    abstract fun getSubscriptionFlowable(serviceId: Int, url: String): Flowable<List<SubscriptionEntity>>
+    fun getSubscriptionFlowable(serviceId: Int, url: String): Flowable<List<SubscriptionEntity>> {
+        return getSubscriptionFlowableInternal(serviceId, SubscriptionEntity.normalizeUrl(url)!!)
+    }
+
+    @Query("SELECT * FROM subscriptions WHERE service_id = :serviceId AND normalized_url = :normalizedUrl")
+    internal abstract fun getSubscriptionFlowableInternal(
+        serviceId: Int,
+        normalizedUrl: String
+    ): Flowable<List<SubscriptionEntity>>
+
+    fun getSubscription(serviceId: Int, url: String): Maybe<SubscriptionEntity> {
+        return getSubscriptionInternal(serviceId, SubscriptionEntity.normalizeUrl(url)!!)
+    }
 
-    @Query("SELECT * FROM subscriptions WHERE url LIKE :url AND service_id = :serviceId")
-    abstract fun getSubscription(serviceId: Int, url: String): Maybe<SubscriptionEntity>
+    @Query("SELECT * FROM subscriptions WHERE service_id = :serviceId AND normalized_url = :normalizedUrl")
+    internal abstract fun getSubscriptionInternal(serviceId: Int, normalizedUrl: String): Maybe<SubscriptionEntity>
 
     @Query("SELECT * FROM subscriptions WHERE uid = :subscriptionId")
     abstract fun getSubscription(subscriptionId: Long): SubscriptionEntity
 
+    /**
+     * The subscriptions whose info was never loaded, e.g. because they were imported, ordered by
+     * uid. The subscriber count is set whenever the info of a channel is loaded, even if unknown.
+     */
+    @Query(
+        """
+        SELECT * FROM subscriptions
+
+        WHERE subscriber_count IS NULL AND uid > :afterUid
+
+        ORDER BY uid ASC
+
+        LIMIT :limit
+        """
+    )
+    abstract fun getSubscriptionsWithoutInfo(afterUid: Long, limit: Int): List<SubscriptionEntity>
+
     @Query("DELETE FROM subscriptions")
     abstract override fun deleteAll(): Int
 
-    @Query("DELETE FROM subscriptions WHERE url LIKE :url AND service_id = :serviceId")
-    abstract fun deleteSubscription(serviceId: Int, url: String): Int
+    fun deleteSubscription(serviceId: Int, url: String): Int {
+        return deleteSubscriptionInternal(serviceId, SubscriptionEntity.normalizeUrl(url)!!)
+    }
+
+    @Query("DELETE FROM subscriptions WHERE service_id = :serviceId AND normalized_url = :normalizedUrl")
+    internal abstract fun deleteSubscriptionInternal(serviceId: Int, normalizedUrl: String): Int
 
-    @Query("SELECT uid FROM subscriptions WHERE url LIKE :url AND service_id = :serviceId")
+    // the exact URL, since it is the one which conflicted with the unique index when inserting
+    @Query("SELECT uid FROM subscriptions WHERE service_id = :serviceId AND url = :url")
     internal abstract fun getSubscriptionIdInternal(serviceId: Int, url: String): Long?
 
     @Insert(onConflict = OnConflictStrategy.IGNORE)
     internal abstract fun silentInsertAllInternal(entities: List<SubscriptionEntity>): List<Long>
 
+    /**
+     * Inserts the subscriptions which don't exist yet, leaving the existing ones untouched.
+     *
+     * @return the number of inserted subscriptions
+     */
+    open fun insertAllIfAbsent(entities: List<SubscriptionEntity>): Int {
+        return silentInsertAllInternal(entities).count { it != -1L }
+    }
+
     @Transaction
     open fun upsertAll(entities: List<SubscriptionEntity>): List<SubscriptionEntity> {
         val insertUidList = silentInsertAllInternal(entities)
@@ -13,12 +13,18 @@ import org.schabi.newpipe.extractor.channel.ChannelInfoItem;
 import org.schabi.newpipe.util.Constants;
 import org.schabi.newpipe.util.image.ImageStrategy;
 
+import java.util.Locale;
+
+import static org.schabi.newpipe.database.subscription.SubscriptionEntity.SUBSCRIPTION_NORMALIZED_URL;
 import static org.schabi.newpipe.database.subscription.SubscriptionEntity.SUBSCRIPTION_SERVICE_ID;
 import static org.schabi.newpipe.database.subscription.SubscriptionEntity.SUBSCRIPTION_TABLE;
 import static org.schabi.newpipe.database.subscription.SubscriptionEntity.SUBSCRIPTION_URL;
 
 @Entity(tableName = SUBSCRIPTION_TABLE,
-        indices = {@Index(value = {SUBSCRIPTION_SERVICE_ID, SUBSCRIPTION_URL}, unique = true)})
+        indices = {
+                @Index(value = {SUBSCRIPTION_SERVICE_ID, SUBSCRIPTION_URL}, unique = true),
+                @Index(value = {SUBSCRIPTION_SERVICE_ID, SUBSCRIPTION_NORMALIZED_URL})
+        })
 public class SubscriptionEntity {
     public static final String SUBSCRIPTION_UID = "uid";
     public static final String SUBSCRIPTION_TABLE = "subscriptions";
@@ -29,6 +35,7 @@ public class SubscriptionEntity {
     public static final String SUBSCRIPTION_SUBSCRIBER_COUNT = "subscriber_count";
     public static final String SUBSCRIPTION_DESCRIPTION = "description";
     public static final String SUBSCRIPTION_NOTIFICATION_MODE  = "notification_mode";
+    public static final String SUBSCRIPTION_NORMALIZED_URL = "normalized_url";
 
     @PrimaryKey(autoGenerate = true)
     private long uid = 0;
@@ -54,6 +61,12 @@ public class SubscriptionEntity {
     @ColumnInfo(name = SUBSCRIPTION_NOTIFICATION_MODE)
     private int notificationMode;
 
+    /**
+     * The {@link #url} normalized with {@link #normalizeUrl(String)}, always set together with it.
+     */
+    @ColumnInfo(name = SUBSCRIPTION_NORMALIZED_URL)
+    private String normalizedUrl;
+
     @Ignore
     public static SubscriptionEntity from(@NonNull final ChannelInfo info) {
         final SubscriptionEntity result = new SubscriptionEntity();
@@ -64,6 +77,18 @@ public class SubscriptionEntity {
         return result;
     }
 
+    /**
+     * Normalizes the URL of a subscription, so that the URLs of the same channel which differ
+     * only in case can be matched with an exact comparison, which can use an index.
+     *
+     * @param url the URL of a subscription
+     * @return the URL in lower case, or {@code null} if it is {@code null}
+     */
+    @Nullable
+    public static String normalizeUrl(@Nullable final String url) {
+        return url == null ? null : url.toLowerCase(Locale.ROOT);
+    }
+
     public long getUid() {
         return uid;
     }
@@ -86,6 +111,15 @@ public class SubscriptionEntity {
 
     public void setUrl(final String url) {
         this.url = url;
+        this.normalizedUrl = normalizeUrl(url);
+    }
+
+    public String getNormalizedUrl() {
+        return normalizedUrl;
+    }
+
+    public void setNormalizedUrl(final String normalizedUrl) {
+        this.normalizedUrl = normalizedUrl;
     }
 
     public String getName() {
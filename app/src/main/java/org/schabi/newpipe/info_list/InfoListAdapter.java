@@ -32,13 +32,19 @@ import org.schabi.newpipe.info_list.holder.StreamGridInfoItemHolder;
 import org.schabi.newpipe.info_list.holder.StreamInfoItemHolder;
 import org.schabi.newpipe.info_list.holder.StreamMiniInfoItemHolder;
 import org.schabi.newpipe.local.history.HistoryRecordManager;
+import org.schabi.newpipe.util.DependentPreferenceHelper;
 import org.schabi.newpipe.util.FallbackViewHolder;
 import org.schabi.newpipe.util.OnClickGesture;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 import java.util.function.Supplier;
 
+import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
+
 /*
  * Created by Christian Schabesberger on 01.08.16.
  *
@@ -84,6 +90,12 @@ public class InfoListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
     private final InfoItemBuilder infoItemBuilder;
     private final List<InfoItem> infoItemList;
     private final HistoryRecordManager recordManager;
+    /**
+     * The items whose stream state is being loaded, so that they are not loaded twice. Only
+     * accessed on the main thread.
+     */
+    private final Set<InfoItem> prefetchingStates =
+            Collections.newSetFromMap(new IdentityHashMap<>());
 
     private boolean useMiniVariant = false;
     private boolean showFooter = false;
@@ -132,6 +144,9 @@ public class InfoListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
                     + infoItemList.size() + ", data.size() = " + data.size());
         }
 
+        // load the states of the whole page with one query, instead of one per bound item
+        prefetchStreamStates(data);
+
         final int offsetStart = sizeConsideringHeaderOffset();
         infoItemList.addAll(data);
 
@@ -154,6 +169,40 @@ public class InfoListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
         }
     }
 
+    /**
+     * Loads the stream states of the items in the background. The holders show no progress until
+     * the states are cached, and are then updated with a payload.
+     *
+     * @param items the items to load the stream states of
+     */
+    private void prefetchStreamStates(@NonNull final List<? extends InfoItem> items) {
+        if (!DependentPreferenceHelper.getPositionsInListsEnabled(layoutInflater.getContext())) {
+            return;
+        }
+
+        final List<InfoItem> toLoad = new ArrayList<>();
+        for (final InfoItem item : items) {
+            if (item.getInfoType() == InfoItem.InfoType.STREAM
+                    && !recordManager.isStreamStateCached(item)
+                    && prefetchingStates.add(item)) {
+                toLoad.add(item);
+            }
+        }
+        if (toLoad.isEmpty()) {
+            return;
+        }
+
+        //noinspection ResultOfMethodCallIgnored
+        recordManager.prefetchStreamStates(toLoad)
+                .onErrorComplete()
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(() -> {
+                    toLoad.forEach(prefetchingStates::remove);
+                    // only the bound holders are updated
+                    notifyItemRangeChanged(0, getItemCount(), Boolean.TRUE);
+                });
+    }
+
     public void clearStreamItemList() {
         if (infoItemList.isEmpty()) {
             return;
@@ -334,9 +383,22 @@ public class InfoListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
                     + "position = [" + position + "]");
         }
         if (holder instanceof InfoItemHolder) {
-            ((InfoItemHolder) holder).updateFromItem(
-                    // If header is present, offset the items by -1
+            // If header is present, offset the items by -1
+            final InfoItem item = infoItemList.get(hasHeader() ? position - 1 : position);
+            ((InfoItemHolder) holder).updateFromItem(item, recordManager);
+            // e.g. the state was changed since the page was loaded
+            prefetchStreamStates(List.of(item));
+        }
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull final RecyclerView.ViewHolder holder, final int position,
+                                 @NonNull final List<Object> payloads) {
+        if (!payloads.isEmpty() && holder instanceof InfoItemHolder) {
+            ((InfoItemHolder) holder).updateState(
                     infoItemList.get(hasHeader() ? position - 1 : position), recordManager);
+        } else if (payloads.isEmpty()) {
+            onBindViewHolder(holder, position);
         }
     }
 
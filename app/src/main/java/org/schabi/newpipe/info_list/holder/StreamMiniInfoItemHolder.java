@@ -64,8 +64,7 @@ public class StreamMiniInfoItemHolder extends InfoItemHolder {
             StreamStateEntity state2 = null;
             if (DependentPreferenceHelper
                     .getPositionsInListsEnabled(itemProgressView.getContext())) {
-                state2 = historyRecordManager.loadStreamState(infoItem)
-                        .blockingGet()[0];
+                state2 = historyRecordManager.getCachedStreamState(infoItem);
             }
             if (state2 != null) {
                 itemProgressView.setVisibility(View.VISIBLE);
@@ -118,9 +117,7 @@ public class StreamMiniInfoItemHolder extends InfoItemHolder {
 
         StreamStateEntity state = null;
         if (DependentPreferenceHelper.getPositionsInListsEnabled(itemProgressView.getContext())) {
-            state = historyRecordManager
-                    .loadStreamState(infoItem)
-                    .blockingGet()[0];
+            state = historyRecordManager.getCachedStreamState(infoItem);
         }
         if (state != null && item.getDuration() > 0
                 && !StreamTypeUtil.isLiveStream(item.getStreamType())) {
@@ -12,6 +12,7 @@ import org.schabi.newpipe.NewPipeDatabase
 import org.schabi.newpipe.database.feed.model.FeedEntity
 import org.schabi.newpipe.database.feed.model.FeedGroupEntity
 import org.schabi.newpipe.database.feed.model.FeedLastUpdatedEntity
+import org.schabi.newpipe.database.feed.model.FeedViewEntity
 import org.schabi.newpipe.database.stream.StreamWithState
 import org.schabi.newpipe.database.stream.model.StreamEntity
 import org.schabi.newpipe.database.subscription.NotificationMode
@@ -34,23 +35,57 @@ class FeedDatabaseManager(context: Context) {
          */
         val FEED_OLDEST_ALLOWED_DATE: OffsetDateTime = LocalDate.now().minusWeeks(13)
             .atStartOfDay().atOffset(ZoneOffset.UTC)
+
+        /**
+         * The maximum number of rows [removeOrphansOrOlderStreams] removes or checks at once.
+         */
+        private const val CLEANUP_BATCH_SIZE = 500
+
+        /**
+         * Computes a hash of the fields of the streams which identify them and which are
+         * displayed in the feed. View counts and upload dates are left out, since they may
+         * change at every refresh without the channel actually having new content (e.g. upload
+         * dates parsed from texts like "2 days ago").
+         */
+        fun contentHashOf(items: List<StreamInfoItem>): Long {
+            var hash = 1L
+            for (item in items) {
+                hash = 31 * hash + item.serviceId
+                hash = 31 * hash + item.url.hashCode()
+                hash = 31 * hash + item.name.hashCode()
+                hash = 31 * hash + item.duration
+                // enums don't have a stable hash code across processes
+                hash = 31 * hash + item.streamType.name.hashCode()
+            }
+            return hash
+        }
     }
 
     fun groups() = feedGroupTable.getAll()
 
     fun database() = database
 
-    fun getStreams(
+    /**
+     * @param after the last stream of the previous page, or `null` to get the first page
+     * @param pageSize the maximum number of streams to load
+     * @return a page of the feed, see `FeedDAO.getStreamsPage`
+     */
+    fun getStreamsPage(
         groupId: Long,
         includePlayedStreams: Boolean,
         includePartiallyPlayedStreams: Boolean,
-        includeFutureStreams: Boolean
+        includeFutureStreams: Boolean,
+        after: StreamWithState?,
+        pageSize: Int
     ): Maybe<List<StreamWithState>> {
-        return feedTable.getStreams(
+        return feedTable.getStreamsPage(
             groupId,
             includePlayedStreams,
             includePartiallyPlayedStreams,
-            if (includeFutureStreams) null else OffsetDateTime.now()
+            if (includeFutureStreams) null else OffsetDateTime.now(),
+            after?.let { FeedViewEntity.sortDateOf(it.stream.uploadDate) },
+            after?.stream?.uid,
+            pageSize
         )
     }
 
@@ -73,11 +108,45 @@ class FeedDatabaseManager(context: Context) {
         outdatedThreshold: OffsetDateTime
     ) = feedTable.getAllOutdatedForGroup(groupId, outdatedThreshold)
 
+    /**
+     * Marks the subscription as needing an update, also discarding the watermark of the last
+     * update, so that the next refresh processes all of its streams again.
+     */
     fun markAsOutdated(subscriptionId: Long) = feedTable
         .setLastUpdatedForSubscription(FeedLastUpdatedEntity(subscriptionId, null))
 
-    fun doesStreamExist(stream: StreamInfoItem): Boolean {
-        return streamTable.exists(stream.serviceId, stream.url)
+    fun getLastUpdated(subscriptionId: Long): FeedLastUpdatedEntity? =
+        feedTable.getLastUpdated(subscriptionId)
+
+    /**
+     * @return whether the streams are the same that were stored during the last update of the
+     * subscription, according to the [FeedLastUpdatedEntity.contentHash] validator
+     */
+    fun isUnchanged(lastUpdated: FeedLastUpdatedEntity?, items: List<StreamInfoItem>): Boolean {
+        return lastUpdated?.lastUpdated != null &&
+            lastUpdated.contentHash == contentHashOf(items)
+    }
+
+    /**
+     * Marks the subscription as up to date without touching its streams, to be used when
+     * [isUnchanged] returned `true`.
+     */
+    fun markAsUpToDate(subscriptionId: Long) =
+        feedTable.touchLastUpdated(subscriptionId, OffsetDateTime.now(ZoneOffset.UTC))
+
+    /**
+     * Checks which of the given streams are in the database with a few batched queries,
+     * instead of querying each stream on its own.
+     *
+     * @return the streams which are not in the database yet, in the same order
+     */
+    fun filterNotExistingStreams(streams: List<StreamInfoItem>): List<StreamInfoItem> {
+        if (streams.isEmpty()) {
+            return streams
+        }
+
+        val existing = streamTable.getExistingUrls(streams.map { it.serviceId to it.url })
+        return streams.filter { (it.serviceId to it.url) !in existing }
     }
 
     fun upsertAll(
@@ -106,14 +175,57 @@ class FeedDatabaseManager(context: Context) {
             feedTable.insertAll(feedEntities)
         }
 
+        // only precise upload dates can be compared reliably between refreshes, and upcoming
+        // streams must not hide streams uploaded before they start
+        val now = OffsetDateTime.now(ZoneOffset.UTC)
+        val newestStream = items
+            .filter {
+                it.uploadDate?.isApproximation == false &&
+                    !it.uploadDate!!.offsetDateTime().isAfter(now)
+            }
+            .maxByOrNull { it.uploadDate!!.offsetDateTime() }
+
         feedTable.setLastUpdatedForSubscription(
-            FeedLastUpdatedEntity(subscriptionId, OffsetDateTime.now(ZoneOffset.UTC))
+            FeedLastUpdatedEntity(
+                subscriptionId,
+                OffsetDateTime.now(ZoneOffset.UTC),
+                newestStream?.url,
+                newestStream?.uploadDate?.offsetDateTime(),
+                contentHashOf(items)
+            )
         )
     }
 
-    fun removeOrphansOrOlderStreams(oldestAllowedDate: OffsetDateTime = FEED_OLDEST_ALLOWED_DATE) {
-        feedTable.unlinkStreamsOlderThan(oldestAllowedDate)
-        streamTable.deleteOrphans()
+    /**
+     * Removes the streams older than [oldestAllowedDate] from the feed, and then the streams
+     * which are not referenced anymore. This is done in batches of [CLEANUP_BATCH_SIZE], each in
+     * its own transaction, so that the database is never locked for long.
+     *
+     * @param shouldContinue checked after every batch, return false to stop early; the remaining
+     * streams are then removed by the next cleanup
+     */
+    fun removeOrphansOrOlderStreams(
+        oldestAllowedDate: OffsetDateTime = FEED_OLDEST_ALLOWED_DATE,
+        shouldContinue: () -> Boolean = { true }
+    ) {
+        var unlinked = 0
+        do {
+            val count = feedTable.unlinkStreamsOlderThan(oldestAllowedDate, CLEANUP_BATCH_SIZE)
+            unlinked += count
+        } while (count >= CLEANUP_BATCH_SIZE && shouldContinue())
+
+        var checked = 0
+        do {
+            val count = streamTable.deleteOrphanCandidates(CLEANUP_BATCH_SIZE)
+            checked += count
+        } while (count >= CLEANUP_BATCH_SIZE && shouldContinue())
+
+        if (DEBUG) {
+            Log.d(
+                this::class.java.simpleName,
+                "removeOrphansOrOlderStreams() → unlinked $unlinked, checked $checked streams"
+            )
+        }
     }
 
     fun clear() {
@@ -66,6 +66,7 @@ import org.schabi.newpipe.extractor.exceptions.ContentNotAvailableException
 import org.schabi.newpipe.extractor.stream.StreamInfoItem
 import org.schabi.newpipe.extractor.utils.Utils.isNullOrEmpty
 import org.schabi.newpipe.fragments.BaseStateFragment
+import org.schabi.newpipe.fragments.OnScrollBelowItemsListener
 import org.schabi.newpipe.info_list.ItemViewMode
 import org.schabi.newpipe.info_list.dialog.InfoItemDialog
 import org.schabi.newpipe.ktx.animate
@@ -157,6 +158,22 @@ class FeedFragment : BaseStateFragment<FeedState>() {
             }
         })
 
+        feedBinding.itemsList.addOnScrollListener(object : OnScrollBelowItemsListener() {
+            override fun onScrolledDown(recyclerView: RecyclerView) {
+                viewModel.loadNextPage()
+            }
+        })
+
+        feedBinding.itemsList.addOnScrollListener(object : RecyclerView.OnScrollListener() {
+            override fun onScrolled(recyclerView: RecyclerView, dx: Int, dy: Int) {
+                // load the dropped pages again before reaching the top of the list
+                val layoutManager = recyclerView.layoutManager as? GridLayoutManager ?: return
+                if (dy < 0 && layoutManager.findFirstVisibleItemPosition() <= layoutManager.childCount) {
+                    viewModel.loadPreviousPage()
+                }
+            }
+        })
+
         feedBinding.itemsList.adapter = groupAdapter
         setupListViewMode()
     }
@@ -15,7 +15,17 @@ sealed class FeedState {
         val items: List<StreamItem>,
         val oldestUpdate: OffsetDateTime?,
         val notLoadedCount: Long,
-        val itemsErrors: List<Throwable>
+        val itemsErrors: List<Throwable>,
+        /**
+         * Whether there may be more streams after [items], which can be loaded with
+         * [FeedViewModel.loadNextPage]
+         */
+        val hasMoreItems: Boolean = false,
+        /**
+         * Whether streams before [items] were dropped to limit the memory used, which can be
+         * loaded again with [FeedViewModel.loadPreviousPage]
+         */
+        val hasPreviousItems: Boolean = false
     ) : FeedState()
 
     data class ErrorState(
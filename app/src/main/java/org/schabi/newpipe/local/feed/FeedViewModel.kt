@@ -2,6 +2,7 @@ package org.schabi.newpipe.local.feed
 
 import android.app.Application
 import android.content.Context
+import android.util.Log
 import androidx.core.content.edit
 import androidx.lifecycle.LiveData
 import androidx.lifecycle.MutableLiveData
@@ -11,6 +12,7 @@ import androidx.lifecycle.viewmodel.viewModelFactory
 import androidx.preference.PreferenceManager
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers
 import io.reactivex.rxjava3.core.Flowable
+import io.reactivex.rxjava3.disposables.Disposable
 import io.reactivex.rxjava3.functions.Function6
 import io.reactivex.rxjava3.processors.BehaviorProcessor
 import io.reactivex.rxjava3.schedulers.Schedulers
@@ -30,7 +32,7 @@ import java.util.concurrent.TimeUnit
 
 class FeedViewModel(
     private val application: Application,
-    groupId: Long = FeedGroupEntity.GROUP_ALL_ID,
+    private val groupId: Long = FeedGroupEntity.GROUP_ALL_ID,
     initialShowPlayedItems: Boolean,
     initialShowPartiallyPlayedItems: Boolean,
     initialShowFutureItems: Boolean
@@ -55,6 +57,13 @@ class FeedViewModel(
     private val mutableStateLiveData = MutableLiveData<FeedState>()
     val stateLiveData: LiveData<FeedState> = mutableStateLiveData
 
+    /**
+     * The filters and the pages of the currently shown feed, used to load the next and previous
+     * pages with the same filters. Only accessed on the main thread.
+     */
+    private var currentFeed: LoadedFeed? = null
+    private var pageDisposable: Disposable? = null
+
     private var combineDisposable = Flowable
         .combineLatest(
             FeedEventManager.events(),
@@ -73,34 +82,150 @@ class FeedViewModel(
         .subscribeOn(Schedulers.io())
         .observeOn(Schedulers.io())
         .map { (event, showPlayedItems, showPartiallyPlayedItems, showFutureItems, notLoadedCount, oldestUpdate) ->
-            val streamItems = if (event is SuccessResultEvent || event is IdleEvent)
-                feedDatabaseManager
-                    .getStreams(groupId, showPlayedItems, showPartiallyPlayedItems, showFutureItems)
-                    .blockingGet(arrayListOf())
-            else
-                arrayListOf()
-
-            CombineResultDataHolder(event, streamItems, notLoadedCount, oldestUpdate)
+            val feed = LoadedFeed(showPlayedItems, showPartiallyPlayedItems, showFutureItems)
+            if (event is SuccessResultEvent || event is IdleEvent) {
+                // only the first page, the next ones are loaded while scrolling
+                feed.pages.add(
+                    FeedPage(
+                        null,
+                        feedDatabaseManager
+                            .getStreamsPage(
+                                groupId, showPlayedItems, showPartiallyPlayedItems, showFutureItems,
+                                null, PAGE_SIZE
+                            )
+                            .blockingGet(arrayListOf())
+                    )
+                )
+            }
+
+            CombineResultDataHolder(event, feed, notLoadedCount, oldestUpdate)
         }
         .observeOn(AndroidSchedulers.mainThread())
-        .subscribe { (event, listFromDB, notLoadedCount, oldestUpdate) ->
-            mutableStateLiveData.postValue(
-                when (event) {
-                    is IdleEvent -> FeedState.LoadedState(listFromDB.map { e -> StreamItem(e) }, oldestUpdate, notLoadedCount, listOf())
-                    is ProgressEvent -> FeedState.ProgressState(event.currentProgress, event.maxProgress, event.progressMessage)
-                    is SuccessResultEvent -> FeedState.LoadedState(listFromDB.map { e -> StreamItem(e) }, oldestUpdate, notLoadedCount, event.itemsErrors)
-                    is ErrorResultEvent -> FeedState.ErrorState(event.error)
-                }
-            )
+        .subscribe { (event, feed, notLoadedCount, oldestUpdate) ->
+            // the streams are reloaded from the start, pages of the previous ones are obsolete
+            pageDisposable?.dispose()
+            currentFeed = feed
+            val hasMoreItems = feed.streams().size >= PAGE_SIZE
+
+            // set synchronously, so that the pages are always loaded for the state of currentFeed
+            mutableStateLiveData.value = when (event) {
+                is IdleEvent -> FeedState.LoadedState(feed.streams().map { e -> StreamItem(e) }, oldestUpdate, notLoadedCount, listOf(), hasMoreItems)
+                is ProgressEvent -> FeedState.ProgressState(event.currentProgress, event.maxProgress, event.progressMessage)
+                is SuccessResultEvent -> FeedState.LoadedState(feed.streams().map { e -> StreamItem(e) }, oldestUpdate, notLoadedCount, event.itemsErrors, hasMoreItems)
+                is ErrorResultEvent -> FeedState.ErrorState(event.error)
+            }
 
             if (event is ErrorResultEvent || event is SuccessResultEvent) {
                 FeedEventManager.reset()
             }
         }
 
+    /**
+     * Loads the page of streams following the ones currently shown, if there is one and no other
+     * page is being loaded, and appends it to the current [FeedState.LoadedState]. At most
+     * [MAX_LOADED_PAGES] pages are kept, so the first one may be dropped; it is loaded again by
+     * [loadPreviousPage].
+     */
+    fun loadNextPage() {
+        val feed = currentFeed ?: return
+        val state = mutableStateLiveData.value as? FeedState.LoadedState ?: return
+        if (!state.hasMoreItems || pageDisposable?.isDisposed == false) {
+            return
+        }
+
+        val after = feed.pages.lastOrNull()?.streams?.lastOrNull()
+        pageDisposable = loadPage(feed, after) { page ->
+            feed.pages.addLast(FeedPage(after, page))
+            if (feed.pages.size > MAX_LOADED_PAGES) {
+                feed.droppedCursors.addLast(feed.pages.removeFirst().after)
+            }
+
+            mutableStateLiveData.value = state.copy(
+                items = feed.streams().map { StreamItem(it) },
+                // errors were already shown with the first page
+                itemsErrors = listOf(),
+                hasMoreItems = page.size >= PAGE_SIZE,
+                hasPreviousItems = feed.droppedCursors.isNotEmpty()
+            )
+        }
+    }
+
+    /**
+     * Loads again the last page dropped by [loadNextPage], if there is one and no other page is
+     * being loaded, and prepends it to the current [FeedState.LoadedState], dropping the last
+     * page if there are more than [MAX_LOADED_PAGES].
+     */
+    fun loadPreviousPage() {
+        val feed = currentFeed ?: return
+        val state = mutableStateLiveData.value as? FeedState.LoadedState ?: return
+        if (feed.droppedCursors.isEmpty() || pageDisposable?.isDisposed == false) {
+            return
+        }
+
+        val after = feed.droppedCursors.last()
+        pageDisposable = loadPage(feed, after) { loaded ->
+            feed.droppedCursors.removeLast()
+            // streams may have been removed in the meantime, don't show the first ones twice
+            val firstUid = feed.pages.firstOrNull()?.streams?.firstOrNull()?.stream?.uid
+            val page = loaded.takeWhile { it.stream.uid != firstUid }
+            feed.pages.addFirst(FeedPage(after, page))
+            var hasMoreItems = state.hasMoreItems
+            if (feed.pages.size > MAX_LOADED_PAGES) {
+                feed.pages.removeLast()
+                hasMoreItems = true
+            }
+
+            mutableStateLiveData.value = state.copy(
+                items = feed.streams().map { StreamItem(it) },
+                itemsErrors = listOf(),
+                hasMoreItems = hasMoreItems,
+                hasPreviousItems = feed.droppedCursors.isNotEmpty()
+            )
+        }
+    }
+
+    private fun loadPage(
+        feed: LoadedFeed,
+        after: StreamWithState?,
+        onLoaded: (List<StreamWithState>) -> Unit
+    ): Disposable {
+        return feedDatabaseManager
+            .getStreamsPage(
+                groupId, feed.showPlayedItems, feed.showPartiallyPlayedItems, feed.showFutureItems,
+                after, PAGE_SIZE
+            )
+            .subscribeOn(Schedulers.io())
+            .observeOn(AndroidSchedulers.mainThread())
+            .subscribe(
+                { page -> onLoaded(page) },
+                { error -> Log.e(TAG, "Could not load a page of the feed", error) }
+            )
+    }
+
     override fun onCleared() {
         super.onCleared()
         combineDisposable.dispose()
+        pageDisposable?.dispose()
+    }
+
+    /**
+     * A page of the feed, with the stream after which it was loaded (`null` for the first page),
+     * so that it can be loaded again once dropped.
+     */
+    private class FeedPage(val after: StreamWithState?, val streams: List<StreamWithState>)
+
+    private class LoadedFeed(
+        val showPlayedItems: Boolean,
+        val showPartiallyPlayedItems: Boolean,
+        val showFutureItems: Boolean
+    ) {
+        /** The pages currently shown, at most [MAX_LOADED_PAGES]. */
+        val pages = ArrayDeque<FeedPage>()
+
+        /** The [FeedPage.after] cursors of the pages dropped before [pages], the closest one last. */
+        val droppedCursors = ArrayDeque<StreamWithState?>()
+
+        fun streams(): List<StreamWithState> = pages.flatMap { it.streams }
     }
 
     private data class CombineResultEventHolder(
@@ -114,7 +239,7 @@ class FeedViewModel(
 
     private data class CombineResultDataHolder(
         val t1: FeedEventManager.Event,
-        val t2: List<StreamWithState>,
+        val t2: LoadedFeed,
         val t3: Long,
         val t4: OffsetDateTime?
     )
@@ -150,6 +275,20 @@ class FeedViewModel(
     fun getShowFutureItemsFromPreferences() = getShowFutureItemsFromPreferences(application)
 
     companion object {
+        private val TAG = FeedViewModel::class.java.simpleName
+
+        /**
+         * The number of streams loaded at once, small enough for the first page to be shown
+         * quickly; the next pages are loaded when scrolling to the end of the list.
+         */
+        private const val PAGE_SIZE = 100
+
+        /**
+         * The number of pages kept in memory, the ones furthest from the scrolled position are
+         * dropped and loaded again when scrolling back to them.
+         */
+        private const val MAX_LOADED_PAGES = 5
+
         private fun getShowPlayedItemsFromPreferences(context: Context) =
             PreferenceManager.getDefaultSharedPreferences(context)
                 .getBoolean(context.getString(R.string.feed_show_watched_items_key), true)
@@ -0,0 +1,185 @@
+package org.schabi.newpipe.local.feed.service
+
+import io.reactivex.rxjava3.core.Completable
+import io.reactivex.rxjava3.core.CompletableEmitter
+import java.util.ArrayDeque
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+import kotlin.math.max
+import kotlin.math.min
+
+/**
+ * Limits how many feed extractions can run in parallel for each service, and adapts each limit
+ * to the observed behaviour of the service with an AIMD (additive increase, multiplicative
+ * decrease) strategy:
+ * - every request which completes quickly and without network errors increases the limit by
+ *   `1 / limit`, i.e. by one after a whole window of successful requests;
+ * - a network error, or a request much slower than the fastest ones seen so far (a sign that
+ *   the connection or the service is getting saturated), multiplies the limit by
+ *   [BACKOFF_RATIO], at most once per average request duration.
+ *
+ * Services are tracked separately, so that a slow or rate-limiting service does not slow down
+ * the others. Waiting for a request to be allowed doesn't block any thread, see [acquire].
+ */
+class AdaptiveConcurrencyLimiter(
+    private val initialLimit: Int = INITIAL_LIMIT,
+    private val minLimit: Int = MIN_LIMIT,
+    private val maxLimit: Int = MAX_LIMIT,
+) {
+    private val lock = ReentrantLock()
+    private val services = HashMap<Int, ServiceLimit>()
+
+    /**
+     * Waits, without blocking the subscribing thread, until a new request for the service is
+     * allowed to start. The returned [Completable] may complete on the thread of the request
+     * which called [release], so observe it on the appropriate scheduler.
+     *
+     * Every completion must be followed by a call to [release] once the request finishes. If the
+     * subscription is disposed while waiting, no request is started and [release] must not be
+     * called.
+     */
+    fun acquire(serviceId: Int): Completable {
+        return Completable.create { emitter ->
+            val granted = lock.withLock {
+                val service = services.getOrPut(serviceId) { ServiceLimit() }
+                if (service.inFlight < service.limit.toInt()) {
+                    service.inFlight++
+                    true
+                } else {
+                    val waiter = Waiter(emitter)
+                    service.waiting.add(waiter)
+                    emitter.setCancellable {
+                        lock.withLock {
+                            if (!waiter.granted) {
+                                service.waiting.remove(waiter)
+                            }
+                        }
+                    }
+                    false
+                }
+            }
+            if (granted) {
+                emitter.onComplete()
+            }
+        }
+    }
+
+    /**
+     * Marks a request started with [acquire] as finished and adapts the limit of its service.
+     *
+     * @param serviceId the service the request was made to
+     * @param latencyMillis how long the request took
+     * @param congested whether the request failed because of network issues or rate limiting
+     */
+    fun release(serviceId: Int, latencyMillis: Long, congested: Boolean) {
+        val granted = lock.withLock {
+            val service = services[serviceId] ?: return
+            service.inFlight--
+
+            val now = System.currentTimeMillis()
+            service.averageLatency = if (service.averageLatency == 0.0) {
+                latencyMillis.toDouble()
+            } else {
+                service.averageLatency * (1 - LATENCY_SMOOTHING) + latencyMillis * LATENCY_SMOOTHING
+            }
+
+            val tooSlow = service.minLatency > 0 &&
+                latencyMillis > service.minLatency * LATENCY_TOLERANCE
+            if (!congested) {
+                // let the baseline slowly drift towards the average, so that a single
+                // exceptionally fast request doesn't make every other one look slow
+                service.minLatency = if (service.minLatency == 0.0) {
+                    latencyMillis.toDouble()
+                } else {
+                    min(service.minLatency, latencyMillis.toDouble()) +
+                        (service.averageLatency - service.minLatency) * BASELINE_DRIFT
+                }
+            }
+
+            if (congested || tooSlow) {
+                // decrease only once per round trip, as all requests that were running
+                // concurrently probably suffer from the same congestion
+                if (now - service.lastDecreaseTime > service.averageLatency) {
+                    service.limit = max(minLimit.toDouble(), service.limit * BACKOFF_RATIO)
+                    service.lastDecreaseTime = now
+                }
+            } else {
+                service.limit = min(maxLimit.toDouble(), service.limit + 1 / service.limit)
+            }
+
+            grantWaiting(service)
+        }
+        complete(serviceId, granted)
+    }
+
+    /**
+     * Must be called while holding [lock].
+     *
+     * @return the waiting requests which are now allowed to start
+     */
+    private fun grantWaiting(service: ServiceLimit): List<Waiter> {
+        val granted = ArrayList<Waiter>()
+        while (service.inFlight < service.limit.toInt() && service.waiting.isNotEmpty()) {
+            val waiter = service.waiting.poll()!!
+            waiter.granted = true
+            service.inFlight++
+            granted.add(waiter)
+        }
+        return granted
+    }
+
+    /**
+     * Starts the granted requests outside of [lock], giving back the slots of the requests
+     * which were disposed in the meantime.
+     */
+    private fun complete(serviceId: Int, granted: List<Waiter>) {
+        for (waiter in granted) {
+            if (waiter.emitter.isDisposed) {
+                val next = lock.withLock {
+                    val service = services.getValue(serviceId)
+                    service.inFlight--
+                    grantWaiting(service)
+                }
+                complete(serviceId, next)
+            } else {
+                waiter.emitter.onComplete()
+            }
+        }
+    }
+
+    /**
+     * @return the current limit for every service that was used so far, by service id
+     */
+    fun getLimits(): Map<Int, Int> {
+        lock.withLock {
+            return services.mapValues { it.value.limit.toInt() }
+        }
+    }
+
+    private class Waiter(val emitter: CompletableEmitter) {
+        /**
+         * Whether the request was allowed to start, guarded by [lock].
+         */
+        var granted = false
+    }
+
+    private inner class ServiceLimit {
+        val waiting = ArrayDeque<Waiter>()
+        var limit = initialLimit.toDouble()
+        var inFlight = 0
+        var averageLatency = 0.0
+        var minLatency = 0.0
+        var lastDecreaseTime = 0L
+    }
+
+    companion object {
+        private const val INITIAL_LIMIT = 6
+        private const val MIN_LIMIT = 1
+        const val MAX_LIMIT = 16
+
+        private const val BACKOFF_RATIO = 0.7
+        private const val LATENCY_TOLERANCE = 3
+        private const val LATENCY_SMOOTHING = 0.2
+        private const val BASELINE_DRIFT = 0.05
+    }
+}
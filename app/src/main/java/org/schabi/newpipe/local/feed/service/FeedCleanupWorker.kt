@@ -0,0 +1,64 @@
+package org.schabi.newpipe.local.feed.service
+
+import android.content.Context
+import android.os.Build
+import android.util.Log
+import androidx.work.Constraints
+import androidx.work.ExistingWorkPolicy
+import androidx.work.OneTimeWorkRequestBuilder
+import androidx.work.WorkManager
+import androidx.work.Worker
+import androidx.work.WorkerParameters
+import org.schabi.newpipe.App
+import org.schabi.newpipe.local.feed.FeedDatabaseManager
+
+/**
+ * Worker which removes old streams from the feed and streams which are not referenced anymore
+ * from the database (see [FeedDatabaseManager.removeOrphansOrOlderStreams]). It is scheduled
+ * after every feed update, but only runs when the device is idle and the battery is not low, so
+ * that the cleanup does not slow down the update itself or the app.
+ */
+class FeedCleanupWorker(
+    context: Context,
+    workerParams: WorkerParameters
+) : Worker(context, workerParams) {
+
+    override fun doWork(): Result {
+        return try {
+            FeedDatabaseManager(applicationContext).removeOrphansOrOlderStreams(
+                shouldContinue = { !isStopped }
+            )
+            Result.success()
+        } catch (e: Exception) {
+            Log.e(TAG, "Could not clean up the feed", e)
+            Result.failure()
+        }
+    }
+
+    companion object {
+        private val TAG = FeedCleanupWorker::class.java.simpleName
+        private const val WORK_NAME = App.PACKAGE_NAME + "_feed_cleanup"
+
+        /**
+         * Schedules a cleanup, unless one is already scheduled.
+         */
+        @JvmStatic
+        fun enqueue(context: Context) {
+            val constraints = Constraints.Builder()
+                .setRequiresBatteryNotLow(true)
+                .apply {
+                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                        setRequiresDeviceIdle(true)
+                    }
+                }
+                .build()
+
+            val request = OneTimeWorkRequestBuilder<FeedCleanupWorker>()
+                .setConstraints(constraints)
+                .build()
+
+            WorkManager.getInstance(context)
+                .enqueueUniqueWork(WORK_NAME, ExistingWorkPolicy.KEEP, request)
+        }
+    }
+}
@@ -6,6 +6,7 @@ import androidx.preference.PreferenceManager
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers
 import io.reactivex.rxjava3.core.Completable
 import io.reactivex.rxjava3.core.Flowable
+import io.reactivex.rxjava3.core.Maybe
 import io.reactivex.rxjava3.core.Notification
 import io.reactivex.rxjava3.core.Single
 import io.reactivex.rxjava3.functions.Consumer
@@ -13,12 +14,16 @@ import io.reactivex.rxjava3.processors.PublishProcessor
 import io.reactivex.rxjava3.schedulers.Schedulers
 import org.schabi.newpipe.R
 import org.schabi.newpipe.database.feed.model.FeedGroupEntity
+import org.schabi.newpipe.database.feed.model.FeedLastUpdatedEntity
 import org.schabi.newpipe.database.subscription.NotificationMode
 import org.schabi.newpipe.database.subscription.SubscriptionEntity
 import org.schabi.newpipe.extractor.Info
 import org.schabi.newpipe.extractor.NewPipe
+import org.schabi.newpipe.extractor.exceptions.ReCaptchaException
 import org.schabi.newpipe.extractor.feed.FeedInfo
 import org.schabi.newpipe.extractor.stream.StreamInfoItem
+import org.schabi.newpipe.ktx.hasAssignableCause
+import org.schabi.newpipe.ktx.isNetworkRelated
 import org.schabi.newpipe.local.feed.FeedDatabaseManager
 import org.schabi.newpipe.local.subscription.SubscriptionManager
 import org.schabi.newpipe.util.ChannelTabHelper
@@ -40,9 +45,15 @@ class FeedLoadManager(private val context: Context) {
     private val maxProgress = AtomicInteger(-1)
     private val cancelSignal = AtomicBoolean()
     private val feedResultsHolder = FeedResultsHolder()
+    private val concurrencyLimiter = AdaptiveConcurrencyLimiter()
 
     val notification: Flowable<FeedLoadState> = notificationUpdater.map { description ->
-        FeedLoadState(description, maxProgress.get(), currentProgress.get())
+        FeedLoadState(
+            description,
+            maxProgress.get(),
+            currentProgress.get(),
+            concurrencyLimiter.getLimits()
+        )
     }
 
     /**
@@ -106,13 +117,23 @@ class FeedLoadManager(private val context: Context) {
             .observeOn(Schedulers.io())
             .flatMap { Flowable.fromIterable(it) }
             .takeWhile { !cancelSignal.get() }
-            .parallel(PARALLEL_EXTRACTIONS, PARALLEL_EXTRACTIONS * 2)
-            .runOn(Schedulers.io(), PARALLEL_EXTRACTIONS * 2)
-            .filter { !cancelSignal.get() }
-            .map { subscriptionEntity ->
-                loadStreams(subscriptionEntity, useFeedExtractor, defaultSharedPreferences)
+            // the subscriptions of a service waiting for the limiter must not hold back the others
+            .groupBy { it.serviceId }
+            .flatMap { serviceSubscriptions ->
+                serviceSubscriptions.flatMapMaybe(
+                    { subscriptionEntity ->
+                        Maybe.defer {
+                            if (cancelSignal.get()) {
+                                Maybe.empty()
+                            } else {
+                                loadStreamsWithinLimit(subscriptionEntity, useFeedExtractor, defaultSharedPreferences)
+                                    .toMaybe()
+                            }
+                        }
+                    },
+                    false, MAX_PARALLEL_EXTRACTIONS
+                )
             }
-            .sequential()
             .observeOn(AndroidSchedulers.mainThread())
             .doOnNext(NotificationConsumer())
             .observeOn(Schedulers.io())
@@ -136,6 +157,39 @@ class FeedLoadManager(private val context: Context) {
         )
     }
 
+    /**
+     * Waits until [concurrencyLimiter] allows another extraction for the subscription's service,
+     * and then calls [loadStreams] on the I/O scheduler, reporting how long it took and whether
+     * it failed because of network issues or rate limiting back to the limiter.
+     */
+    private fun loadStreamsWithinLimit(
+        subscriptionEntity: SubscriptionEntity,
+        useFeedExtractor: Boolean,
+        defaultSharedPreferences: SharedPreferences
+    ): Single<Notification<FeedUpdateInfo>> {
+        val serviceId = subscriptionEntity.serviceId
+        return concurrencyLimiter.acquire(serviceId)
+            .observeOn(Schedulers.io())
+            .andThen(
+                Single.fromCallable {
+                    val startTime = System.currentTimeMillis()
+                    var result: Notification<FeedUpdateInfo>? = null
+                    try {
+                        result = loadStreams(subscriptionEntity, useFeedExtractor, defaultSharedPreferences)
+                        result
+                    } finally {
+                        val error = result?.error
+                        concurrencyLimiter.release(
+                            serviceId,
+                            System.currentTimeMillis() - startTime,
+                            result == null || error?.isNetworkRelated == true ||
+                                error.hasAssignableCause<ReCaptchaException>()
+                        )
+                    }
+                }
+            )
+    }
+
     private fun loadStreams(
         subscriptionEntity: SubscriptionEntity,
         useFeedExtractor: Boolean,
@@ -240,12 +294,13 @@ class FeedLoadManager(private val context: Context) {
      * Keep the feed and the stream tables small
      * to reduce loading times when trying to display the feed.
      * <br>
-     * Remove streams from the feed which are older than [FeedDatabaseManager.FEED_OLDEST_ALLOWED_DATE].
-     * Remove streams from the database which are not linked / used by any table.
+     * Schedules a [FeedCleanupWorker] to remove streams from the feed which are older than
+     * [FeedDatabaseManager.FEED_OLDEST_ALLOWED_DATE] and streams from the database which are not
+     * linked / used by any table, once the device is idle.
      */
     private fun postProcessFeed() = Completable.fromRunnable {
         FeedEventManager.postEvent(FeedEventManager.Event.ProgressEvent(R.string.feed_processing_message))
-        feedDatabaseManager.removeOrphansOrOlderStreams()
+        FeedCleanupWorker.enqueue(context)
 
         FeedEventManager.postEvent(FeedEventManager.Event.SuccessResultEvent(feedResultsHolder.itemsErrors))
     }.doOnSubscribe {
@@ -273,10 +328,16 @@ class FeedLoadManager(private val context: Context) {
                     when {
                         notification.isOnNext -> {
                             val info = notification.value!!
-
-                            notification.value!!.newStreams = filterNewStreams(info.streams)
-
-                            feedDatabaseManager.upsertAll(info.uid, info.streams)
+                            val lastUpdated = feedDatabaseManager.getLastUpdated(info.uid)
+
+                            if (feedDatabaseManager.isUnchanged(lastUpdated, info.streams)) {
+                                // nothing changed since the last update, skip all stream writes
+                                info.newStreams = emptyList()
+                                feedDatabaseManager.markAsUpToDate(info.uid)
+                            } else {
+                                info.newStreams = filterNewStreams(info.streams, lastUpdated)
+                                feedDatabaseManager.upsertAll(info.uid, info.streams)
+                            }
                             subscriptionManager.updateFromInfo(info)
 
                             if (info.errors.isNotEmpty()) {
@@ -305,17 +366,29 @@ class FeedLoadManager(private val context: Context) {
             }
         }
 
-        private fun filterNewStreams(list: List<StreamInfoItem>): List<StreamInfoItem> {
-            return list.filter {
-                !feedDatabaseManager.doesStreamExist(it) &&
-                    it.uploadDate != null &&
-                    // Streams older than this date are automatically removed from the feed.
-                    // Therefore, streams which are not in the database,
-                    // but older than this date, are considered old.
-                    it.uploadDate!!.offsetDateTime().isAfter(
-                        FeedDatabaseManager.FEED_OLDEST_ALLOWED_DATE
-                    )
+        private fun filterNewStreams(
+            list: List<StreamInfoItem>,
+            lastUpdated: FeedLastUpdatedEntity?
+        ): List<StreamInfoItem> {
+            val watermark = lastUpdated?.newestUploadDate
+            val candidates = list.filter {
+                val uploadDate = it.uploadDate ?: return@filter false
+                val date = uploadDate.offsetDateTime()
+
+                // Streams older than this date are automatically removed from the feed.
+                // Therefore, streams which are not in the database,
+                // but older than this date, are considered old.
+                if (!date.isAfter(FeedDatabaseManager.FEED_OLDEST_ALLOWED_DATE)) {
+                    return@filter false
+                }
+
+                // Streams with a precise upload date not newer than the newest stream of the
+                // last update were already known, no need to check the database for them.
+                watermark == null || uploadDate.isApproximation || date.isAfter(watermark)
             }
+
+            // a single query for all the remaining streams, instead of one per stream
+            return feedDatabaseManager.filterNotExistingStreams(candidates)
         }
     }
 
@@ -327,9 +400,10 @@ class FeedLoadManager(private val context: Context) {
         const val GROUP_NOTIFICATION_ENABLED = -2L
 
         /**
-         * How many extractions will be running in parallel.
+         * The maximum number of extractions running in parallel for each service. The actual
+         * number is chosen by the [AdaptiveConcurrencyLimiter], and is usually lower.
          */
-        private const val PARALLEL_EXTRACTIONS = 6
+        private const val MAX_PARALLEL_EXTRACTIONS = AdaptiveConcurrencyLimiter.MAX_LIMIT
 
         /**
          * Number of items to buffer to mass-insert in the database.
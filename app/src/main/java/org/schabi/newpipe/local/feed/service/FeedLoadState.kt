@@ -1,7 +1,12 @@
 package org.schabi.newpipe.local.feed.service
 
+/**
+ * @param concurrencyLimits how many extractions are currently allowed to run in parallel for
+ * each service, by service id (see [AdaptiveConcurrencyLimiter])
+ */
 data class FeedLoadState(
     val updateDescription: String,
     val maxProgress: Int,
     val currentProgress: Int,
+    val concurrencyLimits: Map<Int, Int> = emptyMap(),
 )
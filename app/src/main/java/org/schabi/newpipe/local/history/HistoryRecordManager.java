@@ -22,6 +22,7 @@ import android.content.Context;
 import android.content.SharedPreferences;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.preference.PreferenceManager;
 
 import org.schabi.newpipe.NewPipeDatabase;
@@ -50,15 +51,22 @@ import org.schabi.newpipe.util.ExtractorHelper;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 import io.reactivex.rxjava3.core.Completable;
 import io.reactivex.rxjava3.core.Flowable;
 import io.reactivex.rxjava3.core.Maybe;
 import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.schedulers.Schedulers;
+import kotlin.Pair;
 
 public class HistoryRecordManager {
+    private static final StreamStateCache STATE_CACHE = StreamStateCache.getInstance();
+    private static final StreamStateWriteBuffer WRITE_BUFFER = StreamStateWriteBuffer.getInstance();
+
     private final AppDatabase database;
     private final StreamDAO streamTable;
     private final StreamHistoryDAO streamHistoryTable;
@@ -97,7 +105,18 @@ public class HistoryRecordManager {
         }
 
         final OffsetDateTime currentTime = OffsetDateTime.now(ZoneOffset.UTC);
-        return Maybe.fromCallable(() -> database.runInTransaction(() -> {
+        return Maybe.fromCallable(() -> {
+            // otherwise a pending progress could overwrite the watched state later
+            flushPendingStreamStates();
+            return markAsWatchedInTransaction(info, currentTime);
+        })
+                .doOnSuccess(ignored -> STATE_CACHE.invalidate(info.getServiceId(), info.getUrl()))
+                .subscribeOn(Schedulers.io());
+    }
+
+    private long markAsWatchedInTransaction(final StreamInfoItem info,
+                                            final OffsetDateTime currentTime) {
+        return database.runInTransaction(() -> {
             final long streamId;
             final long duration;
             // Duration will not exist if the item was loaded with fast mode, so fetch it if empty
@@ -131,7 +150,7 @@ public class HistoryRecordManager {
             } else {
                 return 0L;
             }
-        })).subscribeOn(Schedulers.io());
+        });
     }
 
     public Maybe<Long> onViewed(final StreamInfo info) {
@@ -158,9 +177,13 @@ public class HistoryRecordManager {
 
     public Completable deleteStreamHistoryAndState(final long streamId) {
         return Completable.fromAction(() -> {
+            flushPendingStreamStates();
             streamStateTable.deleteState(streamId);
             streamHistoryTable.deleteStreamHistory(streamId);
-        }).subscribeOn(Schedulers.io());
+        })
+                // the url of the stream is not known here
+                .doOnComplete(STATE_CACHE::clear)
+                .subscribeOn(Schedulers.io());
     }
 
     public Single<Integer> deleteWholeStreamHistory() {
@@ -169,7 +192,11 @@ public class HistoryRecordManager {
     }
 
     public Single<Integer> deleteCompleteStreamStateHistory() {
-        return Single.fromCallable(streamStateTable::deleteAll)
+        return Single.fromCallable(() -> {
+            flushPendingStreamStates();
+            return streamStateTable.deleteAll();
+        })
+                .doOnSuccess(ignored -> STATE_CACHE.clear())
                 .subscribeOn(Schedulers.io());
     }
 
@@ -236,7 +263,10 @@ public class HistoryRecordManager {
 
     public Maybe<StreamStateEntity> loadStreamState(final PlayQueueItem queueItem) {
         return queueItem.getStream()
-                .map(info -> streamTable.upsert(new StreamEntity(info)))
+                .map(info -> {
+                    flushPendingStreamStates();
+                    return streamTable.upsert(new StreamEntity(info));
+                })
                 .flatMapPublisher(streamStateTable::getState)
                 .firstElement()
                 .flatMap(list -> list.isEmpty() ? Maybe.empty() : Maybe.just(list.get(0)))
@@ -245,7 +275,10 @@ public class HistoryRecordManager {
     }
 
     public Maybe<StreamStateEntity> loadStreamState(final StreamInfo info) {
-        return Single.fromCallable(() -> streamTable.upsert(new StreamEntity(info)))
+        return Single.fromCallable(() -> {
+            flushPendingStreamStates();
+            return streamTable.upsert(new StreamEntity(info));
+        })
                 .flatMapPublisher(streamStateTable::getState)
                 .firstElement()
                 .flatMap(list -> list.isEmpty() ? Maybe.empty() : Maybe.just(list.get(0)))
@@ -253,56 +286,145 @@ public class HistoryRecordManager {
                 .subscribeOn(Schedulers.io());
     }
 
+    /**
+     * Saves the playback progress of a stream. The progress is buffered and written to the
+     * database later together with the progress of other streams, see
+     * {@link #flushStreamStates()}; loading the state of a stream always takes the buffered
+     * progress into account.
+     *
+     * @param info           the stream
+     * @param progressMillis the playback position
+     * @return a {@link Completable} which completes as soon as the progress is buffered
+     */
     public Completable saveStreamState(@NonNull final StreamInfo info, final long progressMillis) {
-        return Completable.fromAction(() -> database.runInTransaction(() -> {
-            final long streamId = streamTable.upsert(new StreamEntity(info));
-            final StreamStateEntity state = new StreamStateEntity(streamId, progressMillis);
-            if (state.isValid(info.getDuration())) {
-                streamStateTable.upsert(state);
-            }
-        })).subscribeOn(Schedulers.io());
+        return Completable.fromAction(() -> WRITE_BUFFER.enqueue(database, info, progressMillis));
     }
 
+    /**
+     * Writes the buffered playback progress to the database right away, e.g. when playback is
+     * paused or the player is closed.
+     *
+     * @return a {@link Completable} which completes once the progress is written
+     */
+    public Completable flushStreamStates() {
+        return Completable.fromAction(() -> WRITE_BUFFER.flush(database))
+                .subscribeOn(Schedulers.io());
+    }
+
+    private void flushPendingStreamStates() {
+        if (WRITE_BUFFER.hasPending()) {
+            WRITE_BUFFER.flush(database);
+        }
+    }
+
+    /**
+     * Loads the state of a stream shown in a list. The states are cached, so that rebinding the
+     * item doesn't query the database again, and {@link #prefetchStreamStates(List)} can be used
+     * to load the states of a whole page of items at once.
+     *
+     * @param info the item to load the state of
+     * @return an array containing the state of the stream, or {@code null} if it has no state
+     */
     public Single<StreamStateEntity[]> loadStreamState(final InfoItem info) {
-        return Single.fromCallable(() -> {
-            final List<StreamEntity> entities = streamTable
-                    .getStream(info.getServiceId(), info.getUrl()).blockingFirst();
-            if (entities.isEmpty()) {
-                return new StreamStateEntity[]{null};
-            }
-            final List<StreamStateEntity> states = streamStateTable
-                    .getState(entities.get(0).getUid()).blockingFirst();
-            if (states.isEmpty()) {
-                return new StreamStateEntity[]{null};
-            }
-            return new StreamStateEntity[]{states.get(0)};
+        if (STATE_CACHE.contains(info.getServiceId(), info.getUrl())) {
+            return Single.just(new StreamStateEntity[]{
+                    STATE_CACHE.get(info.getServiceId(), info.getUrl())});
+        }
+
+        return Single.fromCallable(() -> new StreamStateEntity[]{
+                fetchStreamStates(List.of(info))
+                        .get(new Pair<>(info.getServiceId(), info.getUrl()))
         }).subscribeOn(Schedulers.io());
     }
 
+    /**
+     * @param info the item shown in a list
+     * @return whether the state of the stream is cached, see {@link #getCachedStreamState}
+     */
+    public boolean isStreamStateCached(final InfoItem info) {
+        return STATE_CACHE.contains(info.getServiceId(), info.getUrl());
+    }
+
+    /**
+     * Gets the state of a stream shown in a list without touching the database, so it can be
+     * called on the main thread.
+     *
+     * @param info the item shown in a list
+     * @return the cached state of the stream, or {@code null} if it has no state or is not
+     *         cached yet, see {@link #prefetchStreamStates(List)}
+     */
+    @Nullable
+    public StreamStateEntity getCachedStreamState(final InfoItem info) {
+        return STATE_CACHE.get(info.getServiceId(), info.getUrl());
+    }
+
+    /**
+     * Loads the states of all the streams in the list which are not cached yet with a single
+     * query per service, so that binding the items afterwards doesn't touch the database.
+     *
+     * @param items the items of a page of a list
+     * @return a {@link Completable} which completes once the states are cached
+     */
+    public Completable prefetchStreamStates(final List<? extends InfoItem> items) {
+        return Completable.fromAction(() -> fetchStreamStates(items))
+                .subscribeOn(Schedulers.io());
+    }
+
+    private Map<Pair<Integer, String>, StreamStateEntity> fetchStreamStates(
+            final List<? extends InfoItem> items) {
+        flushPendingStreamStates();
+
+        final List<Pair<Integer, String>> streams = new ArrayList<>();
+        for (final InfoItem item : items) {
+            if (item.getInfoType() == InfoItem.InfoType.STREAM
+                    && !STATE_CACHE.contains(item.getServiceId(), item.getUrl())) {
+                streams.add(new Pair<>(item.getServiceId(), item.getUrl()));
+            }
+        }
+        if (streams.isEmpty()) {
+            return Map.of();
+        }
+
+        final Map<Pair<Integer, String>, StreamStateEntity> states =
+                streamTable.getStreamStates(streams);
+        for (final Pair<Integer, String> stream : streams) {
+            // also cache the streams without a state, they are the majority
+            STATE_CACHE.put(stream.getFirst(), stream.getSecond(), states.get(stream));
+        }
+        return states;
+    }
+
     public Single<List<StreamStateEntity>> loadLocalStreamStateBatch(
             final List<? extends LocalItem> items) {
         return Single.fromCallable(() -> {
-            final List<StreamStateEntity> result = new ArrayList<>(items.size());
+            final List<Long> streamIds = new ArrayList<>(items.size());
             for (final LocalItem item : items) {
-                final long streamId;
                 if (item instanceof StreamStatisticsEntry) {
-                    streamId = ((StreamStatisticsEntry) item).getStreamId();
+                    streamIds.add(((StreamStatisticsEntry) item).getStreamId());
                 } else if (item instanceof PlaylistStreamEntity) {
-                    streamId = ((PlaylistStreamEntity) item).getStreamUid();
+                    streamIds.add(((PlaylistStreamEntity) item).getStreamUid());
                 } else if (item instanceof PlaylistStreamEntry) {
-                    streamId = ((PlaylistStreamEntry) item).getStreamId();
+                    streamIds.add(((PlaylistStreamEntry) item).getStreamId());
                 } else {
-                    result.add(null);
-                    continue;
+                    streamIds.add(null);
                 }
-                final List<StreamStateEntity> states = streamStateTable.getState(streamId)
-                        .blockingFirst();
-                if (states.isEmpty()) {
-                    result.add(null);
-                } else {
-                    result.add(states.get(0));
+            }
+
+            final Map<Long, StreamStateEntity> states = new HashMap<>();
+            final List<Long> distinctIds = new ArrayList<>(new HashSet<>(streamIds));
+            distinctIds.remove(null);
+            for (int i = 0; i < distinctIds.size(); i += StreamDAO.MAX_VARIABLES_PER_QUERY) {
+                final List<Long> chunk = distinctIds.subList(i,
+                        Math.min(i + StreamDAO.MAX_VARIABLES_PER_QUERY, distinctIds.size()));
+                for (final StreamStateEntity state : streamStateTable.getStates(chunk)) {
+                    states.put(state.getStreamUid(), state);
                 }
             }
+
+            final List<StreamStateEntity> result = new ArrayList<>(items.size());
+            for (final Long streamId : streamIds) {
+                result.add(streamId == null ? null : states.get(streamId));
+            }
             return result;
         }).subscribeOn(Schedulers.io());
     }
@@ -0,0 +1,73 @@
+package org.schabi.newpipe.local.history;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.collection.LruCache;
+
+import org.schabi.newpipe.database.stream.model.StreamStateEntity;
+
+/**
+ * In-memory cache of the {@link StreamStateEntity}s of streams shown in lists, keyed by service
+ * id and URL, so that binding (and rebinding) list items doesn't query the database for every
+ * row. Streams which have no state are cached too.
+ * <p>
+ * The cache is filled a whole page at a time by
+ * {@link HistoryRecordManager#prefetchStreamStates(java.util.List)} and kept up to date by the
+ * methods of {@link HistoryRecordManager} which change stream states.
+ * </p>
+ */
+final class StreamStateCache {
+    private static final int MAX_ITEMS_ON_CACHE = 1000;
+
+    /**
+     * Placeholder for streams which are known not to have a state, as {@link LruCache} doesn't
+     * allow {@code null} values.
+     */
+    private static final StreamStateEntity NO_STATE = new StreamStateEntity(-1, 0);
+
+    private static final StreamStateCache INSTANCE = new StreamStateCache();
+
+    private final LruCache<String, StreamStateEntity> cache = new LruCache<>(MAX_ITEMS_ON_CACHE);
+
+    private StreamStateCache() {
+        // no instance
+    }
+
+    static StreamStateCache getInstance() {
+        return INSTANCE;
+    }
+
+    @NonNull
+    private static String keyOf(final int serviceId, @NonNull final String url) {
+        return serviceId + ":" + url;
+    }
+
+    boolean contains(final int serviceId, @NonNull final String url) {
+        return cache.get(keyOf(serviceId, url)) != null;
+    }
+
+    /**
+     * @param serviceId the service of the stream
+     * @param url       the URL of the stream
+     * @return the cached state, or {@code null} if the stream has no state or is not cached,
+     *         use {@link #contains(int, String)} to tell them apart
+     */
+    @Nullable
+    StreamStateEntity get(final int serviceId, @NonNull final String url) {
+        final StreamStateEntity state = cache.get(keyOf(serviceId, url));
+        return state == NO_STATE ? null : state;
+    }
+
+    void put(final int serviceId, @NonNull final String url,
+             @Nullable final StreamStateEntity state) {
+        cache.put(keyOf(serviceId, url), state == null ? NO_STATE : state);
+    }
+
+    void invalidate(final int serviceId, @NonNull final String url) {
+        cache.remove(keyOf(serviceId, url));
+    }
+
+    void clear() {
+        cache.evictAll();
+    }
+}
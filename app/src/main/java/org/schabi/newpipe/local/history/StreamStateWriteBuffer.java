@@ -0,0 +1,168 @@
+package org.schabi.newpipe.local.history;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.collection.LruCache;
+
+import org.schabi.newpipe.MainActivity;
+import org.schabi.newpipe.database.AppDatabase;
+import org.schabi.newpipe.database.stream.dao.StreamDAO;
+import org.schabi.newpipe.database.stream.dao.StreamStateDAO;
+import org.schabi.newpipe.database.stream.model.StreamEntity;
+import org.schabi.newpipe.database.stream.model.StreamStateEntity;
+import org.schabi.newpipe.extractor.stream.StreamInfo;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+/**
+ * Write-behind buffer for the playback progress saved by the player. The player saves the
+ * progress very often (on pause, seek, queue changes, ...), so instead of running a transaction
+ * for every save, only the latest progress of every stream is kept in memory and all of them are
+ * written together in a single transaction, either {@link #FLUSH_DELAY_MILLIS} after the first
+ * pending save or when {@link #flush(AppDatabase)} is called.
+ * <p>
+ * The ids of the streams written recently are remembered, so that their stream row isn't
+ * upserted again (i.e. rewritten) on every save.
+ * </p>
+ */
+final class StreamStateWriteBuffer {
+    private static final String TAG = StreamStateWriteBuffer.class.getSimpleName();
+    private static final boolean DEBUG = MainActivity.DEBUG;
+
+    private static final long FLUSH_DELAY_MILLIS = 10_000;
+    private static final int MAX_KNOWN_STREAM_IDS = 100;
+
+    private static final StreamStateWriteBuffer INSTANCE = new StreamStateWriteBuffer();
+
+    private final Map<String, PendingState> pending = new LinkedHashMap<>();
+    private final LruCache<String, Long> knownStreamIds = new LruCache<>(MAX_KNOWN_STREAM_IDS);
+    /**
+     * Held while writing, so that the pending states are written in the order they were saved.
+     * Only ever taken inside a database transaction, see {@link #flush(AppDatabase)}.
+     */
+    private final Object writeLock = new Object();
+    @Nullable
+    private Disposable scheduledFlush = null;
+
+    private StreamStateWriteBuffer() {
+        // no instance
+    }
+
+    static StreamStateWriteBuffer getInstance() {
+        return INSTANCE;
+    }
+
+    @NonNull
+    private static String keyOf(@NonNull final StreamInfo info) {
+        return info.getServiceId() + ":" + info.getUrl();
+    }
+
+    /**
+     * Saves the progress of a stream, replacing any pending progress of the same stream. The
+     * progress is written to the database later, see {@link StreamStateWriteBuffer}.
+     *
+     * @param database       the database to write to
+     * @param info           the stream
+     * @param progressMillis the playback position
+     */
+    synchronized void enqueue(@NonNull final AppDatabase database,
+                              @NonNull final StreamInfo info,
+                              final long progressMillis) {
+        pending.put(keyOf(info), new PendingState(info, progressMillis));
+        StreamStateCache.getInstance().invalidate(info.getServiceId(), info.getUrl());
+
+        if (scheduledFlush == null) {
+            scheduledFlush = Completable.timer(FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS,
+                            Schedulers.io())
+                    .subscribe(() -> flush(database),
+                            e -> Log.e(TAG, "Could not save the playback progress", e));
+        }
+    }
+
+    synchronized boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * Writes all pending states in a single transaction. Must not be called on the main thread.
+     * <p>
+     * The transaction is opened before taking {@link #writeLock}, never the other way around,
+     * since the writers of the history flush the pending states while already being inside a
+     * transaction of their own.
+     * </p>
+     *
+     * @param database the database to write to
+     */
+    void flush(@NonNull final AppDatabase database) {
+        final StreamDAO streamTable = database.streamDAO();
+        final StreamStateDAO streamStateTable = database.streamStateDAO();
+        final List<PendingState> states = database.runInTransaction(() -> {
+            synchronized (writeLock) {
+                final List<PendingState> taken = takePending();
+                if (DEBUG && !taken.isEmpty()) {
+                    Log.d(TAG, "flush() writing " + taken.size() + " stream states");
+                }
+                for (final PendingState state : taken) {
+                    write(streamTable, streamStateTable, state);
+                }
+                return taken;
+            }
+        });
+
+        // the states may have been loaded while the flush was running
+        for (final PendingState state : states) {
+            StreamStateCache.getInstance()
+                    .invalidate(state.info.getServiceId(), state.info.getUrl());
+        }
+    }
+
+    @NonNull
+    private synchronized List<PendingState> takePending() {
+        if (scheduledFlush != null) {
+            scheduledFlush.dispose();
+            scheduledFlush = null;
+        }
+        final List<PendingState> states = new ArrayList<>(pending.values());
+        pending.clear();
+        return states;
+    }
+
+    private void write(@NonNull final StreamDAO streamTable,
+                       @NonNull final StreamStateDAO streamStateTable,
+                       @NonNull final PendingState pendingState) {
+        final String key = keyOf(pendingState.info);
+        Long streamId = knownStreamIds.get(key);
+        // the stream may have been deleted in the meantime, e.g. by clearing the history
+        if (streamId == null || !streamTable.exists(streamId)) {
+            streamId = streamTable.upsert(new StreamEntity(pendingState.info));
+            knownStreamIds.put(key, streamId);
+        }
+
+        final StreamStateEntity state =
+                new StreamStateEntity(streamId, pendingState.progressMillis);
+        if (state.isValid(pendingState.info.getDuration())) {
+            streamStateTable.upsert(state);
+        }
+    }
+
+    private static final class PendingState {
+        @NonNull
+        private final StreamInfo info;
+        private final long progressMillis;
+
+        PendingState(@NonNull final StreamInfo info, final long progressMillis) {
+            this.info = info;
+            this.progressMillis = progressMillis;
+        }
+    }
+}
@@ -14,7 +14,9 @@ import org.schabi.newpipe.database.stream.dao.StreamDAO;
 import org.schabi.newpipe.database.stream.model.StreamEntity;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import io.reactivex.rxjava3.core.Completable;
 import io.reactivex.rxjava3.core.Flowable;
@@ -79,15 +81,41 @@ public class LocalPlaylistManager {
         return playlistStreamTable.insertAll(joinEntities);
     }
 
+    /**
+     * Saves the streams of a playlist in the given order. Only the positions whose stream changed
+     * are rewritten, e.g. moving a stream only rewrites the positions between its old and its new
+     * one, instead of the whole playlist.
+     *
+     * @param playlistId the id of the playlist
+     * @param streamIds  the ids of the streams, in the order of the playlist
+     * @return a completable saving the playlist
+     */
     public Completable updateJoin(final long playlistId, final List<Long> streamIds) {
-        final List<PlaylistStreamEntity> joinEntities = new ArrayList<>(streamIds.size());
-        for (int i = 0; i < streamIds.size(); i++) {
-            joinEntities.add(new PlaylistStreamEntity(playlistId, streamIds.get(i), i));
-        }
-
         return Completable.fromRunnable(() -> database.runInTransaction(() -> {
-            playlistStreamTable.deleteBatch(playlistId);
-            playlistStreamTable.insertAll(joinEntities);
+            final Map<Integer, Long> savedStreamIds = new HashMap<>();
+            for (final PlaylistStreamEntity join : playlistStreamTable.getJoinsOf(playlistId)) {
+                savedStreamIds.put(join.getIndex(), join.getStreamUid());
+            }
+
+            final List<Integer> indicesToDelete = new ArrayList<>();
+            final List<PlaylistStreamEntity> joinsToInsert = new ArrayList<>();
+            for (int i = 0; i < streamIds.size(); i++) {
+                final Long savedStreamId = savedStreamIds.remove(i);
+                if (!streamIds.get(i).equals(savedStreamId)) {
+                    if (savedStreamId != null) {
+                        indicesToDelete.add(i);
+                    }
+                    joinsToInsert.add(new PlaylistStreamEntity(playlistId, streamIds.get(i), i));
+                }
+            }
+            // the positions after the end of the playlist, if streams were removed
+            indicesToDelete.addAll(savedStreamIds.keySet());
+
+            for (int i = 0; i < indicesToDelete.size(); i += StreamDAO.MAX_VARIABLES_PER_QUERY) {
+                playlistStreamTable.deleteIndices(playlistId, indicesToDelete.subList(i,
+                        Math.min(i + StreamDAO.MAX_VARIABLES_PER_QUERY, indicesToDelete.size())));
+            }
+            playlistStreamTable.insertAll(joinsToInsert);
         })).subscribeOn(Schedulers.io());
     }
 
@@ -0,0 +1,107 @@
+package org.schabi.newpipe.local.subscription
+
+import android.content.Context
+import android.util.Log
+import androidx.work.Constraints
+import androidx.work.ExistingWorkPolicy
+import androidx.work.NetworkType
+import androidx.work.OneTimeWorkRequestBuilder
+import androidx.work.WorkManager
+import androidx.work.Worker
+import androidx.work.WorkerParameters
+import org.schabi.newpipe.App
+import org.schabi.newpipe.NewPipeDatabase
+import org.schabi.newpipe.extractor.NewPipe
+import org.schabi.newpipe.extractor.channel.ChannelInfo
+import org.schabi.newpipe.extractor.exceptions.ContentNotAvailableException
+import org.schabi.newpipe.util.image.ImageStrategy
+
+/**
+ * Worker which loads the avatar, description and subscriber count of the subscriptions whose info
+ * was never loaded, one channel at a time. Imported subscriptions are inserted with only their
+ * name and URL, and the feed update does not provide this info when it uses the dedicated feed
+ * method. Channels which are not available are left untouched: the feed update started with the
+ * import reports them, and the feed asks the user whether to unsubscribe from them.
+ */
+class SubscriptionInfoWorker(
+    context: Context,
+    workerParams: WorkerParameters
+) : Worker(context, workerParams) {
+
+    override fun doWork(): Result {
+        val subscriptionTable = NewPipeDatabase.getInstance(applicationContext).subscriptionDAO()
+        var afterUid = 0L
+        var failed = false
+
+        while (!isStopped) {
+            val subscriptions = subscriptionTable.getSubscriptionsWithoutInfo(afterUid, BATCH_SIZE)
+            if (subscriptions.isEmpty()) {
+                break
+            }
+
+            for (subscription in subscriptions) {
+                if (isStopped) {
+                    break
+                }
+
+                try {
+                    val info = ChannelInfo.getInfo(
+                        NewPipe.getService(subscription.serviceId), subscription.url
+                    )
+                    subscription.setData(
+                        info.name,
+                        ImageStrategy.imageListToDbUrl(info.avatars),
+                        info.description,
+                        info.subscriberCount
+                    )
+                    subscriptionTable.update(subscription)
+                } catch (e: ContentNotAvailableException) {
+                    // e.g. a private or terminated channel, loading it again would fail again
+                    Log.w(TAG, "The channel ${subscription.url} is not available", e)
+                } catch (e: Exception) {
+                    Log.e(TAG, "Could not load the info of ${subscription.url}", e)
+                    failed = true
+                }
+            }
+            afterUid = subscriptions.last().uid
+        }
+
+        // e.g. a network error, try again later with the default backoff
+        return if (failed && runAttemptCount < MAX_ATTEMPTS) Result.retry() else Result.success()
+    }
+
+    companion object {
+        private val TAG = SubscriptionInfoWorker::class.java.simpleName
+        private const val WORK_NAME = App.PACKAGE_NAME + "_subscription_info"
+
+        /**
+         * The number of subscriptions read from the database at once.
+         */
+        private const val BATCH_SIZE = 50
+
+        /**
+         * The number of runs after which the subscriptions which could not be loaded are left
+         * until the next import.
+         */
+        private const val MAX_ATTEMPTS = 5
+
+        /**
+         * Schedules loading the missing info of the subscriptions, replacing a load which may
+         * have already gone past newly inserted subscriptions.
+         */
+        @JvmStatic
+        fun enqueue(context: Context) {
+            val constraints = Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .setRequiresBatteryNotLow(true)
+                .build()
+
+            val request = OneTimeWorkRequestBuilder<SubscriptionInfoWorker>()
+                .setConstraints(constraints)
+                .build()
+
+            WorkManager.getInstance(context)
+                .enqueueUniqueWork(WORK_NAME, ExistingWorkPolicy.REPLACE, request)
+        }
+    }
+}
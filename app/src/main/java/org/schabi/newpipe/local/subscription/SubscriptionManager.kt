@@ -1,7 +1,6 @@
 package org.schabi.newpipe.local.subscription
 
 import android.content.Context
-import android.util.Pair
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers
 import io.reactivex.rxjava3.core.Completable
 import io.reactivex.rxjava3.core.Flowable
@@ -13,9 +12,8 @@ import org.schabi.newpipe.database.subscription.NotificationMode
 import org.schabi.newpipe.database.subscription.SubscriptionDAO
 import org.schabi.newpipe.database.subscription.SubscriptionEntity
 import org.schabi.newpipe.extractor.channel.ChannelInfo
-import org.schabi.newpipe.extractor.channel.tabs.ChannelTabInfo
 import org.schabi.newpipe.extractor.stream.StreamInfoItem
-import org.schabi.newpipe.local.feed.FeedDatabaseManager
+import org.schabi.newpipe.extractor.subscription.SubscriptionItem
 import org.schabi.newpipe.local.feed.service.FeedUpdateInfo
 import org.schabi.newpipe.util.ExtractorHelper
 import org.schabi.newpipe.util.image.ImageStrategy
@@ -23,7 +21,6 @@ import org.schabi.newpipe.util.image.ImageStrategy
 class SubscriptionManager(context: Context) {
     private val database = NewPipeDatabase.getInstance(context)
     private val subscriptionTable = database.subscriptionDAO()
-    private val feedDatabaseManager = FeedDatabaseManager(context)
 
     fun subscriptionTable(): SubscriptionDAO = subscriptionTable
     fun subscriptions() = subscriptionTable.all
@@ -48,23 +45,23 @@ class SubscriptionManager(context: Context) {
         }
     }
 
-    fun upsertAll(infoList: List<Pair<ChannelInfo, List<ChannelTabInfo>>>): List<SubscriptionEntity> {
-        val listEntities = subscriptionTable.upsertAll(
-            infoList.map { SubscriptionEntity.from(it.first) }
-        )
-
-        database.runInTransaction {
-            infoList.forEachIndexed { index, info ->
-                info.second.forEach {
-                    feedDatabaseManager.upsertAll(
-                        listEntities[index].uid,
-                        it.relatedItems.filterIsInstance<StreamInfoItem>()
-                    )
+    /**
+     * Subscribes to the channels which are not subscribed to yet, without loading their info:
+     * their streams are loaded by the next feed update and their avatar, description and
+     * subscriber count by [SubscriptionInfoWorker].
+     *
+     * @return the number of new subscriptions
+     */
+    fun insertAllIfAbsent(items: List<SubscriptionItem>): Int {
+        return subscriptionTable.insertAllIfAbsent(
+            items.map {
+                SubscriptionEntity().apply {
+                    serviceId = it.serviceId
+                    url = it.url
+                    name = it.name
                 }
             }
-        }
-
-        return listEntities
+        )
     }
 
     fun updateChannelInfo(info: ChannelInfo): Completable =
@@ -22,9 +22,8 @@ package org.schabi.newpipe.local.subscription.services;
 import androidx.annotation.Nullable;
 
 import com.grack.nanojson.JsonAppendableWriter;
-import com.grack.nanojson.JsonArray;
-import com.grack.nanojson.JsonObject;
-import com.grack.nanojson.JsonParser;
+import com.grack.nanojson.JsonParserException;
+import com.grack.nanojson.JsonReader;
 import com.grack.nanojson.JsonWriter;
 
 import org.schabi.newpipe.BuildConfig;
@@ -35,6 +34,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * A JSON implementation capable of importing and exporting subscriptions, it has the advantage
@@ -66,36 +66,56 @@ public final class ImportExportJsonHelper {
     public static List<SubscriptionItem> readFrom(
             final InputStream in, @Nullable final ImportExportEventListener eventListener)
             throws InvalidSourceException {
+        final List<SubscriptionItem> channels = new ArrayList<>();
+        readFrom(in, eventListener, channels::add);
+        return channels;
+    }
+
+    /**
+     * Read a JSON source through the input stream, passing each subscription item to the consumer
+     * as soon as it is parsed, without holding the whole source in memory.
+     * <p>
+     * The size is not known before the end of the source, so it is not reported to the listener.
+     * </p>
+     *
+     * @param in            the input stream (e.g. a file)
+     * @param eventListener listener for the events generated
+     * @param consumer      receives the parsed subscription items, in order
+     */
+    public static void readFrom(final InputStream in,
+                                @Nullable final ImportExportEventListener eventListener,
+                                final Consumer<SubscriptionItem> consumer)
+            throws InvalidSourceException {
         if (in == null) {
             throw new InvalidSourceException("input is null");
         }
 
-        final List<SubscriptionItem> channels = new ArrayList<>();
+        boolean hasChannelsArray = false;
 
         try {
-            final JsonObject parentObject = JsonParser.object().from(in);
-
-            if (!parentObject.has(JSON_SUBSCRIPTIONS_ARRAY_KEY)) {
-                throw new InvalidSourceException("Channels array is null");
-            }
-
-            final JsonArray channelsArray = parentObject.getArray(JSON_SUBSCRIPTIONS_ARRAY_KEY);
-
-            if (eventListener != null) {
-                eventListener.onSizeReceived(channelsArray.size());
-            }
+            final JsonReader reader = JsonReader.from(in);
+            reader.object();
+
+            while (reader.next()) {
+                if (!JSON_SUBSCRIPTIONS_ARRAY_KEY.equals(reader.key())
+                        || reader.current() != JsonReader.Type.ARRAY) {
+                    skipValue(reader);
+                    continue;
+                }
 
-            for (final Object o : channelsArray) {
-                if (o instanceof JsonObject) {
-                    final JsonObject itemObject = (JsonObject) o;
-                    final int serviceId = itemObject.getInt(JSON_SERVICE_ID_KEY, 0);
-                    final String url = itemObject.getString(JSON_URL_KEY);
-                    final String name = itemObject.getString(JSON_NAME_KEY);
+                hasChannelsArray = true;
+                reader.array();
+                while (reader.next()) {
+                    if (reader.current() != JsonReader.Type.OBJECT) {
+                        skipValue(reader);
+                        continue;
+                    }
 
-                    if (url != null && name != null && !url.isEmpty() && !name.isEmpty()) {
-                        channels.add(new SubscriptionItem(serviceId, url, name));
+                    final SubscriptionItem item = readItem(reader);
+                    if (item != null) {
+                        consumer.accept(item);
                         if (eventListener != null) {
-                            eventListener.onItemCompleted(name);
+                            eventListener.onItemCompleted(item.getName());
                         }
                     }
                 }
@@ -104,7 +124,69 @@ public final class ImportExportJsonHelper {
             throw new InvalidSourceException("Couldn't parse json", e);
         }
 
-        return channels;
+        if (!hasChannelsArray) {
+            throw new InvalidSourceException("Channels array is null");
+        }
+    }
+
+    /**
+     * @param reader a reader positioned on a subscription object
+     * @return the subscription item, or {@code null} if its URL or name is missing
+     */
+    @Nullable
+    private static SubscriptionItem readItem(final JsonReader reader)
+            throws JsonParserException {
+        int serviceId = 0;
+        String url = null;
+        String name = null;
+
+        reader.object();
+        while (reader.next()) {
+            final String key = reader.key();
+            if (JSON_SERVICE_ID_KEY.equals(key) && reader.current() == JsonReader.Type.NUMBER) {
+                serviceId = reader.intVal();
+            } else if (JSON_URL_KEY.equals(key) && reader.current() == JsonReader.Type.STRING) {
+                url = reader.string();
+            } else if (JSON_NAME_KEY.equals(key) && reader.current() == JsonReader.Type.STRING) {
+                name = reader.string();
+            } else {
+                skipValue(reader);
+            }
+        }
+
+        if (url == null || name == null || url.isEmpty() || name.isEmpty()) {
+            return null;
+        }
+        return new SubscriptionItem(serviceId, url, name);
+    }
+
+    private static void skipValue(final JsonReader reader) throws JsonParserException {
+        switch (reader.current()) {
+            case OBJECT:
+                reader.object();
+                while (reader.next()) {
+                    skipValue(reader);
+                }
+                break;
+            case ARRAY:
+                reader.array();
+                while (reader.next()) {
+                    skipValue(reader);
+                }
+                break;
+            case STRING:
+                reader.string();
+                break;
+            case NUMBER:
+                reader.number();
+                break;
+            case BOOLEAN:
+                reader.bool();
+                break;
+            default:
+                reader.nul();
+                break;
+        }
     }
 
     /**
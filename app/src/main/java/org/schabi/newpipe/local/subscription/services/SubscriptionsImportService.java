@@ -24,9 +24,7 @@ import static org.schabi.newpipe.streams.io.StoredFileHelper.DEFAULT_MIME;
 
 import android.content.Intent;
 import android.net.Uri;
-import android.text.TextUtils;
 import android.util.Log;
-import android.util.Pair;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -37,28 +35,25 @@ import org.reactivestreams.Subscriber;
 import org.reactivestreams.Subscription;
 import org.schabi.newpipe.App;
 import org.schabi.newpipe.R;
-import org.schabi.newpipe.database.subscription.SubscriptionEntity;
+import org.schabi.newpipe.database.feed.model.FeedGroupEntity;
 import org.schabi.newpipe.extractor.NewPipe;
-import org.schabi.newpipe.extractor.channel.ChannelInfo;
-import org.schabi.newpipe.extractor.channel.tabs.ChannelTabInfo;
+import org.schabi.newpipe.extractor.exceptions.ExtractionException;
 import org.schabi.newpipe.extractor.subscription.SubscriptionItem;
-import org.schabi.newpipe.ktx.ExceptionUtils;
+import org.schabi.newpipe.local.feed.service.FeedLoadService;
+import org.schabi.newpipe.local.subscription.SubscriptionInfoWorker;
 import org.schabi.newpipe.streams.io.SharpInputStream;
 import org.schabi.newpipe.streams.io.StoredFileHelper;
 import org.schabi.newpipe.util.Constants;
-import org.schabi.newpipe.util.ExtractorHelper;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
+import io.reactivex.rxjava3.core.BackpressureStrategy;
 import io.reactivex.rxjava3.core.Flowable;
-import io.reactivex.rxjava3.core.Notification;
-import io.reactivex.rxjava3.functions.Consumer;
+import io.reactivex.rxjava3.core.Maybe;
 import io.reactivex.rxjava3.functions.Function;
 import io.reactivex.rxjava3.schedulers.Schedulers;
 
@@ -76,18 +71,14 @@ public class SubscriptionsImportService extends BaseImportExportService {
     public static final String IMPORT_COMPLETE_ACTION = App.PACKAGE_NAME + ".local.subscription"
             + ".services.SubscriptionsImportService.IMPORT_COMPLETE";
 
-    /**
-     * How many extractions running in parallel.
-     */
-    public static final int PARALLEL_EXTRACTIONS = 8;
-
     /**
      * Number of items to buffer to mass-insert in the subscriptions table,
      * this leads to a better performance as we can then use db transactions.
      */
-    public static final int BUFFER_COUNT_BEFORE_INSERT = 50;
+    public static final int BUFFER_COUNT_BEFORE_INSERT = 500;
 
     private Subscription subscription;
+    private int insertedCount;
     private int currentMode;
     private int currentServiceId;
     @Nullable
@@ -177,7 +168,7 @@ public class SubscriptionsImportService extends BaseImportExportService {
     private void startImport() {
         showToast(R.string.import_ongoing);
 
-        Flowable<List<SubscriptionItem>> flowable = null;
+        Flowable<SubscriptionItem> flowable = null;
         switch (currentMode) {
             case CHANNEL_URL_MODE:
                 flowable = importFromChannelUrl();
@@ -197,43 +188,16 @@ public class SubscriptionsImportService extends BaseImportExportService {
             return;
         }
 
-        flowable.doOnNext(subscriptionItems ->
-                eventListener.onSizeReceived(subscriptionItems.size()))
-                .flatMap(Flowable::fromIterable)
-
-                .parallel(PARALLEL_EXTRACTIONS)
-                .runOn(Schedulers.io())
-                .map((Function<SubscriptionItem, Notification<Pair<ChannelInfo,
-                        List<ChannelTabInfo>>>>) subscriptionItem -> {
-                    try {
-                        final ChannelInfo channelInfo = ExtractorHelper
-                                .getChannelInfo(subscriptionItem.getServiceId(),
-                                        subscriptionItem.getUrl(), true)
-                                .blockingGet();
-                        return Notification.createOnNext(new Pair<>(channelInfo,
-                                Collections.singletonList(
-                                        ExtractorHelper.getChannelTab(
-                                                subscriptionItem.getServiceId(),
-                                                channelInfo.getTabs().get(0), true).blockingGet()
-                                )));
-                    } catch (final Throwable e) {
-                        return Notification.createOnError(e);
-                    }
-                })
-                .sequential()
-
-                .observeOn(Schedulers.io())
-                .doOnNext(getNotificationsConsumer())
-
+        flowable.concatMapMaybe(item -> Maybe.fromCallable(() -> withCanonicalUrl(item)))
                 .buffer(BUFFER_COUNT_BEFORE_INSERT)
-                .map(upsertBatch())
+                .map(insertBatch())
 
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(getSubscriber());
     }
 
-    private Subscriber<List<SubscriptionEntity>> getSubscriber() {
+    private Subscriber<Integer> getSubscriber() {
         return new Subscriber<>() {
             @Override
             public void onSubscribe(final Subscription s) {
@@ -242,11 +206,12 @@ public class SubscriptionsImportService extends BaseImportExportService {
             }
 
             @Override
-            public void onNext(final List<SubscriptionEntity> successfulInserted) {
+            public void onNext(final Integer inserted) {
                 if (DEBUG) {
-                    Log.d(TAG, "startImport() " + successfulInserted.size()
+                    Log.d(TAG, "startImport() " + inserted
                             + " items successfully inserted into the database");
                 }
+                insertedCount += inserted;
             }
 
             @Override
@@ -260,65 +225,85 @@ public class SubscriptionsImportService extends BaseImportExportService {
                 LocalBroadcastManager.getInstance(SubscriptionsImportService.this)
                         .sendBroadcast(new Intent(IMPORT_COMPLETE_ACTION));
                 showToast(R.string.import_complete_toast);
+                if (insertedCount > 0) {
+                    startFeedUpdate();
+                }
                 stopService();
             }
         };
     }
 
-    private Consumer<Notification<Pair<ChannelInfo,
-            List<ChannelTabInfo>>>> getNotificationsConsumer() {
-        return notification -> {
-            if (notification.isOnNext()) {
-                final String name = notification.getValue().first.getName();
-                eventListener.onItemCompleted(!TextUtils.isEmpty(name) ? name : "");
-            } else if (notification.isOnError()) {
-                final Throwable error = notification.getError();
-                final Throwable cause = error.getCause();
-                if (error instanceof IOException) {
-                    throw error;
-                } else if (cause instanceof IOException) {
-                    throw cause;
-                } else if (ExceptionUtils.isNetworkRelated(error)) {
-                    throw new IOException(error);
-                }
-
-                eventListener.onItemCompleted("");
+    private Function<List<SubscriptionItem>, Integer> insertBatch() {
+        return items -> {
+            final int inserted = subscriptionManager.insertAllIfAbsent(items);
+            for (final SubscriptionItem item : items) {
+                eventListener.onItemCompleted(item.getName());
             }
+            return inserted;
         };
     }
 
-    private Function<List<Notification<Pair<ChannelInfo, List<ChannelTabInfo>>>>,
-            List<SubscriptionEntity>> upsertBatch() {
-        return notificationList -> {
-            final List<Pair<ChannelInfo, List<ChannelTabInfo>>> infoList =
-                    new ArrayList<>(notificationList.size());
-            for (final Notification<Pair<ChannelInfo, List<ChannelTabInfo>>> n : notificationList) {
-                if (n.isOnNext()) {
-                    infoList.add(n.getValue());
-                }
-            }
+    /**
+     * The channels are subscribed to without loading their info, which would have provided their
+     * canonical URL. So turn the URL of the source into the one the extractor would return, to
+     * match the subscription when the channel is opened later.
+     *
+     * @param item an item of the source
+     * @return the item with the canonical URL of the channel, or {@code null} if the URL is not
+     *         the one of a channel of the service, so that it is not imported
+     */
+    @Nullable
+    private static SubscriptionItem withCanonicalUrl(final SubscriptionItem item) {
+        try {
+            final String url = NewPipe.getService(item.getServiceId()).getChannelLHFactory()
+                    .fromUrl(item.getUrl()).getUrl();
+            return new SubscriptionItem(item.getServiceId(), url, item.getName());
+        } catch (final ExtractionException e) {
+            Log.w(TAG, "Not importing the invalid channel URL " + item.getUrl(), e);
+            return null;
+        }
+    }
 
-            return subscriptionManager.upsertAll(infoList);
-        };
+    /**
+     * Loads the info and the streams of the new subscriptions in the background: they were
+     * inserted without them, so that the import doesn't have to wait for an extraction per
+     * channel. The feed update loads the streams, but not the description and the subscriber
+     * count when it uses the dedicated feed method, so the {@link SubscriptionInfoWorker} loads
+     * the missing info.
+     */
+    private void startFeedUpdate() {
+        startService(new Intent(this, FeedLoadService.class)
+                .putExtra(FeedLoadService.EXTRA_GROUP_ID, FeedGroupEntity.GROUP_ALL_ID));
+        SubscriptionInfoWorker.enqueue(this);
     }
 
-    private Flowable<List<SubscriptionItem>> importFromChannelUrl() {
+    private Flowable<SubscriptionItem> importFromChannelUrl() {
         return Flowable.fromCallable(() -> NewPipe.getService(currentServiceId)
                 .getSubscriptionExtractor()
-                .fromChannelUrl(channelUrl));
+                .fromChannelUrl(channelUrl))
+                .doOnNext(subscriptionItems ->
+                        eventListener.onSizeReceived(subscriptionItems.size()))
+                .flatMapIterable(subscriptionItems -> subscriptionItems);
     }
 
-    private Flowable<List<SubscriptionItem>> importFromInputStream() {
+    private Flowable<SubscriptionItem> importFromInputStream() {
         Objects.requireNonNull(inputStream);
         Objects.requireNonNull(inputStreamType);
 
         return Flowable.fromCallable(() -> NewPipe.getService(currentServiceId)
                 .getSubscriptionExtractor()
-                .fromInputStream(inputStream, inputStreamType));
+                .fromInputStream(inputStream, inputStreamType))
+                .doOnNext(subscriptionItems ->
+                        eventListener.onSizeReceived(subscriptionItems.size()))
+                .flatMapIterable(subscriptionItems -> subscriptionItems);
     }
 
-    private Flowable<List<SubscriptionItem>> importFromPreviousExport() {
-        return Flowable.fromCallable(() -> ImportExportJsonHelper.readFrom(inputStream, null));
+    private Flowable<SubscriptionItem> importFromPreviousExport() {
+        // the items are inserted while the rest of the source is still being parsed
+        return Flowable.create(emitter -> {
+            ImportExportJsonHelper.readFrom(inputStream, null, emitter::onNext);
+            emitter.onComplete();
+        }, BackpressureStrategy.BUFFER);
     }
 
     protected void handleError(@NonNull final Throwable error) {
@@ -66,6 +66,7 @@ import androidx.preference.PreferenceManager;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.DefaultRenderersFactory;
 import com.google.android.exoplayer2.ExoPlayer;
+import com.google.android.exoplayer2.MediaItem;
 import com.google.android.exoplayer2.PlaybackException;
 import com.google.android.exoplayer2.PlaybackParameters;
 import com.google.android.exoplayer2.Player.PositionInfo;
@@ -122,16 +123,20 @@ import org.schabi.newpipe.util.image.PicassoHelper;
 import org.schabi.newpipe.util.SerializedCache;
 import org.schabi.newpipe.util.StreamTypeUtil;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.IntStream;
 
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
+import io.reactivex.rxjava3.core.Completable;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.disposables.CompositeDisposable;
 import io.reactivex.rxjava3.disposables.Disposable;
 import io.reactivex.rxjava3.disposables.SerialDisposable;
 
+import us.shandian.giga.service.DownloadScheduler;
+
 public final class Player implements PlaybackListener, Listener {
     public static final boolean DEBUG = MainActivity.DEBUG;
     public static final String TAG = Player.class.getSimpleName();
@@ -208,6 +213,10 @@ public final class Player implements PlaybackListener, Listener {
     @NonNull
     private final DefaultRenderersFactory renderFactory;
 
+    @NonNull
+    private final DefaultBandwidthMeter bandwidthMeter;
+    @NonNull
+    private final PlayerDataSource dataSource;
     @NonNull
     private final VideoPlaybackResolver videoResolver;
     @NonNull
@@ -278,8 +287,8 @@ public final class Player implements PlaybackListener, Listener {
         setupBroadcastReceiver();
 
         trackSelector = new DefaultTrackSelector(context, PlayerHelper.getQualitySelector());
-        final PlayerDataSource dataSource = new PlayerDataSource(context,
-                new DefaultBandwidthMeter.Builder(context).build());
+        bandwidthMeter = new DefaultBandwidthMeter.Builder(context).build();
+        dataSource = new PlayerDataSource(context, bandwidthMeter);
         loadController = new LoadController();
 
         renderFactory = prefs.getBoolean(
@@ -594,11 +603,13 @@ public final class Player implements PlaybackListener, Listener {
         }
 
         saveStreamProgressState();
+        flushStreamProgressState();
         setRecovery();
         stopActivityBinding();
 
         destroyPlayer();
         unregisterBroadcastReceiver();
+        DownloadScheduler.getInstance().setPlaybackBuffering(false);
 
         databaseUpdateDisposable.clear();
         progressUpdateDisposable.set(null);
@@ -637,7 +648,8 @@ public final class Player implements PlaybackListener, Listener {
         }
 
         if (playQueue != null) {
-            playQueueManager = new MediaSourceManager(this, playQueue);
+            playQueueManager = new MediaSourceManager(this, playQueue,
+                    PlayerHelper.getPrefetchWindowSize(context, bandwidthMeter));
         }
     }
 
@@ -1053,6 +1065,9 @@ public final class Player implements PlaybackListener, Listener {
             Log.d(TAG, "changeState() called with: state = [" + state + "]");
         }
         currentState = state;
+        // let downloads leave the bandwidth to the player while it is waiting for data
+        DownloadScheduler.getInstance().setPlaybackBuffering(
+                state == STATE_BLOCKED || state == STATE_BUFFERING);
         switch (state) {
             case STATE_BLOCKED:
                 onBlocked();
@@ -1653,6 +1668,7 @@ public final class Player implements PlaybackListener, Listener {
         audioReactor.abandonAudioFocus();
         simpleExoPlayer.pause();
         saveStreamProgressState();
+        flushStreamProgressState();
     }
 
     public void playPause() {
@@ -1769,6 +1785,22 @@ public final class Player implements PlaybackListener, Listener {
         saveStreamProgressState(simpleExoPlayer.getCurrentPosition());
     }
 
+    /**
+     * Writes the progress saved with {@link #saveStreamProgressState()}, which is buffered by the
+     * {@link HistoryRecordManager}, to the database right away.
+     */
+    private void flushStreamProgressState() {
+        // not added to databaseUpdateDisposable, as it must not be cancelled by destroy()
+        recordManager.flushStreamStates()
+                .doOnError(e -> {
+                    if (DEBUG) {
+                        e.printStackTrace();
+                    }
+                })
+                .onErrorComplete()
+                .subscribe();
+    }
+
     public void saveStreamProgressStateCompleted() {
         // current stream has ended, so the progress is its duration (+1 to overcome rounding)
         getCurrentStreamInfo().ifPresent(info ->
@@ -1911,6 +1943,39 @@ public final class Player implements PlaybackListener, Listener {
         return videoResolver.resolve(info);
     }
 
+    @Override // own playback listener
+    @NonNull
+    public Disposable prefetch(@NonNull final MediaItem mediaItem) {
+        final Optional<MediaItemTag> tag = MediaItemTag.from(mediaItem);
+        final StreamInfo info = tag.flatMap(MediaItemTag::getMaybeStreamInfo).orElse(null);
+        if (info == null || !PlayerHelper.isPrefetchAllowed(context)) {
+            return Disposable.disposed();
+        }
+
+        // the same streams the resolvers selected for the item
+        final List<Completable> prefetches = new ArrayList<>();
+        @Nullable final VideoStream video = tag.flatMap(MediaItemTag::getMaybeQuality)
+                .map(MediaItemTag.Quality::getSelectedVideoStream)
+                .orElse(null);
+        if (video != null && !isAudioOnly) {
+            prefetches.add(dataSource.prefetch(info, video));
+        }
+        if (video == null || video.isVideoOnly()) {
+            tag.flatMap(MediaItemTag::getMaybeAudioTrack)
+                    .map(MediaItemTag.AudioTrack::getSelectedAudioStream)
+                    .ifPresent(audio -> prefetches.add(dataSource.prefetch(info, audio)));
+        }
+
+        return Completable.merge(prefetches)
+                .subscribe(
+                        () -> {
+                            if (DEBUG) {
+                                Log.d(TAG, "Prefetched " + info.getUrl());
+                            }
+                        },
+                        error -> Log.w(TAG, "Could not prefetch " + info.getUrl(), error));
+    }
+
     public void disablePreloadingOfCurrentTrack() {
         loadController.disablePreloadingOfCurrentTrack();
     }
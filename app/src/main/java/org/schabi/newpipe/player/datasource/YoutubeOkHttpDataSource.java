@@ -0,0 +1,610 @@
+/*
+ * Based on ExoPlayer's OkHttpDataSource extension, version 2.18.1.
+ *
+ * Original source code copyright (C) 2016 The Android Open Source Project, licensed under the
+ * Apache License, Version 2.0.
+ */
+
+package org.schabi.newpipe.player.datasource;
+
+import static com.google.android.exoplayer2.upstream.HttpUtil.buildRangeRequestHeader;
+import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
+import static com.google.android.exoplayer2.util.Util.castNonNull;
+import static org.schabi.newpipe.extractor.services.youtube.YoutubeParsingHelper.getAndroidUserAgent;
+import static org.schabi.newpipe.extractor.services.youtube.YoutubeParsingHelper.getIosUserAgent;
+import static org.schabi.newpipe.extractor.services.youtube.YoutubeParsingHelper.isAndroidStreamingUrl;
+import static org.schabi.newpipe.extractor.services.youtube.YoutubeParsingHelper.isIosStreamingUrl;
+import static org.schabi.newpipe.extractor.services.youtube.YoutubeParsingHelper.isWebStreamingUrl;
+import static org.schabi.newpipe.extractor.services.youtube.YoutubeParsingHelper.isTvHtml5SimplyEmbeddedPlayerStreamingUrl;
+import static java.lang.Math.min;
+
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.PlaybackException;
+import com.google.android.exoplayer2.upstream.BaseDataSource;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSourceException;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.HttpDataSource;
+import com.google.android.exoplayer2.upstream.HttpUtil;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.util.Util;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.net.HttpHeaders;
+
+import org.schabi.newpipe.DownloaderImpl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.Call;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * An {@link HttpDataSource} that uses OkHttp, based on ExoPlayer's {@code OkHttpDataSource}, for
+ * YouTube streams.
+ *
+ * <p>
+ * It adds the headers of YouTube's clients and the {@code rn} and {@code range} parameters to
+ * the requests, which are made with a {@link Call.Factory}, usually an
+ * {@link okhttp3.OkHttpClient} derived from the one of {@link DownloaderImpl}. Its connection
+ * pool is then shared: the connections are kept alive between the requests of the chunks, seeks
+ * and streams, and multiplexed when the server supports HTTP/2.
+ * </p>
+ *
+ * <p>
+ * {@link TransferListener#onTransferInitializing} is called before sending each request and
+ * {@link TransferListener#onTransferStart} once its response headers are received, so the
+ * listeners can measure the time to the first byte of every request.
+ * </p>
+ */
+@SuppressWarnings({"squid:S3011", "squid:S4738"})
+public final class YoutubeOkHttpDataSource extends BaseDataSource implements HttpDataSource {
+
+    /**
+     * {@link DataSource.Factory} for {@link YoutubeOkHttpDataSource} instances.
+     */
+    public static final class Factory implements HttpDataSource.Factory {
+
+        private final RequestProperties defaultRequestProperties;
+        private final Call.Factory callFactory;
+
+        @Nullable
+        private TransferListener transferListener;
+        @Nullable
+        private Predicate<String> contentTypePredicate;
+
+        private boolean rangeParameterEnabled;
+        private boolean rnParameterEnabled;
+
+        /**
+         * Creates an instance.
+         *
+         * @param callFactory A {@link Call.Factory} (typically an {@link okhttp3.OkHttpClient})
+         *                    for use by the sources created by the factory. Its timeouts and
+         *                    redirect policy are the ones of the sources.
+         */
+        public Factory(@NonNull final Call.Factory callFactory) {
+            this.callFactory = callFactory;
+            defaultRequestProperties = new RequestProperties();
+        }
+
+        @NonNull
+        @Override
+        public Factory setDefaultRequestProperties(
+                @NonNull final Map<String, String> defaultRequestPropertiesMap) {
+            defaultRequestProperties.clearAndSet(defaultRequestPropertiesMap);
+            return this;
+        }
+
+        /**
+         * Sets whether the use of the {@code range} parameter instead of the {@code Range} header
+         * to request ranges of streams is enabled.
+         *
+         * @param rangeParameterEnabledValue whether the use of the {@code range} parameter instead
+         *                                   of the {@code Range} header (must be only enabled when
+         *                                   non-{@code ProgressiveMediaSource}s)
+         * @return This factory.
+         */
+        public Factory setRangeParameterEnabled(final boolean rangeParameterEnabledValue) {
+            rangeParameterEnabled = rangeParameterEnabledValue;
+            return this;
+        }
+
+        /**
+         * Sets whether the use of the {@code rn}, which stands for request number, parameter is
+         * enabled.
+         *
+         * @param rnParameterEnabledValue whether the appending the {@code rn} parameter to
+         *                                {@code videoplayback} URLs
+         * @return This factory.
+         */
+        public Factory setRnParameterEnabled(final boolean rnParameterEnabledValue) {
+            rnParameterEnabled = rnParameterEnabledValue;
+            return this;
+        }
+
+        /**
+         * Sets a content type {@link Predicate}. If a content type is rejected by the predicate
+         * then a {@link HttpDataSource.InvalidContentTypeException} is thrown from
+         * {@link YoutubeOkHttpDataSource#open(DataSpec)}.
+         *
+         * <p>
+         * The default is {@code null}.
+         * </p>
+         *
+         * @param contentTypePredicateToSet The content type {@link Predicate}, or {@code null} to
+         *                                  clear a predicate that was previously set.
+         * @return This factory.
+         */
+        public Factory setContentTypePredicate(
+                @Nullable final Predicate<String> contentTypePredicateToSet) {
+            this.contentTypePredicate = contentTypePredicateToSet;
+            return this;
+        }
+
+        /**
+         * Sets the {@link TransferListener} that will be used.
+         *
+         * <p>The default is {@code null}.
+         *
+         * <p>See {@link DataSource#addTransferListener(TransferListener)}.
+         *
+         * @param transferListenerToUse The listener that will be used.
+         * @return This factory.
+         */
+        public Factory setTransferListener(
+                @Nullable final TransferListener transferListenerToUse) {
+            this.transferListener = transferListenerToUse;
+            return this;
+        }
+
+        @NonNull
+        @Override
+        public YoutubeOkHttpDataSource createDataSource() {
+            final YoutubeOkHttpDataSource dataSource = new YoutubeOkHttpDataSource(
+                    callFactory,
+                    rangeParameterEnabled,
+                    rnParameterEnabled,
+                    defaultRequestProperties,
+                    contentTypePredicate);
+            if (transferListener != null) {
+                dataSource.addTransferListener(transferListener);
+            }
+            return dataSource;
+        }
+    }
+
+    private static final String RN_PARAMETER = "&rn=";
+    private static final String YOUTUBE_BASE_URL = "https://www.youtube.com";
+
+    private final Call.Factory callFactory;
+    private final boolean rangeParameterEnabled;
+    private final boolean rnParameterEnabled;
+
+    @Nullable
+    private final RequestProperties defaultRequestProperties;
+    private final RequestProperties requestProperties;
+
+    @Nullable
+    private final Predicate<String> contentTypePredicate;
+    @Nullable
+    private DataSpec dataSpec;
+    @Nullable
+    private Response response;
+    @Nullable
+    private InputStream responseByteStream;
+    private boolean connectionEstablished;
+    private long bytesToRead;
+    private long bytesRead;
+
+    private long requestNumber;
+
+    private YoutubeOkHttpDataSource(@NonNull final Call.Factory callFactory,
+                                    final boolean rangeParameterEnabled,
+                                    final boolean rnParameterEnabled,
+                                    @Nullable final RequestProperties defaultRequestProperties,
+                                    @Nullable final Predicate<String> contentTypePredicate) {
+        super(true);
+        this.callFactory = callFactory;
+        this.rangeParameterEnabled = rangeParameterEnabled;
+        this.rnParameterEnabled = rnParameterEnabled;
+        this.defaultRequestProperties = defaultRequestProperties;
+        this.contentTypePredicate = contentTypePredicate;
+        this.requestProperties = new RequestProperties();
+        this.requestNumber = 0;
+    }
+
+    @Override
+    @Nullable
+    public Uri getUri() {
+        return response == null ? null : Uri.parse(response.request().url().toString());
+    }
+
+    @Override
+    public int getResponseCode() {
+        return response == null ? -1 : response.code();
+    }
+
+    @NonNull
+    @Override
+    public Map<String, List<String>> getResponseHeaders() {
+        return response == null ? ImmutableMap.of() : response.headers().toMultimap();
+    }
+
+    @Override
+    public void setRequestProperty(@NonNull final String name, @NonNull final String value) {
+        checkNotNull(name);
+        checkNotNull(value);
+        requestProperties.set(name, value);
+    }
+
+    @Override
+    public void clearRequestProperty(@NonNull final String name) {
+        checkNotNull(name);
+        requestProperties.remove(name);
+    }
+
+    @Override
+    public void clearAllRequestProperties() {
+        requestProperties.clear();
+    }
+
+    /**
+     * Opens the source to read the specified data.
+     */
+    @Override
+    public long open(@NonNull final DataSpec dataSpecParameter) throws HttpDataSourceException {
+        this.dataSpec = dataSpecParameter;
+        bytesRead = 0;
+        bytesToRead = 0;
+        transferInitializing(dataSpecParameter);
+
+        final Request request = makeRequest(dataSpecParameter);
+        final Response okHttpResponse;
+        final ResponseBody responseBody;
+        try {
+            this.response = callFactory.newCall(request).execute();
+            okHttpResponse = this.response;
+            responseBody = checkNotNull(okHttpResponse.body());
+            responseByteStream = responseBody.byteStream();
+        } catch (final IOException e) {
+            closeConnectionQuietly();
+            throw HttpDataSourceException.createForIOException(e, dataSpecParameter,
+                    HttpDataSourceException.TYPE_OPEN);
+        }
+
+        final int responseCode = okHttpResponse.code();
+
+        // Check for a valid response code.
+        if (!okHttpResponse.isSuccessful()) {
+            if (responseCode == 416) {
+                final long documentSize = HttpUtil.getDocumentSize(
+                        okHttpResponse.header(HttpHeaders.CONTENT_RANGE));
+                if (dataSpecParameter.position == documentSize) {
+                    connectionEstablished = true;
+                    transferStarted(dataSpecParameter);
+                    return dataSpecParameter.length != C.LENGTH_UNSET
+                            ? dataSpecParameter.length
+                            : 0;
+                }
+            }
+
+            byte[] errorResponseBody;
+            try {
+                errorResponseBody = Util.toByteArray(castNonNull(responseByteStream));
+            } catch (final IOException e) {
+                errorResponseBody = Util.EMPTY_BYTE_ARRAY;
+            }
+
+            final Map<String, List<String>> headers = okHttpResponse.headers().toMultimap();
+            closeConnectionQuietly();
+            final IOException cause = responseCode == 416 ? new DataSourceException(
+                    PlaybackException.ERROR_CODE_IO_READ_POSITION_OUT_OF_RANGE)
+                    : null;
+            throw new InvalidResponseCodeException(responseCode, okHttpResponse.message(), cause,
+                    headers, dataSpecParameter, errorResponseBody);
+        }
+
+        // Check for a valid content type.
+        final MediaType mediaType = responseBody.contentType();
+        final String contentType = mediaType != null ? mediaType.toString() : "";
+        if (contentTypePredicate != null && !contentTypePredicate.apply(contentType)) {
+            closeConnectionQuietly();
+            throw new InvalidContentTypeException(contentType, dataSpecParameter);
+        }
+
+        final long bytesToSkip;
+        if (!rangeParameterEnabled) {
+            // If we requested a range starting from a non-zero position and received a 200 rather
+            // than a 206, then the server does not support partial requests. We'll need to
+            // manually skip to the requested position.
+            bytesToSkip = responseCode == 200 && dataSpecParameter.position != 0
+                    ? dataSpecParameter.position
+                    : 0;
+        } else {
+            bytesToSkip = 0;
+        }
+
+        // Determine the length of the data to be read, after skipping.
+        if (dataSpecParameter.length != C.LENGTH_UNSET) {
+            bytesToRead = dataSpecParameter.length;
+        } else {
+            // OkHttp removes the content length of the responses it decompresses
+            final long contentLength = responseBody.contentLength();
+            bytesToRead = contentLength != -1
+                    ? (contentLength - bytesToSkip)
+                    : C.LENGTH_UNSET;
+        }
+
+        connectionEstablished = true;
+        transferStarted(dataSpecParameter);
+
+        try {
+            skipFully(bytesToSkip, dataSpecParameter);
+        } catch (final HttpDataSourceException e) {
+            closeConnectionQuietly();
+            throw e;
+        }
+
+        return bytesToRead;
+    }
+
+    @Override
+    public int read(@NonNull final byte[] buffer, final int offset, final int length)
+            throws HttpDataSourceException {
+        try {
+            return readInternal(buffer, offset, length);
+        } catch (final IOException e) {
+            throw HttpDataSourceException.createForIOException(e, castNonNull(dataSpec),
+                    HttpDataSourceException.TYPE_READ);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (connectionEstablished) {
+            connectionEstablished = false;
+            transferEnded();
+            closeConnectionQuietly();
+        }
+    }
+
+    /**
+     * Builds the request of the specified data.
+     *
+     * @param dataSpecToUse the {@link DataSpec}
+     * @return the request
+     * @throws HttpDataSourceException if the URL is not a valid HTTP URL
+     */
+    @NonNull
+    private Request makeRequest(@NonNull final DataSpec dataSpecToUse)
+            throws HttpDataSourceException {
+        // This is the method that contains breaking changes with respect to OkHttpDataSource!
+
+        final long position = dataSpecToUse.position;
+        final long length = dataSpecToUse.length;
+
+        String requestUrl = dataSpecToUse.uri.toString();
+        final HttpUrl url = HttpUrl.parse(requestUrl);
+        if (url == null) {
+            throw new HttpDataSourceException("Malformed URL", dataSpecToUse,
+                    PlaybackException.ERROR_CODE_FAILED_RUNTIME_CHECK,
+                    HttpDataSourceException.TYPE_OPEN);
+        }
+
+        // Don't add the request number parameter if it has been already added (for instance in
+        // DASH manifests) or if that's not a videoplayback URL
+        final boolean isVideoPlaybackUrl = url.encodedPath().startsWith("/videoplayback");
+        if (isVideoPlaybackUrl && rnParameterEnabled && !requestUrl.contains(RN_PARAMETER)) {
+            requestUrl += RN_PARAMETER + requestNumber;
+            ++requestNumber;
+        }
+
+        if (rangeParameterEnabled && isVideoPlaybackUrl) {
+            final String rangeParameterBuilt = buildRangeParameter(position, length);
+            if (rangeParameterBuilt != null) {
+                requestUrl += rangeParameterBuilt;
+            }
+        }
+
+        final Request.Builder builder = new Request.Builder().url(requestUrl);
+
+        final Map<String, String> requestHeaders = new HashMap<>();
+        if (defaultRequestProperties != null) {
+            requestHeaders.putAll(defaultRequestProperties.getSnapshot());
+        }
+        requestHeaders.putAll(requestProperties.getSnapshot());
+        requestHeaders.putAll(dataSpecToUse.httpRequestHeaders);
+
+        for (final Map.Entry<String, String> header : requestHeaders.entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+
+        if (!rangeParameterEnabled) {
+            final String rangeHeader = buildRangeRequestHeader(position, length);
+            if (rangeHeader != null) {
+                builder.header(HttpHeaders.RANGE, rangeHeader);
+            }
+        }
+
+        if (isWebStreamingUrl(requestUrl)
+                || isTvHtml5SimplyEmbeddedPlayerStreamingUrl(requestUrl)) {
+            builder.header(HttpHeaders.ORIGIN, YOUTUBE_BASE_URL);
+            builder.header(HttpHeaders.REFERER, YOUTUBE_BASE_URL);
+            builder.header(HttpHeaders.SEC_FETCH_DEST, "empty");
+            builder.header(HttpHeaders.SEC_FETCH_MODE, "cors");
+            builder.header(HttpHeaders.SEC_FETCH_SITE, "cross-site");
+        }
+
+        builder.header(HttpHeaders.TE, "trailers");
+
+        final boolean isAndroidStreamingUrl = isAndroidStreamingUrl(requestUrl);
+        final boolean isIosStreamingUrl = isIosStreamingUrl(requestUrl);
+        if (isAndroidStreamingUrl) {
+            // Improvement which may be done: find the content country used to request YouTube
+            // contents to add it in the user agent instead of using the default
+            builder.header(HttpHeaders.USER_AGENT, getAndroidUserAgent(null));
+        } else if (isIosStreamingUrl) {
+            builder.header(HttpHeaders.USER_AGENT, getIosUserAgent(null));
+        } else {
+            // non-mobile user agent
+            builder.header(HttpHeaders.USER_AGENT, DownloaderImpl.USER_AGENT);
+        }
+
+        // OkHttp requests and decompresses gzip transparently when no encoding is set
+        if (!dataSpecToUse.isFlagSet(DataSpec.FLAG_ALLOW_GZIP)) {
+            builder.header(HttpHeaders.ACCEPT_ENCODING, "identity");
+        }
+
+        // Mobile clients uses POST requests to fetch contents
+        final boolean isPost = isAndroidStreamingUrl || isIosStreamingUrl
+                || dataSpecToUse.httpMethod == DataSpec.HTTP_METHOD_POST;
+        @Nullable RequestBody requestBody = null;
+        if (dataSpecToUse.httpBody != null) {
+            requestBody = RequestBody.create(dataSpecToUse.httpBody);
+        } else if (isPost) {
+            // OkHttp requires a body for POST requests
+            requestBody = RequestBody.create(Util.EMPTY_BYTE_ARRAY);
+        }
+        builder.method(isPost ? "POST" : dataSpecToUse.getHttpMethodString(), requestBody);
+
+        return builder.build();
+    }
+
+    /**
+     * Attempts to skip the specified number of bytes in full.
+     *
+     * @param bytesToSkip   The number of bytes to skip.
+     * @param dataSpecToUse The {@link DataSpec}.
+     * @throws HttpDataSourceException If the thread is interrupted during the operation, or an
+     * error occurs while reading from the source, or if the data ended before skipping the
+     * specified number of bytes.
+     */
+    @SuppressWarnings("checkstyle:FinalParameters")
+    private void skipFully(long bytesToSkip, final DataSpec dataSpecToUse)
+            throws HttpDataSourceException {
+        if (bytesToSkip == 0) {
+            return;
+        }
+
+        final byte[] skipBuffer = new byte[4096];
+        try {
+            while (bytesToSkip > 0) {
+                final int readLength = (int) min(bytesToSkip, skipBuffer.length);
+                final int read = castNonNull(responseByteStream).read(skipBuffer, 0, readLength);
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException();
+                }
+
+                if (read == -1) {
+                    throw new HttpDataSourceException(
+                            dataSpecToUse,
+                            PlaybackException.ERROR_CODE_IO_READ_POSITION_OUT_OF_RANGE,
+                            HttpDataSourceException.TYPE_OPEN);
+                }
+
+                bytesToSkip -= read;
+                bytesTransferred(read);
+            }
+        } catch (final IOException e) {
+            if (e instanceof HttpDataSourceException) {
+                throw (HttpDataSourceException) e;
+            }
+            throw new HttpDataSourceException(e, dataSpecToUse,
+                    PlaybackException.ERROR_CODE_IO_UNSPECIFIED,
+                    HttpDataSourceException.TYPE_OPEN);
+        }
+    }
+
+    /**
+     * Reads up to {@code length} bytes of data and stores them into {@code buffer}, starting at
+     * index {@code offset}.
+     *
+     * <p>
+     * This method blocks until at least one byte of data can be read, the end of the opened range
+     * is detected, or an exception is thrown.
+     * </p>
+     *
+     * @param buffer     The buffer into which the read data should be stored.
+     * @param offset     The start offset into {@code buffer} at which data should be written.
+     * @param readLength The maximum number of bytes to read.
+     * @return The number of bytes read, or {@link C#RESULT_END_OF_INPUT} if the end of the opened
+     * range is reached.
+     * @throws IOException If an error occurs reading from the source.
+     */
+    @SuppressWarnings("checkstyle:FinalParameters")
+    private int readInternal(final byte[] buffer, final int offset, int readLength)
+            throws IOException {
+        if (readLength == 0) {
+            return 0;
+        }
+        if (bytesToRead != C.LENGTH_UNSET) {
+            final long bytesRemaining = bytesToRead - bytesRead;
+            if (bytesRemaining == 0) {
+                return C.RESULT_END_OF_INPUT;
+            }
+            readLength = (int) min(readLength, bytesRemaining);
+        }
+
+        final int read = castNonNull(responseByteStream).read(buffer, offset, readLength);
+        if (read == -1) {
+            return C.RESULT_END_OF_INPUT;
+        }
+
+        bytesRead += read;
+        bytesTransferred(read);
+        return read;
+    }
+
+    /**
+     * Closes the current response quietly, if there is one. Closing a response which was not
+     * read entirely cancels its stream: an HTTP/2 connection stays in the pool, while an
+     * HTTP/1.1 one is closed.
+     */
+    private void closeConnectionQuietly() {
+        if (response != null) {
+            checkNotNull(response.body()).close();
+            response = null;
+        }
+        responseByteStream = null;
+    }
+
+    /**
+     * Builds a {@code range} parameter for the given position and length.
+     *
+     * @param position The request position.
+     * @param length The request length, or {@link C#LENGTH_UNSET} if the request is unbounded.
+     * @return The corresponding {@code range} parameter, or {@code null} if this parameter is
+     * unnecessary because the whole resource is being requested.
+     */
+    @Nullable
+    private static String buildRangeParameter(final long position, final long length) {
+        if (position == 0 && length == C.LENGTH_UNSET) {
+            return null;
+        }
+
+        final StringBuilder rangeParameter = new StringBuilder();
+        rangeParameter.append("&range=");
+        rangeParameter.append(position);
+        rangeParameter.append("-");
+        if (length != C.LENGTH_UNSET) {
+            rangeParameter.append(position + length - 1);
+        }
+        return rangeParameter.toString();
+    }
+}
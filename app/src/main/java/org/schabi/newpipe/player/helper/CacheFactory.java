@@ -32,7 +32,7 @@ final class CacheFactory implements DataSource.Factory {
 
     @NonNull
     @Override
-    public DataSource createDataSource() {
+    public CacheDataSource createDataSource() {
         final DefaultDataSource dataSource = new DefaultDataSource.Factory(context,
                 upstreamDataSourceFactory)
                 .setTransferListener(transferListener)
@@ -3,8 +3,10 @@ package org.schabi.newpipe.player.helper;
 import static org.schabi.newpipe.MainActivity.DEBUG;
 
 import android.content.Context;
+import android.net.Uri;
 import android.util.Log;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.google.android.exoplayer2.database.StandaloneDatabaseProvider;
@@ -17,20 +19,36 @@ import com.google.android.exoplayer2.source.hls.playlist.DefaultHlsPlaylistTrack
 import com.google.android.exoplayer2.source.smoothstreaming.DefaultSsChunkSource;
 import com.google.android.exoplayer2.source.smoothstreaming.SsMediaSource;
 import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
 import com.google.android.exoplayer2.upstream.DefaultDataSource;
 import com.google.android.exoplayer2.upstream.DefaultHttpDataSource;
 import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.upstream.cache.CacheWriter;
 import com.google.android.exoplayer2.upstream.cache.LeastRecentlyUsedCacheEvictor;
 import com.google.android.exoplayer2.upstream.cache.SimpleCache;
 
 import org.schabi.newpipe.DownloaderImpl;
+import org.schabi.newpipe.extractor.ServiceList;
+import org.schabi.newpipe.extractor.services.youtube.ItagItem;
 import org.schabi.newpipe.extractor.services.youtube.dashmanifestcreators.YoutubeOtfDashManifestCreator;
 import org.schabi.newpipe.extractor.services.youtube.dashmanifestcreators.YoutubePostLiveStreamDvrDashManifestCreator;
 import org.schabi.newpipe.extractor.services.youtube.dashmanifestcreators.YoutubeProgressiveDashManifestCreator;
+import org.schabi.newpipe.extractor.stream.AudioStream;
+import org.schabi.newpipe.extractor.stream.DeliveryMethod;
+import org.schabi.newpipe.extractor.stream.Stream;
+import org.schabi.newpipe.extractor.stream.StreamInfo;
+import org.schabi.newpipe.extractor.stream.VideoStream;
 import org.schabi.newpipe.player.datasource.NonUriHlsDataSourceFactory;
-import org.schabi.newpipe.player.datasource.YoutubeHttpDataSource;
+import org.schabi.newpipe.player.datasource.YoutubeOkHttpDataSource;
+import org.schabi.newpipe.player.resolver.PlaybackResolver;
 
 import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+import okhttp3.OkHttpClient;
 
 public class PlayerDataSource {
     public static final String TAG = PlayerDataSource.class.getSimpleName();
@@ -57,6 +75,19 @@ public class PlayerDataSource {
      */
     private static final String CACHE_FOLDER_NAME = "exoplayer";
 
+    /**
+     * The duration of the beginning of a stream downloaded by
+     * {@link #prefetch(StreamInfo, Stream)}.
+     */
+    private static final long PREFETCH_DURATION_MILLIS = 10000;
+
+    /**
+     * The amount of bytes downloaded by {@link #prefetch(StreamInfo, Stream)} when the bitrate of
+     * the stream is unknown, and the maximum amount otherwise.
+     */
+    private static final long DEFAULT_PREFETCH_LENGTH = 1024 * 1024;
+    private static final long MAX_PREFETCH_LENGTH = 4 * 1024 * 1024;
+
     /**
      * The {@link SimpleCache} instance which will be used to build
      * {@link com.google.android.exoplayer2.upstream.cache.CacheDataSource}s instances (with
@@ -72,7 +103,7 @@ public class PlayerDataSource {
     private final CacheFactory cacheDataSourceFactory;
 
     // YouTube-specific Data Source Factories (with cache)
-    // They use YoutubeHttpDataSource.Factory, with different parameters each
+    // They use YoutubeOkHttpDataSource.Factory, with different parameters each
     private final CacheFactory ytHlsCacheDataSourceFactory;
     private final CacheFactory ytDashCacheDataSourceFactory;
     private final CacheFactory ytProgressiveDashCacheDataSourceFactory;
@@ -93,13 +124,15 @@ public class PlayerDataSource {
         cacheDataSourceFactory = new CacheFactory(context, transferListener, cache,
                 new DefaultHttpDataSource.Factory().setUserAgent(DownloaderImpl.USER_AGENT));
 
-        // YouTube-specific data source factories use getYoutubeHttpDataSourceFactory()
+        // YouTube-specific data source factories use getYoutubeHttpDataSourceFactory(), all of
+        // them share the connection pool of the client of DownloaderImpl
+        final OkHttpClient youtubeHttpClient = getYoutubeHttpClient();
         ytHlsCacheDataSourceFactory = new CacheFactory(context, transferListener, cache,
-                getYoutubeHttpDataSourceFactory(false, false));
+                getYoutubeHttpDataSourceFactory(youtubeHttpClient, false, false));
         ytDashCacheDataSourceFactory = new CacheFactory(context, transferListener, cache,
-                getYoutubeHttpDataSourceFactory(true, true));
+                getYoutubeHttpDataSourceFactory(youtubeHttpClient, true, true));
         ytProgressiveDashCacheDataSourceFactory = new CacheFactory(context, transferListener, cache,
-                getYoutubeHttpDataSourceFactory(false, true));
+                getYoutubeHttpDataSourceFactory(youtubeHttpClient, false, true));
 
         // set the maximum size to manifest creators
         YoutubeProgressiveDashManifestCreator.getCache().setMaximumSize(MAX_MANIFEST_CACHE_SIZE);
@@ -184,16 +217,93 @@ public class PlayerDataSource {
     //endregion
 
 
+    //region Prefetching
+    /**
+     * Downloads the first seconds of a progressive stream into the cache, so that it starts
+     * playing without waiting for the network once it is the turn of its play queue item.
+     * <p>
+     * The data is written with the same cache keys the media sources built by
+     * {@link PlaybackResolver} read with. Streams of other delivery methods are not supported,
+     * as their chunks are only known once the manifest is parsed.
+     * </p>
+     *
+     * @param info   the info of the stream
+     * @param stream the stream selected for the playback
+     * @return a {@link Completable} downloading the data on the I/O scheduler, which is cancelled
+     * when disposed, or a completed one if the stream is not supported
+     */
+    @NonNull
+    public Completable prefetch(@NonNull final StreamInfo info, @NonNull final Stream stream) {
+        if (!stream.isUrl() || stream.getDeliveryMethod() != DeliveryMethod.PROGRESSIVE_HTTP
+                || stream.getContent() == null || stream.getContent().isEmpty()) {
+            return Completable.complete();
+        }
+
+        final CacheFactory factory;
+        final String cacheKey;
+        if (info.getService() != ServiceList.YouTube) {
+            factory = cacheDataSourceFactory;
+            cacheKey = PlaybackResolver.cacheKeyOf(info, stream);
+        } else if ((stream instanceof VideoStream && ((VideoStream) stream).isVideoOnly())
+                || stream instanceof AudioStream) {
+            // played through a generated DASH manifest, whose chunks are cached by their URL
+            factory = ytDashCacheDataSourceFactory;
+            cacheKey = null;
+        } else {
+            factory = ytProgressiveDashCacheDataSourceFactory;
+            cacheKey = PlaybackResolver.cacheKeyOf(info, stream);
+        }
+
+        final DataSpec dataSpec = new DataSpec.Builder()
+                .setUri(Uri.parse(stream.getContent()))
+                .setKey(cacheKey)
+                .setLength(getPrefetchLength(stream))
+                .build();
+
+        return Completable.defer(() -> {
+            final CacheWriter cacheWriter =
+                    new CacheWriter(factory.createDataSource(), dataSpec, null, null);
+            return Completable.fromAction(cacheWriter::cache)
+                    .doOnDispose(cacheWriter::cancel);
+        }).subscribeOn(Schedulers.io());
+    }
+
+    private static long getPrefetchLength(@NonNull final Stream stream) {
+        final ItagItem itagItem = stream.getItagItem();
+        long bitrate = itagItem == null ? 0 : itagItem.getBitrate();
+        if (bitrate <= 0 && stream instanceof AudioStream) {
+            // in kbit/s
+            bitrate = ((AudioStream) stream).getAverageBitrate() * 1000L;
+        }
+
+        if (bitrate <= 0) {
+            return DEFAULT_PREFETCH_LENGTH;
+        }
+        return Math.min(bitrate / 8 * PREFETCH_DURATION_MILLIS / 1000, MAX_PREFETCH_LENGTH);
+    }
+    //endregion
+
+
     //region Static methods
     private static DefaultDashChunkSource.Factory getDefaultDashChunkSourceFactory(
             final DataSource.Factory dataSourceFactory) {
         return new DefaultDashChunkSource.Factory(dataSourceFactory);
     }
 
-    private static YoutubeHttpDataSource.Factory getYoutubeHttpDataSourceFactory(
+    private static OkHttpClient getYoutubeHttpClient() {
+        return DownloaderImpl.getInstance().getClient().newBuilder()
+                .connectTimeout(DefaultHttpDataSource.DEFAULT_CONNECT_TIMEOUT_MILLIS,
+                        TimeUnit.MILLISECONDS)
+                .readTimeout(DefaultHttpDataSource.DEFAULT_READ_TIMEOUT_MILLIS,
+                        TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    private static YoutubeOkHttpDataSource.Factory getYoutubeHttpDataSourceFactory(
+            final OkHttpClient client,
             final boolean rangeParameterEnabled,
             final boolean rnParameterEnabled) {
-        return new YoutubeHttpDataSource.Factory()
+        return new YoutubeOkHttpDataSource.Factory(client)
                 .setRangeParameterEnabled(rangeParameterEnabled)
                 .setRnParameterEnabled(rnParameterEnabled);
     }
@@ -33,6 +33,7 @@ import com.google.android.exoplayer2.trackselection.ExoTrackSelection;
 import com.google.android.exoplayer2.ui.AspectRatioFrameLayout;
 import com.google.android.exoplayer2.ui.AspectRatioFrameLayout.ResizeMode;
 import com.google.android.exoplayer2.ui.CaptionStyleCompat;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
 import com.google.android.exoplayer2.util.MimeTypes;
 
 import org.schabi.newpipe.R;
@@ -67,6 +68,11 @@ public final class PlayerHelper {
             new Formatter(STRING_BUILDER, Locale.getDefault());
     private static final NumberFormat SPEED_FORMATTER = new DecimalFormat("0.##x");
     private static final NumberFormat PITCH_FORMATTER = new DecimalFormat("##%");
+    /**
+     * The estimated bandwidth, in bits per second, below which only the streams next to the
+     * current one are loaded in advance: it is about what a 480p video alone needs.
+     */
+    private static final long PREFETCH_MIN_BITRATE = 1_000_000;
 
     @Retention(SOURCE)
     @IntDef({AUTOPLAY_TYPE_ALWAYS, AUTOPLAY_TYPE_WIFI,
@@ -405,6 +411,34 @@ public final class PlayerHelper {
         return Integer.parseInt(preferredIntervalBytes) * 1024;
     }
 
+    /**
+     * @param context        the Android context
+     * @param bandwidthMeter the bandwidth meter of the player, which estimates the bandwidth from
+     *                       the transfers of the streams, or from the network type before any
+     * @return how many streams around the current one the player should load in advance, which
+     * is only 1 on metered networks to not waste the data of the user, and on slow networks where
+     * loading more streams would delay the one being played
+     */
+    public static int getPrefetchWindowSize(@NonNull final Context context,
+                                            @NonNull final BandwidthMeter bandwidthMeter) {
+        if (ListHelper.isMeteredNetwork(context)
+                || bandwidthMeter.getBitrateEstimate() < PREFETCH_MIN_BITRATE) {
+            return 1;
+        }
+
+        return Integer.parseInt(getPreferences(context).getString(
+                context.getString(R.string.prefetch_window_size_key),
+                context.getString(R.string.prefetch_window_size_default_value)));
+    }
+
+    /**
+     * @param context the Android context
+     * @return whether the beginning of the next stream can be downloaded in advance
+     */
+    public static boolean isPrefetchAllowed(@NonNull final Context context) {
+        return !ListHelper.isMeteredNetwork(context);
+    }
+
     ////////////////////////////////////////////////////////////////////////////
     // Private helpers
     ////////////////////////////////////////////////////////////////////////////
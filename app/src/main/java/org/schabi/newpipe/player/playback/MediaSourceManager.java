@@ -34,6 +34,7 @@ import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.disposables.CompositeDisposable;
 import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.disposables.SerialDisposable;
 import io.reactivex.rxjava3.internal.subscriptions.EmptySubscription;
 import io.reactivex.rxjava3.schedulers.Schedulers;
 import io.reactivex.rxjava3.subjects.PublishSubject;
@@ -47,9 +48,15 @@ public class MediaSourceManager {
     @NonNull
     private final String TAG = "MediaSourceManager@" + hashCode();
 
+    @NonNull
+    private final PlaybackListener playbackListener;
+    @NonNull
+    private final PlayQueue playQueue;
+
     /**
      * Determines how many streams before and after the current stream should be loaded.
-     * The default value (1) ensures seamless playback under typical network settings.
+     * A value of 1 ensures seamless playback under typical network settings, higher values
+     * avoid stalls between streams on slow networks.
      * <p>
      * The streams after the current will be loaded into the playlist timeline while the
      * streams before will only be cached for future usage.
@@ -57,7 +64,7 @@ public class MediaSourceManager {
      *
      * @see #onMediaSourceReceived(PlayQueueItem, ManagedMediaSource)
      */
-    private static final int WINDOW_SIZE = 1;
+    private final int windowSize;
 
     /**
      * Determines the maximum number of disposables allowed in the {@link #loaderReactor}.
@@ -67,12 +74,7 @@ public class MediaSourceManager {
      * @see #loadImmediate()
      * @see #maybeLoadItem(PlayQueueItem)
      */
-    private static final int MAXIMUM_LOADER_SIZE = WINDOW_SIZE * 2 + 1;
-
-    @NonNull
-    private final PlaybackListener playbackListener;
-    @NonNull
-    private final PlayQueue playQueue;
+    private final int maximumLoaderSize;
 
     /**
      * Determines the gap time between the playback position and the playback duration which
@@ -123,17 +125,27 @@ public class MediaSourceManager {
     @NonNull
     private ManagedMediaSourcePlaylist playlist;
 
+    /**
+     * Holds the download of the beginning of the next stream, see {@link #maybePrefetchNext()}.
+     */
+    @NonNull
+    private final SerialDisposable prefetcher;
+    @Nullable
+    private PlayQueueItem prefetchedItem;
+
     private final Handler removeMediaSourceHandler = new Handler();
 
     public MediaSourceManager(@NonNull final PlaybackListener listener,
-                              @NonNull final PlayQueue playQueue) {
-        this(listener, playQueue, 400L,
+                              @NonNull final PlayQueue playQueue,
+                              final int windowSize) {
+        this(listener, playQueue, windowSize, 400L,
                 /*playbackNearEndGapMillis=*/TimeUnit.MILLISECONDS.convert(30, TimeUnit.SECONDS),
                 /*progressUpdateIntervalMillis*/TimeUnit.MILLISECONDS.convert(2, TimeUnit.SECONDS));
     }
 
     private MediaSourceManager(@NonNull final PlaybackListener listener,
                                @NonNull final PlayQueue playQueue,
+                               final int windowSize,
                                final long loadDebounceMillis,
                                final long playbackNearEndGapMillis,
                                final long progressUpdateIntervalMillis) {
@@ -145,10 +157,17 @@ public class MediaSourceManager {
                     + " ms] must be longer than update interval=[ " + progressUpdateIntervalMillis
                     + " ms] for them to be useful.");
         }
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Window size=[" + windowSize
+                    + "] must be at least 1.");
+        }
 
         this.playbackListener = listener;
         this.playQueue = playQueue;
 
+        this.windowSize = windowSize;
+        this.maximumLoaderSize = windowSize * 2 + 1;
+
         this.playbackNearEndGapMillis = playbackNearEndGapMillis;
         this.progressUpdateIntervalMillis = progressUpdateIntervalMillis;
         this.nearEndIntervalSignal = getEdgeIntervalSignal();
@@ -164,6 +183,8 @@ public class MediaSourceManager {
 
         this.playlist = new ManagedMediaSourcePlaylist();
 
+        this.prefetcher = new SerialDisposable();
+
         this.loadingItems = Collections.synchronizedSet(new ArraySet<>());
 
         playQueue.getBroadcastReceiver()
@@ -188,6 +209,7 @@ public class MediaSourceManager {
 
         playQueueReactor.cancel();
         loaderReactor.dispose();
+        prefetcher.dispose();
     }
 
     /*//////////////////////////////////////////////////////////////////////////
@@ -276,6 +298,8 @@ public class MediaSourceManager {
             maybeBlock();
             playQueue.fetch();
         }
+        // the next item might have changed, e.g. on reorder
+        maybePrefetchNext();
         playQueueReactor.request(1);
     }
 
@@ -284,7 +308,9 @@ public class MediaSourceManager {
     //////////////////////////////////////////////////////////////////////////*/
 
     private boolean isPlayQueueReady() {
-        final boolean isWindowLoaded = playQueue.size() - playQueue.getIndex() > WINDOW_SIZE;
+        // Only the next item is needed for seamless playback, do not block the playback until
+        // the whole window is fetched
+        final boolean isWindowLoaded = playQueue.size() - playQueue.getIndex() > 1;
         return playQueue.isComplete() || isWindowLoaded;
     }
 
@@ -352,6 +378,7 @@ public class MediaSourceManager {
         if (isPlayQueueReady() && isPlaybackReady()) {
             final boolean isBlockReleased = maybeUnblock();
             maybeSync(isBlockReleased);
+            maybePrefetchNext();
         }
     }
 
@@ -382,7 +409,7 @@ public class MediaSourceManager {
         if (DEBUG) {
             Log.d(TAG, "MediaSource - loadImmediate() called");
         }
-        final ItemsToLoad itemsToLoad = getItemsToLoad(playQueue);
+        final ItemsToLoad itemsToLoad = getItemsToLoad(playQueue, windowSize);
         if (itemsToLoad == null) {
             return;
         }
@@ -534,12 +561,42 @@ public class MediaSourceManager {
             Log.d(TAG, "MediaSource - maybeClearLoaders() called.");
         }
         if (!loadingItems.contains(playQueue.getItem())
-                && loaderReactor.size() > MAXIMUM_LOADER_SIZE) {
+                && loaderReactor.size() > maximumLoaderSize) {
             loaderReactor.clear();
             loadingItems.clear();
         }
     }
 
+    /**
+     * Asks the {@link #playbackListener} to download the beginning of the next item once its
+     * source is loaded in the playlist, and cancels the download started for the previous next
+     * item if it changed meanwhile (e.g. after a reorder, a move or a selection). The playlist
+     * itself is never touched.
+     */
+    private void maybePrefetchNext() {
+        final int nextIndex = playQueue.getIndex() + 1;
+        final PlayQueueItem nextItem = playQueue.getItem(nextIndex);
+        if (prefetchedItem != null && prefetchedItem == nextItem) {
+            return;
+        }
+
+        prefetchedItem = null;
+        prefetcher.set(null);
+
+        final ManagedMediaSource nextSource = playlist.get(nextIndex);
+        if (isBlocked.get() || nextItem == null || !(nextSource instanceof LoadedMediaSource)
+                || !nextSource.isStreamEqual(nextItem)) {
+            return;
+        }
+
+        if (DEBUG) {
+            Log.d(TAG, "MediaSource - Prefetching=[" + nextItem.getTitle() + "] "
+                    + "with url=[" + nextItem.getUrl() + "]");
+        }
+        prefetchedItem = nextItem;
+        prefetcher.set(playbackListener.prefetch(nextSource.getMediaItem()));
+    }
+
     /*//////////////////////////////////////////////////////////////////////////
     // MediaSource Playlist Helpers
     //////////////////////////////////////////////////////////////////////////*/
@@ -565,7 +622,8 @@ public class MediaSourceManager {
     //////////////////////////////////////////////////////////////////////////*/
 
     @Nullable
-    private static ItemsToLoad getItemsToLoad(@NonNull final PlayQueue playQueue) {
+    private static ItemsToLoad getItemsToLoad(@NonNull final PlayQueue playQueue,
+                                              final int windowSize) {
         // The current item has higher priority
         final int currentIndex = playQueue.getIndex();
         final PlayQueueItem currentItem = playQueue.getItem(currentIndex);
@@ -576,8 +634,8 @@ public class MediaSourceManager {
         // The rest are just for seamless playback
         // Although timeline is not updated prior to the current index, these sources are still
         // loaded into the cache for faster retrieval at a potentially later time.
-        final int leftBound = Math.max(0, currentIndex - MediaSourceManager.WINDOW_SIZE);
-        final int rightLimit = currentIndex + MediaSourceManager.WINDOW_SIZE + 1;
+        final int leftBound = Math.max(0, currentIndex - windowSize);
+        final int rightLimit = currentIndex + windowSize + 1;
         final int rightBound = Math.min(playQueue.size(), rightLimit);
         final Set<PlayQueueItem> neighbors = new ArraySet<>(
                 playQueue.getStreams().subList(leftBound, rightBound));
@@ -3,11 +3,14 @@ package org.schabi.newpipe.player.playback;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.google.android.exoplayer2.MediaItem;
 import com.google.android.exoplayer2.source.MediaSource;
 
 import org.schabi.newpipe.extractor.stream.StreamInfo;
 import org.schabi.newpipe.player.playqueue.PlayQueueItem;
 
+import io.reactivex.rxjava3.disposables.Disposable;
+
 public interface PlaybackListener {
     /**
      * Called to check if the currently playing stream is approaching the end of its playback.
@@ -69,6 +72,23 @@ public interface PlaybackListener {
     @Nullable
     MediaSource sourceOf(PlayQueueItem item, StreamInfo info);
 
+    /**
+     * Requests the listener to download in advance the beginning of the media of the next item,
+     * resolved by {@link #sourceOf(PlayQueueItem, StreamInfo)}, so that its playback starts
+     * faster.
+     * <p>
+     * May be called at any time, the returned {@link Disposable} is disposed when the item is
+     * no longer the next one.
+     * </p>
+     *
+     * @param mediaItem the media item of the next item
+     * @return the disposable of the download
+     */
+    @NonNull
+    default Disposable prefetch(@NonNull final MediaItem mediaItem) {
+        return Disposable.disposed();
+    }
+
     /**
      * Called when the play queue can no longer be played or used.
      * Currently, this means the play queue is empty and complete.
@@ -5,25 +5,44 @@ import static org.schabi.newpipe.player.seekbarpreview.SeekbarPreviewThumbnailHe
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.collection.LruCache;
 import androidx.collection.SparseArrayCompat;
 
 import com.google.common.base.Stopwatch;
 
+import org.schabi.newpipe.DownloaderImpl;
 import org.schabi.newpipe.extractor.stream.Frameset;
-import org.schabi.newpipe.util.image.PicassoHelper;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
-import java.util.UUID;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.function.Supplier;
 
+import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Provides the frames of the seekbar preview, which are cut out of the pages of the storyboard
+ * (the {@link Frameset}) of the stream.
+ * <p>
+ * The pages are only downloaded when the user seeks near them: the page of the position and
+ * its neighbours are loaded in parallel. They are kept in a cache bounded by
+ * {@link #MAX_CACHE_SIZE_BYTES}, and the bitmaps of the evicted pages are reused to decode the
+ * next ones.
+ * </p>
+ */
 public class SeekbarPreviewThumbnailHolder {
 
     // This has to be <= 23 chars on devices running Android 7 or lower (API <= 25)
@@ -31,62 +50,101 @@ public class SeekbarPreviewThumbnailHolder {
     // https://stackoverflow.com/a/54744028
     public static final String TAG = "SeekbarPrevThumbHolder";
 
-    // Key = Position of the picture in milliseconds
-    // Supplier = Supplies the bitmap for that position
-    private final SparseArrayCompat<Supplier<Bitmap>> seekbarPreviewData =
-            new SparseArrayCompat<>();
+    /**
+     * The maximum amount of memory used by the pages in the cache, in bytes.
+     */
+    private static final int MAX_CACHE_SIZE_BYTES =
+            (int) Math.min(Runtime.getRuntime().maxMemory() / 16, 32 * 1024 * 1024);
+
+    /**
+     * The number of pages before and after the one of the current position which are loaded.
+     */
+    private static final int PREFETCH_PAGES = 1;
+
+    /**
+     * The number of evicted pages kept to decode the next ones into.
+     */
+    private static final int MAX_REUSABLE_BITMAPS = 2;
+
+    // Guards every field below: the frames are cut out on the main thread while the pages are
+    // decoded on other threads, reusing the bitmaps of the evicted ones
+    private final Object lock = new Object();
+
+    // Key = Index of the page in the frameset
+    // Value = The page, containing several frames
+    private final LruCache<Integer, Bitmap> pages = new LruCache<>(MAX_CACHE_SIZE_BYTES) {
+        @Override
+        protected int sizeOf(@NonNull final Integer key, @NonNull final Bitmap value) {
+            return value.getAllocationByteCount();
+        }
 
-    // This ensures that if the reset is still undergoing
-    // and another reset starts, only the last reset is processed
-    private UUID currentUpdateRequestIdentifier = UUID.randomUUID();
+        @Override
+        protected void entryRemoved(final boolean evicted, @NonNull final Integer key,
+                                    @NonNull final Bitmap oldValue,
+                                    @Nullable final Bitmap newValue) {
+            if (reusableBitmaps.size() < MAX_REUSABLE_BITMAPS) {
+                reusableBitmaps.add(oldValue);
+            } else {
+                oldValue.recycle();
+            }
+        }
+    };
 
-    public void resetFrom(@NonNull final Context context, final List<Frameset> framesets) {
-        final int seekbarPreviewType = getSeekbarPreviewThumbnailType(context);
+    private final List<Bitmap> reusableBitmaps = new ArrayList<>();
 
-        final UUID updateRequestIdentifier = UUID.randomUUID();
-        this.currentUpdateRequestIdentifier = updateRequestIdentifier;
+    // Key = Index of the page in the frameset
+    // Value = Its loader, disposed if the page failed to load, so that it is not retried while
+    // the user seeks near it
+    private final SparseArrayCompat<Disposable> pageLoaders = new SparseArrayCompat<>();
 
-        final ExecutorService executorService = Executors.newSingleThreadExecutor();
-        executorService.submit(() -> {
-            try {
-                resetFromAsync(seekbarPreviewType, framesets, updateRequestIdentifier);
-            } catch (final Exception ex) {
-                Log.e(TAG, "Failed to execute async", ex);
-            }
-        });
-        // ensure that the executorService stops/destroys it's threads
-        // after the task is finished
-        executorService.shutdown();
-    }
+    @Nullable
+    private Frameset frameset;
+    @Nullable
+    private Runnable onPageLoadedListener;
 
-    private void resetFromAsync(final int seekbarPreviewType, final List<Frameset> framesets,
-                                final UUID updateRequestIdentifier) {
-        Log.d(TAG, "Clearing seekbarPreviewData");
-        synchronized (seekbarPreviewData) {
-            seekbarPreviewData.clear();
-        }
+    private int hitCount;
+    private int missCount;
 
-        if (seekbarPreviewType == SeekbarPreviewThumbnailType.NONE) {
-            Log.d(TAG, "Not processing seekbarPreviewData due to settings");
-            return;
-        }
+    public void resetFrom(@NonNull final Context context, final List<Frameset> framesets) {
+        final int seekbarPreviewType = getSeekbarPreviewThumbnailType(context);
 
-        final Frameset frameset = getFrameSetForType(framesets, seekbarPreviewType);
-        if (frameset == null) {
-            Log.d(TAG, "No frameset was found to fill seekbarPreviewData");
-            return;
-        }
+        synchronized (lock) {
+            Log.d(TAG, "Clearing the pages of the seekbar preview");
+            for (int i = 0; i < pageLoaders.size(); i++) {
+                pageLoaders.valueAt(i).dispose();
+            }
+            pageLoaders.clear();
+            pages.evictAll();
+            hitCount = 0;
+            missCount = 0;
+
+            if (seekbarPreviewType == SeekbarPreviewThumbnailType.NONE) {
+                Log.d(TAG, "Not loading the seekbar preview due to settings");
+                frameset = null;
+                return;
+            }
 
-        Log.d(TAG, "Frameset quality info: "
-                + "[width=" + frameset.getFrameWidth()
-                + ", heigh=" + frameset.getFrameHeight() + "]");
+            frameset = getFrameSetForType(framesets, seekbarPreviewType);
+            if (frameset == null) {
+                Log.d(TAG, "No frameset was found for the seekbar preview");
+                return;
+            }
 
-        // Abort method execution if we are not the latest request
-        if (!isRequestIdentifierCurrent(updateRequestIdentifier)) {
-            return;
+            Log.d(TAG, "Frameset quality info: "
+                    + "[width=" + frameset.getFrameWidth()
+                    + ", heigh=" + frameset.getFrameHeight() + "]");
+
+            // the user will most likely seek near the start first
+            loadPagesAround(0);
         }
+    }
 
-        generateDataFrom(frameset, updateRequestIdentifier);
+    /**
+     * @param listener called on the main thread every time a page is loaded, e.g. to show the
+     *                 frame of the position the user is seeking to if its page was not loaded yet
+     */
+    public void setOnPageLoadedListener(@Nullable final Runnable listener) {
+        onPageLoadedListener = listener;
     }
 
     private Frameset getFrameSetForType(final List<Frameset> framesets,
@@ -104,73 +162,165 @@ public class SeekbarPreviewThumbnailHolder {
         }
     }
 
-    private void generateDataFrom(final Frameset frameset, final UUID updateRequestIdentifier) {
-        Log.d(TAG, "Starting generation of seekbarPreviewData");
-        final Stopwatch sw = Log.isLoggable(TAG, Log.DEBUG) ? Stopwatch.createStarted() : null;
+    /**
+     * Starts loading the pages around the given one which are not loaded or loading yet, and
+     * cancels the loading of the pages which are farther. Must be called with the lock held.
+     *
+     * @param pageIndex the index of the page of the position the user is seeking to
+     */
+    private void loadPagesAround(final int pageIndex) {
+        if (frameset == null) {
+            return;
+        }
 
-        int currentPosMs = 0;
-        int pos = 1;
+        for (int i = pageLoaders.size() - 1; i >= 0; i--) {
+            if (Math.abs(pageLoaders.keyAt(i) - pageIndex) > PREFETCH_PAGES) {
+                pageLoaders.valueAt(i).dispose();
+                pageLoaders.removeAt(i);
+            }
+        }
 
-        final int urlFrameCount = frameset.getFramesPerPageX() * frameset.getFramesPerPageY();
+        final List<String> urls = frameset.getUrls();
+        for (int i = Math.max(0, pageIndex - PREFETCH_PAGES);
+             i <= Math.min(urls.size() - 1, pageIndex + PREFETCH_PAGES); i++) {
+            if (!pageLoaders.containsKey(i) && pages.get(i) == null) {
+                pageLoaders.put(i, loadPage(frameset, i, urls.get(i)));
+            }
+        }
+    }
 
-        // Process each url in the frameset
-        for (final String url : frameset.getUrls()) {
-            // get the bitmap
-            final Bitmap srcBitMap = getBitMapFrom(url);
+    private Disposable loadPage(@NonNull final Frameset target, final int pageIndex,
+                                @Nullable final String url) {
+        return Single.fromCallable(() -> getBitMapFrom(url))
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(bitmap -> {
+                    synchronized (lock) {
+                        if (frameset != target) {
+                            return;
+                        }
+                        pageLoaders.remove(pageIndex);
+                        pages.put(pageIndex, bitmap);
+                    }
+
+                    if (onPageLoadedListener != null) {
+                        onPageLoadedListener.run();
+                    }
+                }, error -> {
+                    Log.w(TAG, "Failed to get bitmap for seekbarPreview from url='" + url
+                            + "'", error);
+                    synchronized (lock) {
+                        if (frameset == target) {
+                            pageLoaders.put(pageIndex, Disposable.disposed());
+                        }
+                    }
+                });
+    }
 
-            // The data is not added directly to "seekbarPreviewData" due to
-            // concurrency and checks for "updateRequestIdentifier"
-            final var generatedDataForUrl = new SparseArrayCompat<Supplier<Bitmap>>(urlFrameCount);
+    /**
+     * Downloads and decodes a page, into the bitmap of an evicted page if possible. Must not be
+     * called on the main thread.
+     *
+     * @param url the URL of the page
+     * @return the decoded page
+     * @throws IOException if the page could not be downloaded or decoded
+     */
+    @NonNull
+    private Bitmap getBitMapFrom(@Nullable final String url) throws IOException {
+        if (url == null) {
+            throw new IOException("url is null; This should never happen");
+        }
 
-            // The bitmap consists of several images, which we process here
-            // foreach frame in the returned bitmap
-            for (int i = 0; i < urlFrameCount; i++) {
-                // Frames outside the video length are skipped
-                if (pos > frameset.getTotalCount()) {
-                    break;
-                }
+        final Stopwatch sw = Log.isLoggable(TAG, Log.DEBUG) ? Stopwatch.createStarted() : null;
+        Log.d(TAG, "Downloading bitmap for seekbarPreview from '" + url + "'");
+
+        final byte[] data;
+        final Request request = new Request.Builder().url(url).build();
+        try (Response response = DownloaderImpl.getInstance().getClient()
+                .newCall(request).execute()) {
+            final ResponseBody body = response.body();
+            if (!response.isSuccessful() || body == null) {
+                throw new IOException("Unexpected response code " + response.code());
+            }
+            data = body.bytes();
+        }
 
-                // Get the bounds where the frame is found
-                final int[] bounds = frameset.getFrameBoundsAt(currentPosMs);
-                generatedDataForUrl.put(currentPosMs,
-                                        createBitmapSupplier(srcBitMap, bounds, frameset));
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
 
-                currentPosMs += frameset.getDurationPerFrame();
-                pos++;
-            }
+        // The pages have no transparency, and their frames are scaled up anyway
+        options.inJustDecodeBounds = false;
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        options.inMutable = true;
+        options.inBitmap = takeReusableBitmap(options.outWidth * options.outHeight * 2);
 
-            // Check if we are still the latest request
-            // If not abort method execution
-            if (isRequestIdentifierCurrent(updateRequestIdentifier)) {
-                synchronized (seekbarPreviewData) {
-                    seekbarPreviewData.putAll(generatedDataForUrl);
-                }
-            } else {
-                Log.d(TAG, "Aborted of generation of seekbarPreviewData");
-                break;
-            }
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        } catch (final IllegalArgumentException e) {
+            // the reused bitmap is not suitable, decode into a new one
+            options.inBitmap = null;
+            bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
         }
 
+        if (bitmap == null) {
+            throw new IOException("Could not decode the bitmap from '" + url + "'");
+        }
         if (sw != null) {
-            Log.d(TAG, "Generation of seekbarPreviewData took " + sw.stop());
+            Log.d(TAG, "Download of bitmap for seekbarPreview from '" + url + "' took "
+                    + sw.stop());
         }
+        return bitmap;
     }
 
-    private Supplier<Bitmap> createBitmapSupplier(final Bitmap srcBitMap,
-                                                  final int[] bounds,
-                                                  final Frameset frameset) {
-        return () -> {
-            // It can happen, that the original bitmap could not be downloaded
-            // (or it was recycled though that should not happen)
-            // In such a case - we don't want a NullPointer/
-            // "cannot use a recycled source in createBitmap" Exception -> simply return null
-            if (srcBitMap == null || srcBitMap.isRecycled()) {
-                return null;
+    @Nullable
+    private Bitmap takeReusableBitmap(final int byteCount) {
+        synchronized (lock) {
+            for (int i = 0; i < reusableBitmaps.size(); i++) {
+                final Bitmap bitmap = reusableBitmaps.get(i);
+                if (bitmap.getAllocationByteCount() >= byteCount) {
+                    return reusableBitmaps.remove(i);
+                }
             }
+            return null;
+        }
+    }
 
-            // Cut out the corresponding bitmap form the "srcBitMap"
-            final Bitmap cutOutBitmap = Bitmap.createBitmap(srcBitMap, bounds[1], bounds[2],
-                    frameset.getFrameWidth(), frameset.getFrameHeight());
+    /**
+     * Gets the frame at the given position, and starts loading its page and its neighbours if
+     * needed.
+     *
+     * @param positionInMs the position the user is seeking to
+     * @return a new bitmap of the frame, or an empty optional if its page is not loaded yet
+     */
+    public Optional<Bitmap> getBitmapAt(final int positionInMs) {
+        synchronized (lock) {
+            if (frameset == null) {
+                return Optional.empty();
+            }
+
+            // Get the bounds where the frame is found
+            final int[] bounds = frameset.getFrameBoundsAt(positionInMs);
+            loadPagesAround(bounds[0]);
+
+            final Bitmap page = pages.get(bounds[0]);
+            if (page == null) {
+                missCount++;
+                return Optional.empty();
+            }
+            hitCount++;
+
+            final int width = frameset.getFrameWidth();
+            final int height = frameset.getFrameHeight();
+            if (bounds[1] + width > page.getWidth() || bounds[2] + height > page.getHeight()) {
+                Log.w(TAG, "Frame at " + positionInMs + " ms is outside of its page");
+                return Optional.empty();
+            }
+
+            // Cut out the corresponding bitmap form the page, while no other thread can reuse it
+            final Bitmap cutOutBitmap =
+                    Bitmap.createBitmap(page, bounds[1], bounds[2], width, height);
 
             // If the cut out bitmap is identical to its source,
             // we need to copy the bitmap to create a new instance.
@@ -178,57 +328,64 @@ public class SeekbarPreviewThumbnailHolder {
             // this leads to recycled bitmaps being returned (if they are identical)
             // Reference: https://stackoverflow.com/a/23683075 + first comment
             // Fixes: https://github.com/TeamNewPipe/NewPipe/issues/11461
-            return cutOutBitmap == srcBitMap
-                    ? cutOutBitmap.copy(cutOutBitmap.getConfig(), true) : cutOutBitmap;
-        };
+            return Optional.of(cutOutBitmap == page
+                    ? cutOutBitmap.copy(cutOutBitmap.getConfig(), true) : cutOutBitmap);
+        }
     }
 
-    @Nullable
-    private Bitmap getBitMapFrom(final String url) {
-        if (url == null) {
-            Log.w(TAG, "url is null; This should never happen");
-            return null;
-        }
+    /*//////////////////////////////////////////////////////////////////////////
+    // Memory metrics
+    //////////////////////////////////////////////////////////////////////////*/
 
-        final Stopwatch sw = Log.isLoggable(TAG, Log.DEBUG) ? Stopwatch.createStarted() : null;
-        try {
-            Log.d(TAG, "Downloading bitmap for seekbarPreview from '" + url + "'");
+    /**
+     * @return the memory used by the pages in the cache, in bytes
+     */
+    public int getCacheSizeBytes() {
+        return pages.size();
+    }
 
-            // Gets the bitmap within the timeout of 15 seconds imposed by default by OkHttpClient
-            // Ensure that your are not running on the main-Thread this will otherwise hang
-            final Bitmap bitmap = PicassoHelper.loadSeekbarThumbnailPreview(url).get();
+    /**
+     * @return the maximum memory used by the pages in the cache, in bytes
+     */
+    public int getMaxCacheSizeBytes() {
+        return pages.maxSize();
+    }
 
-            if (sw != null) {
-                Log.d(TAG, "Download of bitmap for seekbarPreview from '" + url + "' took "
-                        + sw.stop());
+    /**
+     * @return the memory used by the bitmaps of the evicted pages, kept to decode the next ones
+     */
+    public long getReusableSizeBytes() {
+        synchronized (lock) {
+            long size = 0;
+            for (final Bitmap bitmap : reusableBitmaps) {
+                size += bitmap.getAllocationByteCount();
             }
-
-            return bitmap;
-        } catch (final Exception ex) {
-            Log.w(TAG, "Failed to get bitmap for seekbarPreview from url='" + url
-                    + "' in time", ex);
-            return null;
+            return size;
         }
     }
 
-    private boolean isRequestIdentifierCurrent(final UUID requestIdentifier) {
-        return this.currentUpdateRequestIdentifier.equals(requestIdentifier);
+    /**
+     * @return the number of frames requested whose page was loaded
+     */
+    public int getHitCount() {
+        synchronized (lock) {
+            return hitCount;
+        }
     }
 
-    public Optional<Bitmap> getBitmapAt(final int positionInMs) {
-        // Get the frame supplier closest to the requested position
-        Supplier<Bitmap> closestFrame = () -> null;
-        synchronized (seekbarPreviewData) {
-            int min = Integer.MAX_VALUE;
-            for (int i = 0; i < seekbarPreviewData.size(); i++) {
-                final int pos = Math.abs(seekbarPreviewData.keyAt(i) - positionInMs);
-                if (pos < min) {
-                    closestFrame = seekbarPreviewData.valueAt(i);
-                    min = pos;
-                }
-            }
+    /**
+     * @return the number of frames requested whose page was not loaded yet
+     */
+    public int getMissCount() {
+        synchronized (lock) {
+            return missCount;
         }
+    }
 
-        return Optional.ofNullable(closestFrame.get());
+    /**
+     * @return the number of pages evicted from the cache
+     */
+    public int getEvictionCount() {
+        return pages.evictionCount();
     }
 }
@@ -205,6 +205,7 @@ public abstract class VideoPlayerUi extends PlayerUi implements SeekBar.OnSeekBa
         binding.playbackSpeed.setOnClickListener(makeOnClickListener(this::onPlaybackSpeedClicked));
 
         binding.playbackSeekBar.setOnSeekBarChangeListener(this);
+        seekbarPreviewThumbnailHolder.setOnPageLoadedListener(this::onSeekbarPreviewPageLoaded);
         binding.captionTextView.setOnClickListener(makeOnClickListener(this::onCaptionClicked));
         binding.resizeTextView.setOnClickListener(makeOnClickListener(this::onResizeClicked));
         binding.playbackLiveSync.setOnClickListener(makeOnClickListener(player::seekToDefault));
@@ -281,6 +282,7 @@ public abstract class VideoPlayerUi extends PlayerUi implements SeekBar.OnSeekBa
         binding.audioTrackTextView.setOnClickListener(null);
         binding.playbackSpeed.setOnClickListener(null);
         binding.playbackSeekBar.setOnSeekBarChangeListener(null);
+        seekbarPreviewThumbnailHolder.setOnPageLoadedListener(null);
         binding.captionTextView.setOnClickListener(null);
         binding.resizeTextView.setOnClickListener(null);
         binding.playbackLiveSync.setOnClickListener(null);
@@ -578,7 +580,10 @@ public abstract class VideoPlayerUi extends PlayerUi implements SeekBar.OnSeekBa
 
         binding.currentDisplaySeek.setText(getTimeString(progress));
 
-        // Seekbar Preview Thumbnail
+        updateSeekbarPreviewThumbnail(progress);
+    }
+
+    private void updateSeekbarPreviewThumbnail(final int progress) {
         SeekbarPreviewThumbnailHelper
                 .tryResizeAndSetSeekbarPreviewThumbnail(
                         player.getContext(),
@@ -589,6 +594,13 @@ public abstract class VideoPlayerUi extends PlayerUi implements SeekBar.OnSeekBa
         adjustSeekbarPreviewContainer();
     }
 
+    private void onSeekbarPreviewPageLoaded() {
+        // the page of the position the user is seeking to might have been missing until now
+        if (player.getCurrentState() == STATE_PAUSED_SEEK) {
+            updateSeekbarPreviewThumbnail(binding.playbackSeekBar.getProgress());
+        }
+    }
+
 
     private void adjustSeekbarPreviewContainer() {
         try {
@@ -645,6 +657,13 @@ public abstract class VideoPlayerUi extends PlayerUi implements SeekBar.OnSeekBa
     public void onStopTrackingTouch(final SeekBar seekBar) {
         if (DEBUG) {
             Log.d(TAG, "onStopTrackingTouch() called with: seekBar = [" + seekBar + "]");
+            Log.d(TAG, "Seekbar preview memory: "
+                    + "cached = [" + seekbarPreviewThumbnailHolder.getCacheSizeBytes()
+                    + "/" + seekbarPreviewThumbnailHolder.getMaxCacheSizeBytes() + " B], "
+                    + "reusable = [" + seekbarPreviewThumbnailHolder.getReusableSizeBytes()
+                    + " B], hits = [" + seekbarPreviewThumbnailHolder.getHitCount()
+                    + "], misses = [" + seekbarPreviewThumbnailHolder.getMissCount()
+                    + "], evictions = [" + seekbarPreviewThumbnailHolder.getEvictionCount() + "]");
         }
 
         player.seekTo(seekBar.getProgress());
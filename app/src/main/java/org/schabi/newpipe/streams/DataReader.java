@@ -15,10 +15,11 @@ public class DataReader {
     public static final int INTEGER_SIZE = 4;
     public static final int FLOAT_SIZE = 4;
 
-    private static final int BUFFER_SIZE = 128 * 1024; // 128 KiB
+    public static final int BUFFER_SIZE = 128 * 1024; // 128 KiB
 
     private long position = 0;
     private final SharpStream stream;
+    private int readAhead = BUFFER_SIZE;
 
     private InputStream view;
     private int viewSize;
@@ -132,6 +133,17 @@ public class DataReader {
         return total;
     }
 
+    /**
+     * Limits the amount of bytes read from the source every time the buffer is empty. Use a small
+     * limit while most of the stream is being skipped, so that the data skipped is not read in
+     * the buffer anyway.
+     *
+     * @param bytes the amount of bytes, at most {@link #BUFFER_SIZE}
+     */
+    public void setReadAhead(final int bytes) {
+        readAhead = Math.max(1, Math.min(bytes, readBuffer.length));
+    }
+
     public boolean available() {
         return readCount > 0 || stream.available() > 0;
     }
@@ -229,9 +241,10 @@ public class DataReader {
     }
 
     private final short[] primitive = new short[LONG_SIZE];
+    private final byte[] primitiveBuffer = new byte[LONG_SIZE];
 
     private void primitiveRead(final int amount) throws IOException {
-        final byte[] buffer = new byte[amount];
+        final byte[] buffer = primitiveBuffer;
         final int read = read(buffer, 0, amount);
 
         if (read != amount) {
@@ -253,8 +266,9 @@ public class DataReader {
         if (readCount < 0) {
             return true;
         }
-        if (readOffset >= readBuffer.length) {
-            readCount = stream.read(readBuffer);
+        // the source may return less than the requested amount before its end
+        if (readCount == 0) {
+            readCount = stream.read(readBuffer, 0, readAhead);
             if (readCount < 1) {
                 readCount = -1;
                 return true;
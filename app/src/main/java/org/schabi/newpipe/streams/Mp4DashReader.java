@@ -49,6 +49,9 @@ public class Mp4DashReader {
     private static final int HANDLER_SOUN = 0x736F756E;
     private static final int HANDLER_SUBT = 0x73756274;
 
+    // enough for the moof box of most chunks, the mdat box is skipped when reading only the info
+    private static final int INFO_ONLY_READ_AHEAD = 8 * 1024; // 8 KiB
+
     private final DataReader stream;
 
     private Mp4Track[] tracks = null;
@@ -175,6 +178,7 @@ public class Mp4DashReader {
 
     public Mp4DashChunk getNextChunk(final boolean infoOnly) throws IOException {
         final Mp4Track track = tracks[selectedTrack];
+        stream.setReadAhead(infoOnly ? INFO_ONLY_READ_AHEAD : DataReader.BUFFER_SIZE);
 
         while (stream.available()) {
 
@@ -182,6 +182,7 @@ public class Mp4FromDashWriter {
             int sampleSizeChanges = 0;
             int compositionOffsetLast = -1;
 
+            // only the moof boxes are read here, the samples are read once while writing the mdat
             Mp4DashChunk chunk;
             while ((chunk = readers[i].getNextChunk(true)) != null) {
 
@@ -28,6 +28,17 @@ public class OggFromWebMWriter implements Closeable {
 
     private static final int TIME_SCALE_NS = 1000000000;
 
+    /**
+     * Lookup tables of the CRC used by Ogg, {@code CRC32_TABLES[n]} gives the CRC of a byte
+     * followed by {@code n} zero bytes, so that the checksum can be calculated four bytes at a
+     * time (slicing-by-4).
+     */
+    private static final int[][] CRC32_TABLES = new int[4][256];
+
+    static {
+        populateCrc32Tables();
+    }
+
     private boolean done = false;
     private boolean parsed = false;
 
@@ -43,6 +54,8 @@ public class OggFromWebMWriter implements Closeable {
     private Segment webmSegment = null;
     private Cluster webmCluster = null;
     private SimpleBlock webmBlock = null;
+    // the reader fills this block every time instead of creating a new one
+    private final SimpleBlock webmBlockHolder = new SimpleBlock();
 
     private long webmBlockLastTimecode = 0;
     private long webmBlockNearDuration = 0;
@@ -51,8 +64,6 @@ public class OggFromWebMWriter implements Closeable {
     private final byte[] segmentTable = new byte[255];
     private long segmentTableNextTimestamp = TIME_SCALE_NS;
 
-    private final int[] crc32Table = new int[256];
-
     public OggFromWebMWriter(@NonNull final SharpStream source, @NonNull final SharpStream target) {
         if (!source.canRead() || !source.canRewind()) {
             throw new IllegalArgumentException("source stream must be readable and allows seeking");
@@ -65,8 +76,6 @@ public class OggFromWebMWriter implements Closeable {
         this.output = target;
 
         this.streamId = (int) System.currentTimeMillis();
-
-        populateCrc32Table();
     }
 
     public boolean isDone() {
@@ -195,8 +204,7 @@ public class OggFromWebMWriter implements Closeable {
 
             if (bloq != null && addPacketSegment(bloq)) {
                 final int pos = page.position();
-                //noinspection ResultOfMethodCallIgnored
-                bloq.data.read(page.array(), pos, bloq.dataSize);
+                bloq.readData(page.array(), pos);
                 page.position(pos + bloq.dataSize);
                 continue;
             }
@@ -320,7 +328,7 @@ public class OggFromWebMWriter implements Closeable {
             }
         }
 
-        res = webmCluster.getNextSimpleBlock();
+        res = webmCluster.getNextSimpleBlock(webmBlockHolder);
         if (res == null) {
             webmCluster = null;
             return getNextBlock();
@@ -392,7 +400,8 @@ public class OggFromWebMWriter implements Closeable {
         return true;
     }
 
-    private void populateCrc32Table() {
+    private static void populateCrc32Tables() {
+        final int[] crc32Table = CRC32_TABLES[0];
         for (int i = 0; i < 0x100; i++) {
             int crc = i << 24;
             for (int j = 0; j < 8; j++) {
@@ -402,13 +411,32 @@ public class OggFromWebMWriter implements Closeable {
             }
             crc32Table[i] = crc;
         }
+
+        for (int n = 1; n < CRC32_TABLES.length; n++) {
+            for (int i = 0; i < 0x100; i++) {
+                final int crc = CRC32_TABLES[n - 1][i];
+                CRC32_TABLES[n][i] = (crc << 8) ^ crc32Table[crc >>> 24];
+            }
+        }
     }
 
-    private int calcCrc32(final int initialCrc, final byte[] buffer, final int size) {
+    private static int calcCrc32(final int initialCrc, final byte[] buffer, final int size) {
+        final int[] table0 = CRC32_TABLES[0];
+        final int[] table1 = CRC32_TABLES[1];
+        final int[] table2 = CRC32_TABLES[2];
+        final int[] table3 = CRC32_TABLES[3];
+
         int crc = initialCrc;
-        for (int i = 0; i < size; i++) {
+        int i = 0;
+        for (; i + 4 <= size; i += 4) {
+            crc ^= (buffer[i] & 0xff) << 24 | (buffer[i + 1] & 0xff) << 16
+                    | (buffer[i + 2] & 0xff) << 8 | (buffer[i + 3] & 0xff);
+            crc = table3[crc >>> 24] ^ table2[(crc >>> 16) & 0xff]
+                    ^ table1[(crc >>> 8) & 0xff] ^ table0[crc & 0xff];
+        }
+        for (; i < size; i++) {
             final int reg = (crc >>> 24) & 0xff;
-            crc = (crc << 8) ^ crc32Table[reg ^ (buffer[i] & 0xff)];
+            crc = (crc << 8) ^ table0[reg ^ (buffer[i] & 0xff)];
         }
 
         return crc;
@@ -1,5 +1,8 @@
 package org.schabi.newpipe.streams;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
 import org.schabi.newpipe.streams.io.SharpStream;
 
 import java.io.EOFException;
@@ -44,6 +47,10 @@ public class WebMReader {
     private static final int ID_BLOCK = 0x21;
     private static final int ID_GROUP_BLOCK = 0x20;
 
+    // passed to untilElement() for every block, avoids allocating the varargs array each time
+    private static final int[] IDS_CLUSTER_BLOCK = {ID_SIMPLE_BLOCK, ID_GROUP_BLOCK};
+    private static final int[] IDS_GROUP_BLOCK = {ID_BLOCK};
+
 
     public enum TrackKind {
         Audio/*2*/, Video/*1*/, Other
@@ -168,7 +175,10 @@ public class WebMReader {
     }
 
     private Element readElement() throws IOException {
-        final Element elem = new Element();
+        return readElement(new Element());
+    }
+
+    private Element readElement(@NonNull final Element elem) throws IOException {
         elem.offset = stream.position();
         elem.type = (int) readEncodedNumber();
         elem.contentSize = readEncodedNumber();
@@ -188,9 +198,21 @@ public class WebMReader {
     }
 
     private Element untilElement(final Element ref, final int... expected) throws IOException {
+        return untilElement(ref, null, expected);
+    }
+
+    /**
+     * @param ref      the parent element, or {@code null} to read until the end of the stream
+     * @param reuse    element filled instead of creating a new one for every element read, or
+     *                 {@code null}
+     * @param expected the types of the element to return, or nothing to return the next element
+     * @return the element found, or {@code null} if the end of {@code ref} was reached
+     */
+    private Element untilElement(final Element ref, @Nullable final Element reuse,
+                                 final int... expected) throws IOException {
         Element elem;
         while (ref == null ? stream.available() : (stream.position() < (ref.offset + ref.size))) {
-            elem = readElement();
+            elem = reuse == null ? readElement() : readElement(reuse);
             if (expected.length < 1) {
                 return elem;
             }
@@ -367,8 +389,11 @@ public class WebMReader {
         return entries;
     }
 
-    private SimpleBlock readSimpleBlock(final Element ref) throws IOException {
-        final SimpleBlock obj = new SimpleBlock(ref);
+    private SimpleBlock readSimpleBlock(final Element ref, final SimpleBlock obj)
+            throws IOException {
+        obj.ref = ref;
+        obj.data = null;
+        obj.absoluteTimeCodeNs = 0;
         obj.trackNumber = readEncodedNumber();
         obj.relativeTimeCode = stream.readShort();
         obj.flags = (byte) stream.read();
@@ -457,20 +482,35 @@ public class WebMReader {
         public InputStream data;
         public boolean createdFromBlock;
 
-        SimpleBlock(final Element ref) {
-            this.ref = ref;
-        }
-
         public long trackNumber;
         public short relativeTimeCode;
         public long absoluteTimeCodeNs;
         public byte flags;
         public int dataSize;
-        private final Element ref;
+        private Element ref;
 
         public boolean isKeyframe() {
             return (flags & 0x80) == 0x80;
         }
+
+        /**
+         * Reads the whole data of this block, must be called before reading the next block.
+         *
+         * @param buffer the buffer to fill, must have {@link #dataSize} bytes available
+         * @param offset where to start writing in the buffer
+         * @throws IOException if the source ends before the end of the block
+         */
+        public void readData(@NonNull final byte[] buffer, final int offset) throws IOException {
+            int total = 0;
+            while (total < dataSize) {
+                final int read = data.read(buffer, offset + total, dataSize - total);
+                if (read < 1) {
+                    throw new EOFException("Truncated SimpleBlock, missing "
+                            + (dataSize - total) + " bytes");
+                }
+                total += read;
+            }
+        }
     }
 
     public class Cluster {
@@ -479,6 +519,10 @@ public class WebMReader {
         Element currentBlockGroup = null;
         public long timecode;
 
+        // the elements of the blocks are only needed until the next block is read
+        private final Element blockElement = new Element();
+        private final Element groupedBlockElement = new Element();
+
         Cluster(final Element ref) {
             this.ref = ref;
         }
@@ -488,6 +532,21 @@ public class WebMReader {
         }
 
         public SimpleBlock getNextSimpleBlock() throws IOException {
+            return getNextSimpleBlock(new SimpleBlock());
+        }
+
+        /**
+         * Same as {@link #getNextSimpleBlock()}, but fills the given block instead of creating a
+         * new one, so that a whole file can be read without allocating an object per block. The
+         * block is overwritten by the next call, so its data must be read before.
+         *
+         * @param block the block to fill
+         * @return {@code block}, or {@code null} if there are no more blocks in the cluster
+         * @throws IOException if an I/O error occurs
+         */
+        @Nullable
+        public SimpleBlock getNextSimpleBlock(@NonNull final SimpleBlock block)
+                throws IOException {
             if (insideClusterBounds()) {
                 return null;
             }
@@ -501,14 +560,14 @@ public class WebMReader {
             }
 
             while (!insideClusterBounds()) {
-                Element elem = untilElement(ref, ID_SIMPLE_BLOCK, ID_GROUP_BLOCK);
+                Element elem = untilElement(ref, blockElement, IDS_CLUSTER_BLOCK);
                 if (elem == null) {
                     return null;
                 }
 
                 if (elem.type == ID_GROUP_BLOCK) {
                     currentBlockGroup = elem;
-                    elem = untilElement(currentBlockGroup, ID_BLOCK);
+                    elem = untilElement(currentBlockGroup, groupedBlockElement, IDS_GROUP_BLOCK);
 
                     if (elem == null) {
                         ensure(currentBlockGroup);
@@ -517,7 +576,7 @@ public class WebMReader {
                     }
                 }
 
-                currentSimpleBlock = readSimpleBlock(elem);
+                currentSimpleBlock = readSimpleBlock(elem, block);
                 if (currentSimpleBlock.trackNumber == tracks[selectedTrack].trackNumber) {
                     currentSimpleBlock.data = stream.getView(currentSimpleBlock.dataSize);
 
@@ -26,6 +26,7 @@ import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 
 import us.shandian.giga.io.FileStream;
 import us.shandian.giga.io.FileStreamSAF;
@@ -216,6 +217,25 @@ public class StoredFileHelper implements Serializable {
         return sourceTree == null ? null : Uri.parse(sourceTree);
     }
 
+    /**
+     * Replaces this file with the given one, by moving it. Only supported when using the
+     * {@code java.io} API, see {@link #isDirect()}.
+     *
+     * @param file the file with the new content, should be in the same directory to be renamed
+     *             instead of copied
+     * @throws IOException if the file could not be moved
+     */
+    public void replaceWith(@NonNull final File file) throws IOException {
+        assertValid();
+
+        if (docFile != null) {
+            throw new UnsupportedOperationException(
+                    "Not supported by the Storage Access Framework");
+        }
+
+        Files.move(file.toPath(), ioPath, StandardCopyOption.REPLACE_EXISTING);
+    }
+
     public void truncate() throws IOException {
         assertValid();
 
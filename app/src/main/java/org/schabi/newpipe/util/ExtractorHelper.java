@@ -63,6 +63,7 @@ import io.reactivex.rxjava3.disposables.CompositeDisposable;
 public final class ExtractorHelper {
     private static final String TAG = ExtractorHelper.class.getSimpleName();
     private static final InfoCache CACHE = InfoCache.getInstance();
+    private static final InFlightInfoRequests IN_FLIGHT = InFlightInfoRequests.getInstance();
 
     private ExtractorHelper() {
         //no instance
@@ -212,6 +213,10 @@ public final class ExtractorHelper {
      * Check if we can load it from the cache (forceLoad parameter), if we can't,
      * load from the network (Single loadFromNetwork)
      * and put the results in the cache.
+     * <p>
+     * Network loads are coalesced through {@link InFlightInfoRequests}, so concurrent calls for
+     * the same item share a single extraction, even if some of them force loading.
+     * </p>
      *
      * @param <I>             the item type's class that extends {@link Info}
      * @param forceLoad       whether to force loading from the network instead of from the cache
@@ -227,8 +232,9 @@ public final class ExtractorHelper {
                                                          @NonNull final InfoCache.Type cacheType,
                                                          @NonNull final Single<I> loadFromNetwork) {
         checkServiceId(serviceId);
-        final Single<I> actualLoadFromNetwork = loadFromNetwork
-                .doOnSuccess(info -> CACHE.putInfo(serviceId, url, info, cacheType));
+        final Single<I> actualLoadFromNetwork = IN_FLIGHT.coalesce(serviceId, url, cacheType,
+                loadFromNetwork.doOnSuccess(info ->
+                        CACHE.putInfo(serviceId, url, info, cacheType)));
 
         final Single<I> load;
         if (forceLoad) {
@@ -258,8 +264,8 @@ public final class ExtractorHelper {
             @NonNull final String url,
             @NonNull final InfoCache.Type cacheType) {
         checkServiceId(serviceId);
-        return Maybe.defer(() -> {
-            //noinspection unchecked
+        //noinspection unchecked
+        return Maybe.concat(Maybe.defer(() -> {
             final I info = (I) CACHE.getFromKey(serviceId, url, cacheType);
             if (MainActivity.DEBUG) {
                 Log.d(TAG, "loadFromCache() called, info > " + info);
@@ -271,13 +277,15 @@ public final class ExtractorHelper {
             }
 
             return Maybe.empty();
-        });
+        }), CACHE.getFromDisk(serviceId, url, cacheType).map(info -> (I) info))
+                .firstElement();
     }
 
     public static boolean isCached(final int serviceId,
                                    @NonNull final String url,
                                    @NonNull final InfoCache.Type cacheType) {
-        return null != loadFromCache(serviceId, url, cacheType).blockingGet();
+        checkServiceId(serviceId);
+        return CACHE.isCached(serviceId, url, cacheType);
     }
 
 
@@ -0,0 +1,114 @@
+package org.schabi.newpipe.util;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import org.schabi.newpipe.MainActivity;
+import org.schabi.newpipe.extractor.Info;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.rxjava3.core.Single;
+
+/**
+ * Registry of the {@link Info} network requests which are currently running, used by the
+ * {@link ExtractorHelper} to make concurrent requests for the same item share a single
+ * extraction (e.g. the video detail fragment, the player and the play queue all asking for the
+ * same stream).
+ * <p>
+ * Requests are identified by service id, URL and {@link InfoCache.Type}, just like items in the
+ * {@link InfoCache}. A request is removed from the registry as soon as it terminates, so later
+ * requests either hit the cache or start a new extraction.
+ * </p>
+ */
+public final class InFlightInfoRequests {
+    private static final String TAG = InFlightInfoRequests.class.getSimpleName();
+    private static final boolean DEBUG = MainActivity.DEBUG;
+
+    private static final InFlightInfoRequests INSTANCE = new InFlightInfoRequests();
+
+    private final ConcurrentHashMap<String, Single<? extends Info>> inFlight =
+            new ConcurrentHashMap<>();
+    private final AtomicLong startedCount = new AtomicLong(0);
+    private final AtomicLong coalescedCount = new AtomicLong(0);
+
+    private InFlightInfoRequests() {
+        // no instance
+    }
+
+    public static InFlightInfoRequests getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Wraps a network request so that, while it is running, every other subscription to a
+     * request for the same item joins it instead of starting a new one. The returned
+     * {@link Single} is lazy: nothing is registered until it is subscribed to.
+     *
+     * @param <I>       the item type's class that extends {@link Info}
+     * @param serviceId the service to load from
+     * @param url       the URL to load
+     * @param cacheType the {@link InfoCache.Type} of the item
+     * @param request   the {@link Single} loading the item from the network
+     * @return a {@link Single} which shares the result of any identical running request
+     */
+    @NonNull
+    <I extends Info> Single<I> coalesce(final int serviceId,
+                                        @NonNull final String url,
+                                        @NonNull final InfoCache.Type cacheType,
+                                        @NonNull final Single<I> request) {
+        return Single.defer(() -> {
+            final String key = InfoCache.keyOf(serviceId, url, cacheType);
+            final SharedRequest<I> shared = new SharedRequest<>();
+            shared.single = request
+                    .doFinally(() -> inFlight.remove(key, shared.single))
+                    .cache();
+
+            //noinspection unchecked
+            final Single<I> running = (Single<I>) inFlight.putIfAbsent(key, shared.single);
+            if (running != null) {
+                coalescedCount.incrementAndGet();
+                if (DEBUG) {
+                    Log.d(TAG, "coalesce() joining running request: key = [" + key + "]");
+                }
+                return running;
+            }
+
+            startedCount.incrementAndGet();
+            return shared.single;
+        });
+    }
+
+    /**
+     * @return the number of network requests that were actually started
+     */
+    public long getStartedCount() {
+        return startedCount.get();
+    }
+
+    /**
+     * @return the number of requests that joined an identical running request, i.e. the number
+     *         of duplicate network requests that were saved
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * @return the number of requests which are currently running
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * Holder which allows the shared {@link Single} to remove itself from the registry.
+     *
+     * @param <I> the item type's class that extends {@link Info}
+     */
+    private static final class SharedRequest<I extends Info> {
+        private Single<I> single;
+    }
+}
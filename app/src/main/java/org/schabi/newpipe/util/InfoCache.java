@@ -19,6 +19,7 @@
 
 package org.schabi.newpipe.util;
 
+import android.content.Context;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -29,19 +30,57 @@ import org.schabi.newpipe.MainActivity;
 import org.schabi.newpipe.extractor.Info;
 
 import java.util.Map;
+import java.util.concurrent.Executors;
 
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+/**
+ * Two-tier cache for {@link Info} objects loaded by the {@link ExtractorHelper}.
+ * <p>
+ * The first tier is kept in memory, the second one on disk (see {@link InfoDiskCache}) and is
+ * only available after {@link #initDiskCache(Context)} has been called. Items that are found
+ * only on disk are promoted to memory when they are read.
+ * </p>
+ * <p>
+ * The memory tier is accessed synchronously, with its keys spread over {@link #STRIPE_COUNT}
+ * independently locked stripes, so that lookups of different items don't have to wait for each
+ * other. All the operations on the disk tier run one after the other on a dedicated thread and
+ * never while holding the lock of a stripe, so that the memory tier can be used from the main
+ * thread.
+ * </p>
+ */
 public final class InfoCache {
     private final String TAG = getClass().getSimpleName();
     private static final boolean DEBUG = MainActivity.DEBUG;
 
     private static final InfoCache INSTANCE = new InfoCache();
+    private static final int STRIPE_COUNT = 4;
     private static final int MAX_ITEMS_ON_CACHE = 60;
     /**
      * Trim the cache to this size.
      */
     private static final int TRIM_CACHE_TO = 30;
 
-    private static final LruCache<String, CacheData> LRU_CACHE = new LruCache<>(MAX_ITEMS_ON_CACHE);
+    @SuppressWarnings("unchecked")
+    private static final LruCache<String, CacheData>[] STRIPES = new LruCache[STRIPE_COUNT];
+
+    static {
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            STRIPES[i] = new LruCache<>(MAX_ITEMS_ON_CACHE / STRIPE_COUNT);
+        }
+    }
+
+    /**
+     * Runs the operations on the disk tier in the order they were submitted, so that e.g. an
+     * item is never read while it's being written.
+     */
+    private static final Scheduler DISK_SCHEDULER =
+            Schedulers.from(Executors.newSingleThreadExecutor());
+
+    @Nullable
+    private static volatile InfoDiskCache diskCache = null;
 
     private InfoCache() {
         // no instance
@@ -51,49 +90,100 @@ public final class InfoCache {
      * Identifies the type of {@link Info} to put into the cache.
      */
     public enum Type {
-        STREAM,
-        CHANNEL,
-        CHANNEL_TAB,
-        COMMENTS,
-        PLAYLIST,
-        KIOSK,
+        STREAM(true, 1),
+        CHANNEL(true, 4),
+        CHANNEL_TAB(true, 1),
+        COMMENTS(false, 1),
+        PLAYLIST(true, 4),
+        KIOSK(false, 1);
+
+        /**
+         * Whether items of this type are also stored in the disk tier.
+         */
+        private final boolean persistent;
+        /**
+         * How many times the service's {@link ServiceHelper#getCacheExpirationMillis(int)} items
+         * of this type are considered valid. Streams contain expiring URLs and the contents of
+         * channel tabs change often, while channel and playlist metadata can be kept longer.
+         */
+        private final int expirationFactor;
+
+        Type(final boolean persistent, final int expirationFactor) {
+            this.persistent = persistent;
+            this.expirationFactor = expirationFactor;
+        }
+
+        public boolean isPersistent() {
+            return persistent;
+        }
+
+        public long getExpirationMillis(final int serviceId) {
+            return ServiceHelper.getCacheExpirationMillis(serviceId) * expirationFactor;
+        }
     }
 
     public static InfoCache getInstance() {
         return INSTANCE;
     }
 
+    /**
+     * Enables the disk tier of the cache, usually you want to call this in the Application class.
+     *
+     * @param context used to get the cache dir
+     */
+    public static void initDiskCache(@NonNull final Context context) {
+        final InfoDiskCache disk = new InfoDiskCache(context.getCacheDir());
+        diskCache = disk;
+        // build the index of the disk tier before it is first needed
+        DISK_SCHEDULER.scheduleDirect(disk::removeExpired);
+    }
+
     @NonNull
-    private static String keyOf(final int serviceId,
-                                @NonNull final String url,
-                                @NonNull final Type cacheType) {
+    static String keyOf(final int serviceId,
+                        @NonNull final String url,
+                        @NonNull final Type cacheType) {
         return serviceId + ":" + cacheType.ordinal() + ":" + url;
     }
 
-    private static void removeStaleCache() {
-        for (final Map.Entry<String, CacheData> entry : InfoCache.LRU_CACHE.snapshot().entrySet()) {
+    @NonNull
+    private static LruCache<String, CacheData> stripeOf(@NonNull final String key) {
+        return STRIPES[(key.hashCode() & Integer.MAX_VALUE) % STRIPE_COUNT];
+    }
+
+    private static void removeStaleCache(@NonNull final LruCache<String, CacheData> stripe) {
+        for (final Map.Entry<String, CacheData> entry : stripe.snapshot().entrySet()) {
             final CacheData data = entry.getValue();
             if (data != null && data.isExpired()) {
-                InfoCache.LRU_CACHE.remove(entry.getKey());
+                stripe.remove(entry.getKey());
             }
         }
     }
 
     @Nullable
-    private static Info getInfo(@NonNull final String key) {
-        final CacheData data = InfoCache.LRU_CACHE.get(key);
+    private static Info getInfo(@NonNull final LruCache<String, CacheData> stripe,
+                                @NonNull final String key) {
+        final CacheData data = stripe.get(key);
         if (data == null) {
             return null;
         }
 
         if (data.isExpired()) {
-            InfoCache.LRU_CACHE.remove(key);
+            stripe.remove(key);
             return null;
         }
 
         return data.info;
     }
 
+    /**
+     * Gets an item from the memory tier, see {@link #getFromDisk(int, String, Type)} for the
+     * disk tier.
+     *
+     * @param serviceId the service id of the item
+     * @param url       the URL of the item
+     * @param cacheType the {@link Type} of the item
+     * @return the item, or {@code null} if it is not in the memory tier or expired
+     */
     @Nullable
     public Info getFromKey(final int serviceId,
                            @NonNull final String url,
@@ -102,11 +192,67 @@ public final class InfoCache {
             Log.d(TAG, "getFromKey() called with: "
                     + "serviceId = [" + serviceId + "], url = [" + url + "]");
         }
-        synchronized (LRU_CACHE) {
-            return getInfo(keyOf(serviceId, url, cacheType));
+        final String key = keyOf(serviceId, url, cacheType);
+        final LruCache<String, CacheData> stripe = stripeOf(key);
+        synchronized (stripe) {
+            return getInfo(stripe, key);
         }
     }
 
+    /**
+     * Reads an item from the disk tier on the disk thread, and promotes it to the memory tier.
+     *
+     * @param serviceId the service id of the item
+     * @param url       the URL of the item
+     * @param cacheType the {@link Type} of the item
+     * @return a {@link Maybe} emitting the item, or completing if it is not on disk or expired
+     */
+    @NonNull
+    public Maybe<Info> getFromDisk(final int serviceId,
+                                   @NonNull final String url,
+                                   @NonNull final Type cacheType) {
+        final InfoDiskCache disk = diskCache;
+        if (disk == null || !cacheType.isPersistent()) {
+            return Maybe.empty();
+        }
+
+        return Maybe.fromCallable(() -> {
+            final Info info = disk.get(serviceId, url, cacheType);
+            if (info == null) {
+                return null;
+            }
+            if (DEBUG) {
+                Log.d(TAG, "getFromDisk() promoting item from disk: url = [" + url + "]");
+            }
+
+            final long remainingMillis = disk.getRemainingMillis(serviceId, url, cacheType);
+            final String key = keyOf(serviceId, url, cacheType);
+            final LruCache<String, CacheData> stripe = stripeOf(key);
+            synchronized (stripe) {
+                // don't replace a newer item put in the meantime
+                if (getInfo(stripe, key) == null) {
+                    stripe.put(key, new CacheData(info, remainingMillis));
+                }
+            }
+            return info;
+        }).subscribeOn(DISK_SCHEDULER);
+    }
+
+    /**
+     * Checks whether an item is in the memory tier. The disk tier is not checked, since this is
+     * called from the main thread.
+     *
+     * @param serviceId the service id of the item
+     * @param url       the URL of the item
+     * @param cacheType the {@link Type} of the item
+     * @return whether a non-expired item is in the memory tier
+     */
+    public boolean isCached(final int serviceId,
+                            @NonNull final String url,
+                            @NonNull final Type cacheType) {
+        return getFromKey(serviceId, url, cacheType) != null;
+    }
+
     public void putInfo(final int serviceId,
                         @NonNull final String url,
                         @NonNull final Info info,
@@ -115,10 +261,17 @@ public final class InfoCache {
             Log.d(TAG, "putInfo() called with: info = [" + info + "]");
         }
 
-        final long expirationMillis = ServiceHelper.getCacheExpirationMillis(info.getServiceId());
-        synchronized (LRU_CACHE) {
+        final long expirationMillis = cacheType.getExpirationMillis(info.getServiceId());
+        final String key = keyOf(serviceId, url, cacheType);
+        final LruCache<String, CacheData> stripe = stripeOf(key);
+        synchronized (stripe) {
             final CacheData data = new CacheData(info, expirationMillis);
-            LRU_CACHE.put(keyOf(serviceId, url, cacheType), data);
+            stripe.put(key, data);
+        }
+
+        final InfoDiskCache disk = diskCache;
+        if (disk != null && cacheType.isPersistent()) {
+            DISK_SCHEDULER.scheduleDirect(() -> disk.put(serviceId, url, info, cacheType));
         }
     }
 
@@ -129,8 +282,15 @@ public final class InfoCache {
             Log.d(TAG, "removeInfo() called with: "
                     + "serviceId = [" + serviceId + "], url = [" + url + "]");
         }
-        synchronized (LRU_CACHE) {
-            LRU_CACHE.remove(keyOf(serviceId, url, cacheType));
+        final String key = keyOf(serviceId, url, cacheType);
+        final LruCache<String, CacheData> stripe = stripeOf(key);
+        synchronized (stripe) {
+            stripe.remove(key);
+        }
+
+        final InfoDiskCache disk = diskCache;
+        if (disk != null && cacheType.isPersistent()) {
+            DISK_SCHEDULER.scheduleDirect(() -> disk.remove(serviceId, url, cacheType));
         }
     }
 
@@ -138,8 +298,15 @@ public final class InfoCache {
         if (DEBUG) {
             Log.d(TAG, "clearCache() called");
         }
-        synchronized (LRU_CACHE) {
-            LRU_CACHE.evictAll();
+        for (final LruCache<String, CacheData> stripe : STRIPES) {
+            synchronized (stripe) {
+                stripe.evictAll();
+            }
+        }
+
+        final InfoDiskCache disk = diskCache;
+        if (disk != null) {
+            DISK_SCHEDULER.scheduleDirect(disk::clear);
         }
     }
 
@@ -147,16 +314,30 @@ public final class InfoCache {
         if (DEBUG) {
             Log.d(TAG, "trimCache() called");
         }
-        synchronized (LRU_CACHE) {
-            removeStaleCache();
-            LRU_CACHE.trimToSize(TRIM_CACHE_TO);
+        for (final LruCache<String, CacheData> stripe : STRIPES) {
+            synchronized (stripe) {
+                removeStaleCache(stripe);
+                stripe.trimToSize(TRIM_CACHE_TO / STRIPE_COUNT);
+            }
+        }
+
+        final InfoDiskCache disk = diskCache;
+        if (disk != null) {
+            DISK_SCHEDULER.scheduleDirect(disk::removeExpired);
         }
     }
 
+    /**
+     * @return the number of items in the memory tier
+     */
     public long getSize() {
-        synchronized (LRU_CACHE) {
-            return LRU_CACHE.size();
+        long size = 0;
+        for (final LruCache<String, CacheData> stripe : STRIPES) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
         }
+        return size;
     }
 
     private static final class CacheData {
@@ -0,0 +1,392 @@
+package org.schabi.newpipe.util;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.schabi.newpipe.MainActivity;
+import org.schabi.newpipe.extractor.Info;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Persistent second tier of the {@link InfoCache}, which keeps serialized {@link Info} objects
+ * in the app's cache directory, so that they survive process death.
+ * <p>
+ * Every entry is stored in its own file, whose name is derived from the service id, the name of
+ * the {@link InfoCache.Type} (not its ordinal, which changes when the types are reordered) and a
+ * hash of the URL. This allows rebuilding the index of the cache
+ * (sizes and expiration timestamps) from a directory listing alone, without reading any file.
+ * Entries are evicted in least-recently-used order as soon as the total size of all files
+ * exceeds {@link #MAX_SIZE_BYTES}, so big items (e.g. streams) weight more than small ones.
+ * </p>
+ * <p>
+ * This class does not synchronize reads and writes of the same entry: this is left to the
+ * {@link InfoCache}, which calls it from a single thread. Only the bookkeeping of the index is
+ * guarded by a lock internal to this class.
+ * </p>
+ */
+final class InfoDiskCache {
+    private static final String TAG = InfoDiskCache.class.getSimpleName();
+    private static final boolean DEBUG = MainActivity.DEBUG;
+
+    private static final String CACHE_DIR_NAME = "info_cache";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+    private static final char NAME_SEPARATOR = '_';
+    private static final long MAX_SIZE_BYTES = 16 * 1024 * 1024;
+
+    @NonNull
+    private final File cacheDir;
+    /**
+     * File name to {@link DiskEntry}, in access order (the eldest entry is the first one).
+     * {@code null} until the index is lazily built by {@link #ensureIndex()}.
+     */
+    @Nullable
+    private LinkedHashMap<String, DiskEntry> index = null;
+    private long totalBytes = 0;
+
+    InfoDiskCache(@NonNull final File parentDir) {
+        this.cacheDir = new File(parentDir, CACHE_DIR_NAME);
+    }
+
+    /*//////////////////////////////////////////////////////////////////////////
+    // Entries
+    //////////////////////////////////////////////////////////////////////////*/
+
+    /**
+     * Reads the entry from disk. Must not be called concurrently for the same key.
+     *
+     * @param serviceId the service id of the info
+     * @param url       the URL of the info
+     * @param cacheType the {@link InfoCache.Type} of the info
+     * @return the cached info, or {@code null} if it's not cached or expired
+     */
+    @Nullable
+    Info get(final int serviceId,
+             @NonNull final String url,
+             @NonNull final InfoCache.Type cacheType) {
+        final String name = fileNameOf(serviceId, url, cacheType);
+        synchronized (this) {
+            final DiskEntry entry = ensureIndex().get(name); // also marks the entry as used
+            if (entry == null) {
+                return null;
+            } else if (entry.isExpired()) {
+                removeEntry(name);
+                return null;
+            }
+        }
+
+        final File file = new File(cacheDir, name);
+        try (ObjectInputStream input = new ObjectInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (!url.equals(input.readUTF())) {
+                // hash collision: the entry belongs to another URL, which is now overwritten
+                return null;
+            }
+            return (Info) input.readObject();
+        } catch (final Exception e) {
+            // the file may be corrupted, written by an older version or deleted by the system
+            if (DEBUG) {
+                Log.w(TAG, "Could not read cached info from " + name, e);
+            }
+            synchronized (this) {
+                removeEntry(name);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Checks whether an entry exists and is not expired, without reading it from disk.
+     *
+     * @param serviceId the service id of the info
+     * @param url       the URL of the info
+     * @param cacheType the {@link InfoCache.Type} of the info
+     * @return whether a non-expired entry exists
+     */
+    synchronized boolean contains(final int serviceId,
+                                  @NonNull final String url,
+                                  @NonNull final InfoCache.Type cacheType) {
+        final DiskEntry entry = ensureIndex().get(fileNameOf(serviceId, url, cacheType));
+        return entry != null && !entry.isExpired();
+    }
+
+    /**
+     * @param serviceId the service id of the info
+     * @param url       the URL of the info
+     * @param cacheType the {@link InfoCache.Type} of the info
+     * @return how long the entry is still valid, or {@code 0} if it does not exist
+     */
+    synchronized long getRemainingMillis(final int serviceId,
+                                         @NonNull final String url,
+                                         @NonNull final InfoCache.Type cacheType) {
+        final DiskEntry entry = ensureIndex().get(fileNameOf(serviceId, url, cacheType));
+        return entry == null ? 0 : Math.max(0, entry.expireTimestamp - System.currentTimeMillis());
+    }
+
+    /**
+     * Writes the entry to disk, replacing any previous one for the same key, and then evicts the
+     * least recently used entries until the cache fits into {@link #MAX_SIZE_BYTES}. Must not be
+     * called concurrently for the same key.
+     *
+     * @param serviceId the service id of the info
+     * @param url       the URL of the info
+     * @param info      the info to store
+     * @param cacheType the {@link InfoCache.Type} of the info
+     */
+    void put(final int serviceId,
+             @NonNull final String url,
+             @NonNull final Info info,
+             @NonNull final InfoCache.Type cacheType) {
+        final String name = fileNameOf(serviceId, url, cacheType);
+        final File file = new File(cacheDir, name);
+        final File tempFile = new File(cacheDir, name + TEMP_FILE_SUFFIX);
+
+        synchronized (this) {
+            // build the index before creating any temporary file, since it removes leftover ones
+            ensureIndex();
+        }
+        if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+            Log.e(TAG, "Failed to create cache directory " + cacheDir.getAbsolutePath());
+            return;
+        }
+
+        try (ObjectOutputStream output = new ObjectOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            output.writeUTF(url);
+            output.writeObject(info);
+        } catch (final Exception e) {
+            Log.e(TAG, "Could not write info to disk cache: " + url, e);
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            return;
+        }
+
+        synchronized (this) {
+            final LinkedHashMap<String, DiskEntry> entries = ensureIndex();
+            if (!tempFile.renameTo(file)) {
+                Log.e(TAG, "Could not move cached info into place: " + name);
+                //noinspection ResultOfMethodCallIgnored
+                tempFile.delete();
+                removeEntry(name);
+                return;
+            }
+
+            final DiskEntry old = entries.remove(name);
+            if (old != null) {
+                totalBytes -= old.size;
+            }
+            final DiskEntry entry = new DiskEntry(file.length(),
+                    System.currentTimeMillis() + cacheType.getExpirationMillis(serviceId));
+            entries.put(name, entry);
+            totalBytes += entry.size;
+            trimToSize(MAX_SIZE_BYTES);
+        }
+    }
+
+    /**
+     * Deletes the entry from disk. Must not be called concurrently for the same key.
+     *
+     * @param serviceId the service id of the info
+     * @param url       the URL of the info
+     * @param cacheType the {@link InfoCache.Type} of the info
+     */
+    synchronized void remove(final int serviceId,
+                             @NonNull final String url,
+                             @NonNull final InfoCache.Type cacheType) {
+        ensureIndex();
+        removeEntry(fileNameOf(serviceId, url, cacheType));
+    }
+
+    /*//////////////////////////////////////////////////////////////////////////
+    // Whole cache
+    //////////////////////////////////////////////////////////////////////////*/
+
+    synchronized void clear() {
+        final File[] files = cacheDir.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        if (index != null) {
+            index.clear();
+        }
+        totalBytes = 0;
+    }
+
+    synchronized void removeExpired() {
+        final Iterator<Map.Entry<String, DiskEntry>> iterator =
+                ensureIndex().entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<String, DiskEntry> entry = iterator.next();
+            if (entry.getValue().isExpired()) {
+                iterator.remove();
+                deleteFile(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /*//////////////////////////////////////////////////////////////////////////
+    // Index
+    //////////////////////////////////////////////////////////////////////////*/
+
+    /**
+     * Builds the index from the files in the cache directory if it was not built yet. Files
+     * are considered to be used in the order they were last modified, and their expiration is
+     * computed from their name and modification date. Must be called while holding the lock.
+     *
+     * @return the index
+     */
+    @NonNull
+    private LinkedHashMap<String, DiskEntry> ensureIndex() {
+        if (index != null) {
+            return index;
+        }
+
+        index = new LinkedHashMap<>(16, 0.75f, true);
+        totalBytes = 0;
+        final File[] files = cacheDir.listFiles();
+        if (files == null) {
+            return index;
+        }
+
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (final File file : files) {
+            final String name = file.getName();
+            final long expirationMillis = name.endsWith(TEMP_FILE_SUFFIX)
+                    ? -1 : parseExpirationMillis(name);
+            if (expirationMillis < 0) {
+                // leftover temporary file or file with an unknown name
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+                continue;
+            }
+
+            final DiskEntry entry =
+                    new DiskEntry(file.length(), file.lastModified() + expirationMillis);
+            if (entry.isExpired()) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            } else {
+                index.put(name, entry);
+                totalBytes += entry.size;
+            }
+        }
+
+        if (DEBUG) {
+            Log.d(TAG, "Built disk cache index: entries = [" + index.size() + "], "
+                    + "totalBytes = [" + totalBytes + "]");
+        }
+        trimToSize(MAX_SIZE_BYTES);
+        return index;
+    }
+
+    private void trimToSize(final long maxBytes) {
+        final Iterator<Map.Entry<String, DiskEntry>> iterator = index.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            final Map.Entry<String, DiskEntry> eldest = iterator.next();
+            iterator.remove();
+            deleteFile(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    private void removeEntry(@NonNull final String name) {
+        final DiskEntry entry = index.remove(name);
+        if (entry != null) {
+            deleteFile(name, entry);
+        }
+    }
+
+    private void deleteFile(@NonNull final String name, @NonNull final DiskEntry entry) {
+        totalBytes -= entry.size;
+        //noinspection ResultOfMethodCallIgnored
+        new File(cacheDir, name).delete();
+    }
+
+    /*//////////////////////////////////////////////////////////////////////////
+    // File names
+    //////////////////////////////////////////////////////////////////////////*/
+
+    @NonNull
+    private static String fileNameOf(final int serviceId,
+                                     @NonNull final String url,
+                                     @NonNull final InfoCache.Type cacheType) {
+        return serviceId + String.valueOf(NAME_SEPARATOR) + cacheType.name()
+                + NAME_SEPARATOR + hashOf(url);
+    }
+
+    /**
+     * @param name the name of a file in the cache directory
+     * @return the time to live of the entry stored in the file, or {@code -1} if the name is not
+     *         one generated by {@link #fileNameOf(int, String, InfoCache.Type)}
+     */
+    private static long parseExpirationMillis(@NonNull final String name) {
+        // the type name may contain the separator, but the service id and the hash can not
+        final int typeStart = name.indexOf(NAME_SEPARATOR);
+        final int typeEnd = name.lastIndexOf(NAME_SEPARATOR);
+        if (typeStart < 0 || typeEnd <= typeStart) {
+            return -1;
+        }
+
+        try {
+            final int serviceId = Integer.parseInt(name.substring(0, typeStart));
+            final InfoCache.Type type =
+                    InfoCache.Type.valueOf(name.substring(typeStart + 1, typeEnd));
+            if (!type.isPersistent()) {
+                return -1;
+            }
+            return type.getExpirationMillis(serviceId);
+        } catch (final IllegalArgumentException e) {
+            // also thrown for the names of older versions, which used the ordinal of the type
+            return -1;
+        }
+    }
+
+    @NonNull
+    private static String hashOf(@NonNull final String url) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1")
+                    .digest(url.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (final byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16))
+                        .append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            // SHA-1 is guaranteed to be available on every Java platform
+            return Integer.toHexString(url.hashCode());
+        }
+    }
+
+    private static final class DiskEntry {
+        private final long size;
+        private final long expireTimestamp;
+
+        private DiskEntry(final long size, final long expireTimestamp) {
+            this.size = size;
+            this.expireTimestamp = expireTimestamp;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() > expireTimestamp;
+        }
+    }
+}
@@ -125,10 +125,6 @@ public final class PicassoHelper {
         return loadImageDefault(url, R.drawable.placeholder_thumbnail_playlist);
     }
 
-    public static RequestCreator loadSeekbarThumbnailPreview(@Nullable final String url) {
-        return picassoInstance.load(url);
-    }
-
     public static RequestCreator loadNotificationIcon(@Nullable final String url) {
         return loadImageDefault(url, R.drawable.ic_newpipe_triangle_white);
     }
@@ -21,6 +21,7 @@ import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.UnknownHostException;
 import java.nio.channels.ClosedByInterruptException;
+import java.util.ArrayList;
 import java.util.Objects;
 
 import javax.net.ssl.SSLException;
@@ -116,6 +117,7 @@ public class DownloadMission extends Mission {
      * Download blocks, the size is multiple of {@link DownloadMission#BLOCK_SIZE}.
      * Every entry (block) in this array holds an offset, used to resume the download.
      * An block offset can be -1 if the block was downloaded successfully.
+     * Download threads acquire ranges of consecutive blocks, see {@link #acquireBlock(int)}.
      */
     int[] blocks;
 
@@ -134,6 +136,19 @@ public class DownloadMission extends Mission {
      */
     public MissionRecoveryInfo[] recoveryInfo;
 
+    /**
+     * Incremented every time the metadata file is written, the {@link MissionJournal} appended
+     * after it must have the same generation
+     */
+    long journalGeneration;
+
+    /**
+     * The hidden file written by {@link Postprocessing#runWhileDownloading(DownloadMission)}, saved
+     * with the mission so that it can be deleted even if the app was killed meanwhile, see
+     * {@link #deletePostprocessingOutput()}
+     */
+    File psOutputWhileDownloading;
+
     private transient int finishCount;
     public transient volatile boolean running;
     public boolean enqueued;
@@ -143,9 +158,12 @@ public class DownloadMission extends Mission {
 
     public transient Handler mHandler;
     private transient boolean[] blockAcquired;
+    private transient ArrayList<Block> acquiredBlocks;
 
     private transient long writingToFileNext;
     private transient volatile boolean writingToFile;
+    private transient MissionJournal journal;
+    private transient int[] journaledBlocks;
 
     final Object LOCK = new Lock();
 
@@ -153,6 +171,9 @@ public class DownloadMission extends Mission {
     public transient Thread[] threads = new Thread[0];
     public transient Thread init = null;
 
+    private transient Thread psWhileDownloading = null;
+    private transient volatile File psOutput = null;
+
     public DownloadMission(String[] urls, StoredFileHelper storage, char kind, Postprocessing psInstance) {
         if (Objects.requireNonNull(urls).length < 1)
             throw new IllegalArgumentException("urls array is empty");
@@ -170,41 +191,179 @@ public class DownloadMission extends Mission {
     }
 
     /**
-     * Acquire a block
+     * Acquire a range of consecutive blocks, downloaded with a single connection. If there are
+     * no free blocks left, the back half of the biggest range acquired by another thread is
+     * taken instead, so no thread sits idle while the last blocks are downloaded.
      *
+     * @param maxCount maximum amount of blocks in the range
      * @return the block or {@code null} if no more blocks left
      */
     @Nullable
-    Block acquireBlock() {
+    Block acquireBlock(int maxCount) {
         synchronized (LOCK) {
             for (int i = 0; i < blockAcquired.length; i++) {
                 if (!blockAcquired[i] && blocks[i] >= 0) {
                     Block block = new Block();
                     block.position = i;
                     block.done = blocks[i];
-
+                    block.count = 1;
                     blockAcquired[i] = true;
+
+                    // extend the range while the next blocks are free and not started yet
+                    while (block.count < maxCount) {
+                        int next = i + block.count;
+                        if (next >= blocks.length || blockAcquired[next] || blocks[next] != 0) {
+                            break;
+                        }
+                        blockAcquired[next] = true;
+                        block.count++;
+                    }
+
+                    acquiredBlocks.add(block);
                     return block;
                 }
             }
+
+            return stealBlock();
+        }
+    }
+
+    /**
+     * Splits the biggest range currently being downloaded, the blocks not started yet in the
+     * back half of the range are handed to the caller. The owner of the range notices it
+     * through {@link #getBlockEnd(Block)} and stops before reaching them.
+     *
+     * @return the stolen range or {@code null} if no range has blocks left to split
+     */
+    @Nullable
+    private Block stealBlock() {
+        Block victim = null;
+        for (Block block : acquiredBlocks) {
+            if (block.count > 1 && (victim == null || block.count > victim.count)) {
+                victim = block;
+            }
+        }
+
+        if (victim == null) return null;
+
+        // the first block of the range is being downloaded by its owner
+        int stolen = victim.count / 2;
+        victim.count -= stolen;
+
+        Block block = new Block();
+        block.position = victim.position + victim.count;
+        block.done = 0;
+        block.count = stolen;
+
+        if (DEBUG) {
+            Log.d(TAG, "stealBlock() splitting range at position=" + victim.position +
+                    ", taking " + stolen + " blocks from position=" + block.position);
+        }
+
+        acquiredBlocks.add(block);
+        return block;
+    }
+
+    /**
+     * Gets the last byte (inclusive) of the current resource which belongs to the range
+     *
+     * @param block the range
+     * @return the end offset, can decrease if other thread steals part of the range
+     */
+    long getBlockEnd(Block block) {
+        synchronized (LOCK) {
+            long end = (long) (block.position + block.count) * BLOCK_SIZE - 1;
+            return Math.min(end, length - 1);
         }
+    }
+
+    /**
+     * Marks downloaded bytes of a range, every block fully downloaded is removed from the
+     * start of the range
+     *
+     * @param block the range
+     * @param len   amount of bytes downloaded
+     * @return amount of bytes that still belongs to the range, the rest was taken
+     * meanwhile by another thread (which downloads it again)
+     */
+    int advanceBlock(Block block, int len) {
+        synchronized (LOCK) {
+            long start = (long) block.position * BLOCK_SIZE + block.done;
+            len = (int) Math.max(0, Math.min(len, getBlockEnd(block) - start + 1));
+
+            block.done += len;
+            while (block.done >= BLOCK_SIZE && block.count > 1) {
+                blocks[block.position] = -1;
+                if (journal != null) journal.addBlock(block.position, -1);
+                block.position++;
+                block.count--;
+                block.done -= BLOCK_SIZE;
+                LOCK.notifyAll();
+            }
 
-        return null;
+            return len;
+        }
     }
 
     /**
-     * Release an block
+     * Release a range, the blocks not started yet are made available again
      *
-     * @param position the index of the block
-     * @param done     amount of bytes downloaded
+     * @param block     the range
+     * @param completed {@code true} if the whole range was downloaded
      */
-    void releaseBlock(int position, int done) {
+    void releaseBlock(Block block, boolean completed) {
         synchronized (LOCK) {
-            blockAcquired[position] = false;
-            blocks[position] = done;
+            acquiredBlocks.remove(block);
+
+            for (int i = 0; i < block.count; i++) {
+                blockAcquired[block.position + i] = false;
+            }
+
+            if (completed) {
+                for (int i = 0; i < block.count; i++) {
+                    blocks[block.position + i] = -1;
+                    if (journal != null) journal.addBlock(block.position + i, -1);
+                }
+                LOCK.notifyAll();
+            } else {
+                blocks[block.position] = block.done;
+                if (journal != null) journal.addBlock(block.position, block.done);
+            }
         }
     }
 
+    /**
+     * Blocks until the last resource is downloaded up to the given offset, every block before
+     * it must be fully downloaded. Used to post-process while downloading.
+     *
+     * @param end absolute offset in the file (exclusive)
+     * @throws InterruptedIOException if the mission was stopped meanwhile
+     */
+    public void waitForDownloaded(long end) throws InterruptedIOException {
+        synchronized (LOCK) {
+            while (getDownloadedEnd() < end) {
+                if (!running) throw new InterruptedIOException("the download was stopped");
+
+                try {
+                    // the running state changes without notifying
+                    LOCK.wait(1000);
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+        }
+    }
+
+    private long getDownloadedEnd() {
+        long start = offsets[offsets.length - 1];
+        if (blocks == null) return start;
+
+        int i = 0;
+        while (i < blocks.length && blocks[i] == -1) i++;
+
+        return start + Math.min((long) i * BLOCK_SIZE, length);
+    }
+
     /**
      * Opens a connection
      *
@@ -289,7 +448,7 @@ public class DownloadMission extends Mission {
         if (!writingToFile && (done > writingToFileNext || deltaLen < 0)) {
             writingToFile = true;
             writingToFileNext = done + BLOCK_SIZE;
-            writeThisToFileAsync();
+            writeProgressAsync();
         }
     }
 
@@ -460,6 +619,7 @@ public class DownloadMission extends Mission {
         init = null;
         finishCount = 0;
         blockAcquired = new boolean[blocks.length];
+        acquiredBlocks = new ArrayList<>(threadCount);
 
         if (blocks.length < 1) {
             threads = new Thread[]{runAsync(1, new DownloadRunnableFallback(this))};
@@ -477,6 +637,46 @@ public class DownloadMission extends Mission {
             for (int i = 0; i < threads.length; i++) {
                 threads[i] = runAsync(i + 1, new DownloadRunnable(this, i));
             }
+
+            if (current == urls.length - 1) startPostprocessingWhileDownloading();
+        }
+    }
+
+    /**
+     * Starts processing the sources while the last one is downloaded, if the algorithm allows
+     * it. If it fails, or the download is paused meanwhile, the post-processing runs after the
+     * download as usual.
+     */
+    private void startPostprocessingWhileDownloading() {
+        if (psAlgorithm == null || psState != 0 || psOutput != null) return;
+        if (psWhileDownloading != null && psWhileDownloading.isAlive()) return;
+        if (!psAlgorithm.canRunWhileDownloading(this)) return;
+
+        psOutputWhileDownloading = Postprocessing.getOutputWhileDownloading(this);
+        psWhileDownloading = runAsync(-3, () -> {
+            // saved before the file is created
+            writeThisToFile();
+
+            File output = psAlgorithm.runWhileDownloading(this);
+            if (output != null && deleted) {
+                //noinspection ResultOfMethodCallIgnored
+                output.delete();
+            } else {
+                psOutput = output;
+            }
+        });
+    }
+
+    /**
+     * Deletes the output of {@link Postprocessing#runWhileDownloading(DownloadMission)}, which
+     * is not used anymore because the mission was deleted or restored after the app was killed.
+     */
+    public void deletePostprocessingOutput() {
+        psOutput = null;
+        if (psOutputWhileDownloading != null) {
+            //noinspection ResultOfMethodCallIgnored
+            psOutputWhileDownloading.delete();
+            psOutputWhileDownloading = null;
         }
     }
 
@@ -524,7 +724,10 @@ public class DownloadMission extends Mission {
      */
     @Override
     public boolean delete() {
+        deleted = true;
         if (psAlgorithm != null) psAlgorithm.cleanupTemporalDir();
+        if (psWhileDownloading != null) psWhileDownloading.interrupt();
+        deletePostprocessingOutput();
 
         notify(DownloadManagerService.MESSAGE_DELETED);
 
@@ -550,6 +753,10 @@ public class DownloadMission extends Mission {
         fallbackResumeOffset = 0;
         blocks = null;
         blockAcquired = null;
+        acquiredBlocks = null;
+
+        // processed from the discarded data
+        deletePostprocessingOutput();
 
         if (rollback) current = 0;
         if (persistChanges) writeThisToFile();
@@ -563,6 +770,10 @@ public class DownloadMission extends Mission {
         runAsync(-2, this::writeThisToFile);
     }
 
+    private void writeProgressAsync() {
+        runAsync(-2, this::writeProgress);
+    }
+
     /**
      * Write this {@link DownloadMission} to the meta file asynchronously
      * if no thread is already running.
@@ -570,11 +781,58 @@ public class DownloadMission extends Mission {
     void writeThisToFile() {
         synchronized (LOCK) {
             if (metadata == null) return;
+
+            journalGeneration++;
             Utility.writeToFile(metadata, this);
             writingToFile = false;
+
+            // the journal is applied over the blocks just written
+            journaledBlocks = blocks;
+            if (journal == null) journal = new MissionJournal(metadata);
+            try {
+                journal.reset(journalGeneration);
+            } catch (IOException e) {
+                Log.e(TAG, "failed to reset the journal, writing the whole mission instead", e);
+                journal = null;
+            }
         }
     }
 
+    /**
+     * Appends the progress to the {@link MissionJournal}, without blocking the download threads
+     * while the journal is synced. The whole mission is written instead if the journal does not
+     * match the blocks written in the meta file, or if it is too long.
+     */
+    private void writeProgress() {
+        MissionJournal target;
+        long generation;
+        byte[] records;
+
+        synchronized (LOCK) {
+            if (metadata == null) return;
+
+            if (journal == null || journaledBlocks != blocks) {
+                writeThisToFile();
+                return;
+            }
+
+            target = journal;
+            generation = journalGeneration;
+            records = journal.takePending(this);
+        }
+
+        try {
+            if (target.flush(generation, records)) {
+                writingToFile = false;
+                return;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "failed to append to the journal", e);
+        }
+
+        writeThisToFile();
+    }
+
     /**
      * Indicates if the download if fully finished
      *
@@ -697,7 +955,22 @@ public class DownloadMission extends Mission {
         Exception exception = null;
 
         try {
-            psAlgorithm.run(this);
+            if (psWhileDownloading != null) {
+                try {
+                    psWhileDownloading.join();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                psWhileDownloading = null;
+            }
+
+            if (psOutput != null) {
+                psAlgorithm.finishRunWhileDownloading(this, psOutput);
+                psOutput = null;
+                psOutputWhileDownloading = null;
+            } else {
+                psAlgorithm.run(this);
+            }
         } catch (Exception err) {
             Log.e(TAG, "Post-processing failed. " + psAlgorithm.toString(), err);
 
@@ -746,7 +1019,10 @@ public class DownloadMission extends Mission {
     private boolean deleteThisFromFile() {
         synchronized (LOCK) {
             boolean res = metadata.delete();
+            if (journal == null) journal = new MissionJournal(metadata);
+            journal.delete();
             metadata = null;
+            journal = null;
             return res;
         }
     }
@@ -770,6 +1046,7 @@ public class DownloadMission extends Mission {
      */
     private Thread runAsync(int id, Thread who) {
         // known thread ids:
+        //   -3:     post-processing while downloading
         //   -2:     state saving by  notifyProgress()  method
         //   -1:     wait for saving the state by  pause()  method
         //    0:     initializer
@@ -842,9 +1119,22 @@ public class DownloadMission extends Mission {
         }
     }
 
+    /**
+     * Range of consecutive blocks downloaded by the same thread with a single request
+     */
     public static class Block {
+        /**
+         * index of the first block not fully downloaded yet
+         */
         public int position;
+        /**
+         * amount of bytes downloaded of the first block
+         */
         public int done;
+        /**
+         * amount of blocks in the range
+         */
+        public int count;
     }
 
     private static class Lock implements Serializable {
@@ -12,6 +12,7 @@ import java.util.Objects;
 
 import us.shandian.giga.get.DownloadMission.Block;
 import us.shandian.giga.get.DownloadMission.HttpError;
+import us.shandian.giga.service.DownloadScheduler;
 
 import static org.schabi.newpipe.BuildConfig.DEBUG;
 import static us.shandian.giga.get.DownloadMission.ERROR_HTTP_FORBIDDEN;
@@ -26,17 +27,35 @@ public class DownloadRunnable extends Thread {
 
     private final DownloadMission mMission;
     private final int mId;
+    private final DownloadScheduler mScheduler = DownloadScheduler.getInstance();
 
     private HttpURLConnection mConn;
 
+    /**
+     * Amount of blocks requested at once, adapted to the speed measured on this thread so
+     * every request lasts about {@link #REQUEST_DURATION} milliseconds. Fast connections
+     * download many blocks with a single request instead of opening a connection per block.
+     */
+    private int mBlocksPerRequest = 1;
+    private double mSpeed = 0;// bytes per millisecond
+
+    private static final int REQUEST_DURATION = 5000;
+    private static final int MAX_BLOCKS_PER_REQUEST = 32;
+
     DownloadRunnable(DownloadMission mission, int id) {
         mMission = Objects.requireNonNull(mission);
         mId = id;
     }
 
-    private void releaseBlock(Block block, long remain) {
-        // set the block offset to -1 if it is completed
-        mMission.releaseBlock(block.position, remain < 0 ? -1 : block.done);
+    private void updateBlocksPerRequest(long length, long elapsed) {
+        // too small to be meaningful
+        if (elapsed < 1 || length < DownloadMission.BUFFER_SIZE) return;
+
+        double speed = length / (double) elapsed;
+        mSpeed = mSpeed == 0 ? speed : (mSpeed + speed) / 2;
+
+        long count = Math.round(mSpeed * REQUEST_DURATION / DownloadMission.BLOCK_SIZE);
+        mBlocksPerRequest = (int) Math.max(1, Math.min(count, MAX_BLOCKS_PER_REQUEST));
     }
 
     @Override
@@ -55,11 +74,15 @@ public class DownloadRunnable extends Thread {
 
         while (mMission.running && mMission.errCode == DownloadMission.ERROR_NOTHING) {
             if (!retry) {
-                block = mMission.acquireBlock();
+                // wait for a connection of the budget shared with other missions
+                if (!mScheduler.acquireConnection(mMission)) break;
+
+                block = mMission.acquireBlock(mBlocksPerRequest);
             }
 
             if (block == null) {
                 if (DEBUG) Log.d(TAG, mId + ":no more blocks left, exiting");
+                mScheduler.releaseConnection(mMission);
                 break;
             }
 
@@ -67,17 +90,14 @@ public class DownloadRunnable extends Thread {
                 if (retry)
                     Log.d(TAG, mId + ":retry block at position=" + block.position + " from the start");
                 else
-                    Log.d(TAG, mId + ":acquired block at position=" + block.position + " done=" + block.done);
+                    Log.d(TAG, mId + ":acquired block at position=" + block.position + " done=" + block.done + " count=" + block.count);
             }
 
-            long start = (long)block.position * DownloadMission.BLOCK_SIZE;
-            long end = start + DownloadMission.BLOCK_SIZE - 1;
-
-            start += block.done;
+            long start = (long) block.position * DownloadMission.BLOCK_SIZE + block.done;
+            long end = mMission.getBlockEnd(block);
 
-            if (end >= mMission.length) {
-                end = mMission.length - 1;
-            }
+            long requestStart = start;
+            long requestTime = System.currentTimeMillis();
 
             try {
                 mConn = mMission.openConnection(false, start, end);
@@ -117,17 +137,29 @@ public class DownloadRunnable extends Thread {
                     // use always start <= end
                     // fixes a deadlock because in some videos, youtube is sending one byte alone
                     while (start <= end && mMission.running && (len = is.read(buf, 0, buf.length)) != -1) {
+                        // the end of the range can be moved by other thread, see acquireBlock()
+                        if (len > end - start + 1) len = (int) (end - start + 1);
+
                         f.write(buf, 0, len);
                         start += len;
-                        block.done += len;
-                        mMission.notifyProgress(len);
+                        mMission.notifyProgress(mMission.advanceBlock(block, len));
+                        mScheduler.throttle(mMission, len);
+
+                        end = mMission.getBlockEnd(block);
                     }
                 }
 
+                if (mMission.running) {
+                    updateBlocksPerRequest(start - requestStart, System.currentTimeMillis() - requestTime);
+                }
+
                 if (DEBUG && mMission.running) {
                     Log.d(TAG, mId + ":position " + block.position + " stopped " + start + "/" + end);
                 }
             } catch (Exception e) {
+                // release the block and the connection if leaving the loop
+                retry = false;
+
                 if (!mMission.running || e instanceof ClosedByInterruptException) break;
 
                 if (e instanceof HttpError && ((HttpError) e).statusCode == ERROR_HTTP_FORBIDDEN) {
@@ -148,10 +180,19 @@ public class DownloadRunnable extends Thread {
 
                 retry = true;
             } finally {
-                if (!retry) releaseBlock(block, end - start);
+                if (!retry) {
+                    mMission.releaseBlock(block, start > end);
+                    mScheduler.releaseConnection(mMission);
+                }
             }
         }
 
+        if (retry) {
+            // the mission was stopped or failed in another thread before the block was retried
+            mMission.releaseBlock(block, false);
+            mScheduler.releaseConnection(mMission);
+        }
+
         f.close();
 
         if (DEBUG) {
@@ -12,6 +12,7 @@ import java.net.HttpURLConnection;
 import java.nio.channels.ClosedByInterruptException;
 
 import us.shandian.giga.get.DownloadMission.HttpError;
+import us.shandian.giga.service.DownloadScheduler;
 import us.shandian.giga.util.Utility;
 
 import static org.schabi.newpipe.BuildConfig.DEBUG;
@@ -99,6 +100,7 @@ public class DownloadRunnableFallback extends Thread {
                 mF.write(buf, 0, len);
                 start += len;
                 mMission.notifyProgress(len);
+                DownloadScheduler.getInstance().throttle(mMission, len);
             }
 
             dispose();
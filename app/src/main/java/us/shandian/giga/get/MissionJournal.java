@@ -0,0 +1,221 @@
+package us.shandian.giga.get;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Append-only journal of the progress of a mission, stored next to its metadata file. Writing
+ * the whole mission every time a block is downloaded is expensive, so the changes are appended
+ * as fixed-size records and the metadata file is only rewritten (compacting the journal) when
+ * the state of the mission changes or the journal gets too long.
+ * <p>
+ * The records are batched in memory and appended with a single {@code fsync}, see
+ * {@link #flush(long, byte[])}. Every journal starts with the generation of the metadata file
+ * written before it, so a journal left by an interrupted compaction is ignored.
+ * <p>
+ * The monitor of the journal only guards the pending records and is never held while writing,
+ * since records are added by the download threads while holding the lock of the mission. The
+ * file is written while holding {@link #mWriteLock} instead.
+ */
+public class MissionJournal {
+    private static final String TAG = "MissionJournal";
+
+    public static final String SUFFIX = ".journal";
+
+    private static final int MAGIC = 0x4E504A31;// "NPJ1"
+    private static final int HEADER_SIZE = 12;// magic (int) + generation (long)
+    private static final int RECORD_SIZE = 13;// type (byte) + index (int) + value (long)
+    private static final int MAX_RECORDS = 4096;
+
+    private static final byte RECORD_BLOCK = 1;
+    private static final byte RECORD_DONE = 2;
+    private static final byte RECORD_LENGTH = 3;
+    private static final byte RECORD_FALLBACK_RESUME_OFFSET = 4;
+
+    private final File mFile;
+    private final ByteArrayOutputStream mPending = new ByteArrayOutputStream(RECORD_SIZE * 64);
+    private final DataOutputStream mPendingWriter = new DataOutputStream(mPending);
+    private final Object mWriteLock = new Object();
+
+    private long mGeneration = -1;
+    private int mRecords = 0;
+
+    MissionJournal(@NonNull File metadata) {
+        mFile = getFile(metadata);
+    }
+
+    @NonNull
+    public static File getFile(@NonNull File metadata) {
+        return new File(metadata.getPath() + SUFFIX);
+    }
+
+    /**
+     * Starts a new journal, must be called after writing the metadata file
+     *
+     * @param generation generation of the metadata file just written
+     * @throws IOException if an I/O error occurs
+     */
+    void reset(long generation) throws IOException {
+        synchronized (mWriteLock) {
+            synchronized (this) {
+                mPending.reset();
+                mRecords = 0;
+                mGeneration = -1;
+            }
+
+            try (FileOutputStream out = new FileOutputStream(mFile, false)) {
+                DataOutputStream writer = new DataOutputStream(out);
+                writer.writeInt(MAGIC);
+                writer.writeLong(generation);
+                writer.flush();
+                out.getFD().sync();
+            }
+
+            synchronized (this) {
+                mGeneration = generation;
+            }
+        }
+    }
+
+    /**
+     * Records a change of {@link DownloadMission#blocks}, written on the next flush
+     *
+     * @param index the block
+     * @param value the new value
+     */
+    synchronized void addBlock(int index, int value) {
+        add(RECORD_BLOCK, index, value);
+    }
+
+    /**
+     * Takes the pending records, along with the current progress of the mission
+     *
+     * @param mission the mission
+     * @return the records to pass to {@link #flush(long, byte[])}
+     */
+    synchronized byte[] takePending(DownloadMission mission) {
+        add(RECORD_DONE, 0, mission.done);
+        add(RECORD_LENGTH, 0, mission.length);
+        add(RECORD_FALLBACK_RESUME_OFFSET, 0, mission.fallbackResumeOffset);
+
+        byte[] records = mPending.toByteArray();
+        mPending.reset();
+        return records;
+    }
+
+    /**
+     * Appends the records taken with {@link #takePending(DownloadMission)} and syncs the file
+     *
+     * @param generation the generation of the metadata when the records were taken, if the
+     *                   metadata was written again meanwhile the records are already saved
+     * @param records    the records
+     * @return {@code false} if the journal is too long and the metadata should be written again
+     * @throws IOException if an I/O error occurs
+     */
+    boolean flush(long generation, byte[] records) throws IOException {
+        synchronized (mWriteLock) {
+            // the generation only changes while holding the write lock
+            synchronized (this) {
+                if (generation != mGeneration) return true;
+            }
+
+            try (FileOutputStream out = new FileOutputStream(mFile, true)) {
+                out.write(records);
+                out.getFD().sync();
+            }
+
+            synchronized (this) {
+                mRecords += records.length / RECORD_SIZE;
+                return mRecords < MAX_RECORDS;
+            }
+        }
+    }
+
+    /**
+     * Deletes the journal, records flushed later are discarded
+     */
+    void delete() {
+        synchronized (mWriteLock) {
+            synchronized (this) {
+                mGeneration = -1;
+            }
+            //noinspection ResultOfMethodCallIgnored
+            mFile.delete();
+        }
+    }
+
+    private void add(byte type, int index, long value) {
+        try {
+            mPendingWriter.writeByte(type);
+            mPendingWriter.writeInt(index);
+            mPendingWriter.writeLong(value);
+        } catch (IOException e) {
+            // never happens, written to memory
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Applies the journal of the metadata file to the mission read from it. A record partially
+     * written at the end of the journal is ignored.
+     *
+     * @param metadata the metadata file
+     * @param mission  the mission read from the metadata file
+     */
+    public static void replay(@NonNull File metadata, @NonNull DownloadMission mission) {
+        File file = getFile(metadata);
+        if (!file.exists()) return;
+
+        try (DataInputStream reader = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (reader.readInt() != MAGIC || reader.readLong() != mission.journalGeneration) {
+                Log.w(TAG, "ignoring journal not matching the metadata: " + file.getName());
+                return;
+            }
+
+            long available = file.length() - HEADER_SIZE;
+            for (; available >= RECORD_SIZE; available -= RECORD_SIZE) {
+                byte type = reader.readByte();
+                int index = reader.readInt();
+                long value = reader.readLong();
+
+                switch (type) {
+                    case RECORD_BLOCK:
+                        if (mission.blocks == null || index < 0 || index >= mission.blocks.length) {
+                            Log.w(TAG, "invalid block in the journal: " + file.getName());
+                            return;
+                        }
+                        mission.blocks[index] = (int) value;
+                        break;
+                    case RECORD_DONE:
+                        mission.done = value;
+                        break;
+                    case RECORD_LENGTH:
+                        mission.length = value;
+                        break;
+                    case RECORD_FALLBACK_RESUME_OFFSET:
+                        mission.fallbackResumeOffset = value;
+                        break;
+                    default:
+                        Log.w(TAG, "unknown record in the journal: " + file.getName());
+                        return;
+                }
+            }
+        } catch (FileNotFoundException | EOFException e) {
+            // nothing to replay
+        } catch (IOException e) {
+            Log.e(TAG, "failed to read the journal " + file.getName(), e);
+        }
+    }
+}
@@ -14,20 +14,30 @@ public class ChunkFileInputStream extends SharpStream {
 
     private long progressReport;
     private final ProgressReport onProgress;
+    private final DataWaiter dataWaiter;
 
     public ChunkFileInputStream(SharpStream target, long start, long end, ProgressReport callback) throws IOException {
+        this(target, start, end, callback, null);
+    }
+
+    /**
+     * @param waiter if not {@code null}, the chunk is still being written and every read waits
+     *               until the requested bytes are available, instead of checking the file length
+     */
+    public ChunkFileInputStream(SharpStream target, long start, long end, ProgressReport callback, DataWaiter waiter) throws IOException {
         source = target;
         offset = start;
         length = end - start;
         position = 0;
         onProgress = callback;
         progressReport = REPORT_INTERVAL;
+        dataWaiter = waiter;
 
         if (length < 1) {
             source.close();
             throw new IOException("The chunk is empty or invalid");
         }
-        if (source.length() < end) {
+        if (dataWaiter == null && source.length() < end) {
             try {
                 throw new IOException(String.format("invalid file length. expected = %s  found = %s", end, source.length()));
             } finally {
@@ -52,6 +62,7 @@ public class ChunkFileInputStream extends SharpStream {
         if ((position + 1) > length) {
             return 0;
         }
+        if (dataWaiter != null) dataWaiter.waitFor(offset + position + 1);
 
         int res = source.read();
         if (res >= 0) {
@@ -74,6 +85,7 @@ public class ChunkFileInputStream extends SharpStream {
         if (len == 0) {
             return 0;
         }
+        if (dataWaiter != null) dataWaiter.waitFor(offset + position + len);
 
         int res = source.read(b, off, len);
         position += res;
@@ -152,4 +164,14 @@ public class ChunkFileInputStream extends SharpStream {
     public void write(byte[] buffer, int offset, int count) {
     }
 
+    public interface DataWaiter {
+
+        /**
+         * Blocks until the file is written up to the given position
+         *
+         * @param end absolute position on file (exclusive)
+         * @throws IOException if the data will not be available anymore
+         */
+        void waitFor(long end) throws IOException;
+    }
 }
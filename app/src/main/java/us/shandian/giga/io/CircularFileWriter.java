@@ -5,7 +5,6 @@ import androidx.annotation.NonNull;
 import org.schabi.newpipe.streams.io.SharpStream;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.Objects;
 
@@ -27,6 +26,8 @@ public class CircularFileWriter extends SharpStream {
     private BufferedFile out;
     private BufferedFile aux;
 
+    private final byte[] copyBuffer = new byte[COPY_BUFFER_SIZE];
+
     public CircularFileWriter(SharpStream target, File temp, OffsetChecker checker) throws IOException {
         Objects.requireNonNull(checker);
 
@@ -53,7 +54,7 @@ public class CircularFileWriter extends SharpStream {
         aux.flush();
 
         boolean underflow = aux.offset < aux.length || out.offset < out.length;
-        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        byte[] buffer = copyBuffer;
 
         aux.target.seek(0);
         out.target.seek(out.length);
@@ -378,8 +379,8 @@ public class CircularFileWriter extends SharpStream {
         private byte[] queue = new byte[QUEUE_BUFFER_SIZE];
         private int queueSize;
 
-        BufferedFile(File file) throws FileNotFoundException {
-            this.target = new FileStream(file);
+        BufferedFile(File file) throws IOException {
+            this.target = new MappedFileStream(file);
         }
 
         BufferedFile(SharpStream target) {
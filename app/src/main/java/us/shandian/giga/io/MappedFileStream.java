@@ -0,0 +1,260 @@
+package us.shandian.giga.io;
+
+import androidx.annotation.NonNull;
+
+import org.schabi.newpipe.streams.io.SharpStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * {@link SharpStream} over a file, which reads and overwrites through memory mapped windows of
+ * the file instead of doing a system call on every access. Used by the post-processing, where the
+ * muxers do lots of small reads, writes and seeks.
+ * <p>
+ * The windows are aligned to {@link #WINDOW_SIZE} and the last {@link #MAX_WINDOWS} used are kept,
+ * so going back and forth between the header and the data being written does not map the same
+ * region again. There is no public API to unmap a window, the dropped ones are unmapped once
+ * collected.
+ * <p>
+ * Only the data already in the file is written through a window, the bytes appended at the end
+ * (or past a region reserved with {@link #setLength(long)}) are written with the channel. A page
+ * fault on a region not allocated yet crashes the process (instead of throwing an exception) if
+ * the storage is full. For the same reason, never truncate a file while other stream is reading it.
+ */
+public class MappedFileStream extends SharpStream {
+    private static final int WINDOW_SIZE = 8 * 1024 * 1024;// 8 MiB
+    private static final int MAX_WINDOWS = 2;
+
+    private RandomAccessFile source;
+    private FileChannel channel;
+
+    private final Window[] windows = new Window[MAX_WINDOWS];// most recently used first
+    private Window window;
+    int mappedWindows;// amount of windows mapped so far, checked by the tests
+
+    private long position;
+    private long length;
+    private long allocated;// end of the data written, no holes before it
+
+    private final byte[] single = new byte[1];
+
+    public MappedFileStream(@NonNull File target) throws IOException {
+        source = new RandomAccessFile(target, "rw");
+        channel = source.getChannel();
+        length = allocated = channel.size();
+    }
+
+    /**
+     * Selects the window which contains the current position, mapping it if is not kept
+     *
+     * @return amount of bytes mapped after the current position
+     * @throws IOException if an I/O error occurs
+     */
+    private int map() throws IOException {
+        if (window == null || !window.contains(position)) {
+            window = obtainWindow();
+        }
+
+        window.buffer.position((int) (position - window.start));
+        return window.buffer.remaining();
+    }
+
+    private Window obtainWindow() throws IOException {
+        long start = position - position % WINDOW_SIZE;
+        int index = 0;
+
+        while (index < windows.length - 1 && windows[index] != null) {
+            if (windows[index].start == start) break;
+            index++;
+        }
+
+        Window found = windows[index];
+        if (found == null || found.start != start || !found.contains(position)) {
+            // not kept, or mapped before the file grew
+            long size = Math.min(WINDOW_SIZE, length - start);
+            found = new Window(start, channel.map(FileChannel.MapMode.READ_WRITE, start, size));
+            mappedWindows++;
+        }
+
+        // move to the front, dropping the least recently used if it was not kept
+        System.arraycopy(windows, 0, windows, 1, index);
+        windows[0] = found;
+
+        return found;
+    }
+
+    private void dropWindows() {
+        Arrays.fill(windows, null);
+        window = null;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position >= length) return -1;
+
+        map();
+        position++;
+        return window.buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b) throws IOException {
+        return read(b, 0, b.length);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (position >= length) return -1;
+
+        len = (int) Math.min(len, length - position);
+        len = Math.min(len, map());
+
+        window.buffer.get(b, off, len);
+        position += len;
+
+        return len;
+    }
+
+    @Override
+    public long skip(long amount) {
+        amount = Math.max(0, Math.min(amount, length - position));
+        position += amount;
+
+        return amount;
+    }
+
+    @Override
+    public long available() {
+        return Math.max(0, length - position);
+    }
+
+    @Override
+    public void close() {
+        if (source == null) return;
+
+        dropWindows();
+        try {
+            source.close();
+        } catch (IOException err) {
+            // nothing to do
+        }
+
+        source = null;
+        channel = null;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return source == null;
+    }
+
+    @Override
+    public void rewind() {
+        position = 0;
+    }
+
+    @Override
+    public boolean canRewind() {
+        return true;
+    }
+
+    @Override
+    public boolean canRead() {
+        return true;
+    }
+
+    @Override
+    public boolean canWrite() {
+        return true;
+    }
+
+    @Override
+    public boolean canSeek() {
+        return true;
+    }
+
+    @Override
+    public boolean canSetLength() {
+        return true;
+    }
+
+    @Override
+    public void write(byte value) throws IOException {
+        single[0] = value;
+        write(single, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] buffer) throws IOException {
+        write(buffer, 0, buffer.length);
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int count) throws IOException {
+        while (count > 0 && position < allocated) {
+            int amount = (int) Math.min(count, allocated - position);
+            amount = Math.min(amount, map());
+            window.buffer.put(buffer, offset, amount);
+
+            position += amount;
+            offset += amount;
+            count -= amount;
+        }
+
+        if (count < 1) return;
+
+        long start = position;
+        ByteBuffer data = ByteBuffer.wrap(buffer, offset, count);
+        while (data.hasRemaining()) {
+            position += channel.write(data, position);
+        }
+
+        if (start == allocated) allocated = position;
+        if (position > length) length = position;
+    }
+
+    @Override
+    public void setLength(long length) throws IOException {
+        if (length < this.length) {
+            // never access the truncated region
+            dropWindows();
+            channel.truncate(length);
+            allocated = Math.min(allocated, length);
+        } else {
+            source.setLength(length);
+        }
+
+        this.length = length;
+    }
+
+    @Override
+    public void seek(long offset) {
+        position = offset;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    private static class Window {
+        final long start;
+        final MappedByteBuffer buffer;
+
+        Window(long start, MappedByteBuffer buffer) {
+            this.start = start;
+            this.buffer = buffer;
+        }
+
+        boolean contains(long position) {
+            return position >= start && position < start + buffer.capacity();
+        }
+    }
+}
@@ -14,6 +14,11 @@ class OggFromWebmDemuxer extends Postprocessing {
         super(true, true, ALGORITHM_OGG_FROM_WEBM_DEMUXER);
     }
 
+    @Override
+    boolean readsSourcesOnce() {
+        return true;
+    }
+
     @Override
     boolean test(SharpStream... sources) throws IOException {
         ByteBuffer buffer = ByteBuffer.allocate(4);
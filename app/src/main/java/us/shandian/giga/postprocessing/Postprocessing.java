@@ -3,6 +3,7 @@ package us.shandian.giga.postprocessing;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import org.schabi.newpipe.streams.io.SharpStream;
 
@@ -14,6 +15,7 @@ import us.shandian.giga.get.DownloadMission;
 import us.shandian.giga.io.ChunkFileInputStream;
 import us.shandian.giga.io.CircularFileWriter;
 import us.shandian.giga.io.CircularFileWriter.OffsetChecker;
+import us.shandian.giga.io.MappedFileStream;
 import us.shandian.giga.io.ProgressReport;
 
 import static us.shandian.giga.get.DownloadMission.ERROR_NOTHING;
@@ -125,7 +127,7 @@ public abstract class Postprocessing implements Serializable {
             ChunkFileInputStream[] sources = new ChunkFileInputStream[mission.urls.length];
             try {
                 for (int i = 0, j = 1; i < sources.length; i++, j++) {
-                    SharpStream source = mission.storage.getStream();
+                    SharpStream source = openStream(mission);
                     long end = j < sources.length ? mission.offsets[j] : source.length();
 
                     sources[i] = new ChunkFileInputStream(source, mission.offsets[i], end, readProgress);
@@ -151,7 +153,7 @@ public abstract class Postprocessing implements Serializable {
                     };
 
                     try (CircularFileWriter out = new CircularFileWriter(
-                            mission.storage.getStream(), tempFile, checker)) {
+                            openStream(mission), tempFile, checker)) {
                         out.onProgress = (long position) -> mission.done = position;
 
                         out.onWriteError = err -> {
@@ -209,6 +211,129 @@ public abstract class Postprocessing implements Serializable {
         this.mission = null;
     }
 
+    /**
+     * Checks if {@link #runWhileDownloading(DownloadMission)} can be used on the mission. The
+     * output is written to another file, so the free space must hold the whole output too.
+     *
+     * @param target the mission
+     * @return {@code true} if the sources can be processed while the last one is downloaded
+     */
+    public boolean canRunWhileDownloading(DownloadMission target) {
+        if (!worksOnSameFile || !readsSourcesOnce() || target.nearLength < 1 || !target.storage.isDirect())
+            return false;
+
+        File directory = getOutputWhileDownloading(target).getParentFile();
+        return directory != null && directory.getUsableSpace() > target.nearLength * 2;
+    }
+
+    /**
+     * Processes the sources while the last one is being downloaded, reading it only as far as
+     * it is downloaded. The output is written to a hidden file next to the mission file, which
+     * is applied by {@link #finishRunWhileDownloading(DownloadMission, File)} after the download.
+     * Unlike {@link #run(DownloadMission)} failures are not reported, in that case the sources
+     * are processed again once the download is finished.
+     *
+     * @param target the mission, downloading its last resource
+     * @return the output file, or {@code null} if the sources were not processed
+     */
+    @Nullable
+    public File runWhileDownloading(DownloadMission target) {
+        int last = target.urls.length - 1;
+        long end = target.offsets[last] + target.length;
+        File output = getOutputWhileDownloading(target);
+        ChunkFileInputStream[] sources = new ChunkFileInputStream[target.urls.length];
+        boolean done = false;
+
+        try {
+            for (int i = 0; i < last; i++) {
+                sources[i] = new ChunkFileInputStream(
+                        openStream(target), target.offsets[i], target.offsets[i + 1], null
+                );
+            }
+            sources[last] = new ChunkFileInputStream(
+                    openStream(target), target.offsets[last], end, null, target::waitForDownloaded
+            );
+
+            // if not required, run() skips it too
+            if (!test(sources)) return null;
+            for (SharpStream source : sources) source.rewind();
+
+            //noinspection ResultOfMethodCallIgnored
+            output.delete();// left by a previous attempt
+            try (SharpStream out = new MappedFileStream(output)) {
+                done = process(out, sources) == OK_RESULT;
+            }
+
+            // the algorithm may not read the last bytes, but the file can not be replaced yet
+            if (done) target.waitForDownloaded(end);
+        } catch (Exception e) {
+            done = false;
+            Log.w(getClass().getSimpleName(), "post-processing while downloading failed, running it after the download", e);
+        } finally {
+            for (SharpStream source : sources) {
+                if (source != null && !source.isClosed()) {
+                    source.close();
+                }
+            }
+            if (!done) {
+                //noinspection ResultOfMethodCallIgnored
+                output.delete();
+            }
+        }
+
+        return done ? output : null;
+    }
+
+    /**
+     * Replaces the mission file with the output of {@link #runWhileDownloading(DownloadMission)}
+     *
+     * @param target the mission, already downloaded
+     * @param output the output file
+     * @throws IOException if the file could not be replaced
+     */
+    public void finishRunWhileDownloading(DownloadMission target, File output) throws IOException {
+        long length = output.length();
+        target.storage.replaceWith(output);
+
+        target.length = length;
+        target.done = length;
+    }
+
+    /**
+     * @param target the mission
+     * @return the hidden file next to the mission file, written by
+     * {@link #runWhileDownloading(DownloadMission)}
+     */
+    public static File getOutputWhileDownloading(DownloadMission target) {
+        File file = getFile(target);
+        return new File(file.getParentFile(), "." + file.getName() + ".tmp");
+    }
+
+    /**
+     * Opens the mission file, memory mapped if it is a plain file. The SAF storage only provides
+     * streams, see {@link us.shandian.giga.io.FileStreamSAF}.
+     */
+    private static SharpStream openStream(DownloadMission target) throws IOException {
+        if (target.storage.isDirect()) {
+            return new MappedFileStream(getFile(target));
+        }
+        return target.storage.getStream();
+    }
+
+    private static File getFile(DownloadMission target) {
+        return new File(target.storage.getUri().getPath());
+    }
+
+    /**
+     * Indicates whether the algorithm reads every source only once and from the start to the
+     * end, so the last source can be processed while it is being downloaded
+     *
+     * @return {@code true} if supported, otherwise, {@code false}
+     */
+    boolean readsSourcesOnce() {
+        return false;
+    }
+
     /**
      * Test if the post-processing algorithm can be skipped
      *
@@ -18,6 +18,7 @@ import java.util.List;
 import us.shandian.giga.get.DownloadMission;
 import us.shandian.giga.get.FinishedMission;
 import us.shandian.giga.get.Mission;
+import us.shandian.giga.get.MissionJournal;
 import us.shandian.giga.get.sqlite.FinishedMissionStore;
 import org.schabi.newpipe.streams.io.StoredDirectoryHelper;
 import org.schabi.newpipe.streams.io.StoredFileHelper;
@@ -147,14 +148,20 @@ public class DownloadManager {
         for (File sub : subs) {
             if (!sub.isFile()) continue;
             if (sub.getName().equals(".tmp")) continue;
+            if (sub.getName().endsWith(MissionJournal.SUFFIX)) continue;
 
             DownloadMission mis = Utility.readFromFile(sub);
             if (mis == null || mis.isFinished() || mis.hasInvalidStorage()) {
                 //noinspection ResultOfMethodCallIgnored
                 sub.delete();
+                //noinspection ResultOfMethodCallIgnored
+                MissionJournal.getFile(sub).delete();
                 continue;
             }
 
+            // the progress saved after the metadata was written
+            MissionJournal.replay(sub, mis);
+
             mis.threads = new Thread[0];
 
             boolean exists;
@@ -192,6 +199,9 @@ public class DownloadManager {
                 mis.psAlgorithm.setTemporalDir(tempDir);
             }
 
+            // left by the post-processing while downloading, which is not resumed
+            mis.deletePostprocessingOutput();
+
             mis.metadata = sub;
             mis.maxRetry = mPrefMaxRetry;
             mis.mHandler = mHandler;
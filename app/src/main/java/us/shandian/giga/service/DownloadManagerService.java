@@ -183,6 +183,7 @@ public class DownloadManagerService extends Service {
         handlePreferenceChange(mPrefs, getString(R.string.downloads_cross_network));
         handlePreferenceChange(mPrefs, getString(R.string.downloads_maximum_retry));
         handlePreferenceChange(mPrefs, getString(R.string.downloads_queue_limit));
+        handlePreferenceChange(mPrefs, getString(R.string.downloads_speed_limit));
 
         mLock = new LockManager(this);
     }
@@ -323,6 +324,15 @@ public class DownloadManagerService extends Service {
             mManager.mPrefMeteredDownloads = prefs.getBoolean(key, false);
         } else if (getString(R.string.downloads_queue_limit).equals(key)) {
             mManager.mPrefQueueLimit = prefs.getBoolean(key, true);
+        } else if (getString(R.string.downloads_speed_limit).equals(key)) {
+            long limit;
+            try {
+                String value = prefs.getString(key, getString(R.string.downloads_speed_limit_default));
+                limit = value == null ? 0 : Long.parseLong(value) * 1024;
+            } catch (Exception e) {
+                limit = 0;
+            }
+            DownloadScheduler.getInstance().setSpeedLimit(limit);
         } else if (getString(R.string.download_path_video_key).equals(key)) {
             mManager.mMainStorageVideo = loadMainVideoStorage();
         } else if (getString(R.string.download_path_audio_key).equals(key)) {
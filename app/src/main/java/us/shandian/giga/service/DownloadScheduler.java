@@ -0,0 +1,206 @@
+package us.shandian.giga.service;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import us.shandian.giga.get.DownloadMission;
+
+import static org.schabi.newpipe.BuildConfig.DEBUG;
+
+/**
+ * Coordinates the connections and the bandwidth used by all running missions. Every mission
+ * still starts {@link DownloadMission#threadCount} threads, but the threads wait here for a
+ * connection before each request, so running several missions at once does not open dozens of
+ * connections.
+ * <p>
+ * The missions share as many connections as the biggest thread count chosen for them, so a
+ * mission running alone always uses all the threads chosen by the user. The thread count is also
+ * the weight of a mission: concurrent missions split both the connections and the optional speed
+ * limit set by the user in proportion to it. The bandwidth is limited with a token bucket per
+ * mission, consumed in the download loop. While the player is buffering, the downloads back off
+ * to a single connection and a lower speed limit, to leave the bandwidth to playback.
+ */
+public class DownloadScheduler {
+    private static final String TAG = DownloadScheduler.class.getSimpleName();
+
+    private static final int BUFFERING_CONNECTION_BUDGET = 1;
+    private static final long BUFFERING_SPEED_LIMIT = 128 * 1024;// bytes per second
+
+    private static final DownloadScheduler INSTANCE = new DownloadScheduler();
+
+    private final Map<DownloadMission, Share> mShares = new WeakHashMap<>();
+
+    private long mSpeedLimit = 0;
+    private boolean mPlaybackBuffering = false;
+    private int mConnections = 0;
+
+    private DownloadScheduler() {
+    }
+
+    public static DownloadScheduler getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Blocks until the mission can open a new connection, every call must be followed by a call
+     * to {@link #releaseConnection(DownloadMission)} once the connection is closed.
+     *
+     * @param mission the mission opening a connection
+     * @return {@code true} if the connection was granted, {@code false} if the thread was
+     * interrupted while waiting
+     */
+    public synchronized boolean acquireConnection(@NonNull DownloadMission mission) {
+        Share share = getShare(mission);
+        share.threadCount = mission.threadCount;
+        share.waiting++;
+
+        try {
+            while (mConnections >= getConnectionBudget() || share.connections >= getFairShare(share)) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            return false;
+        } finally {
+            share.waiting--;
+        }
+
+        share.connections++;
+        mConnections++;
+        return true;
+    }
+
+    public synchronized void releaseConnection(@NonNull DownloadMission mission) {
+        Share share = mShares.get(mission);
+        if (share == null || share.connections < 1) return;
+
+        share.connections--;
+        mConnections--;
+        notifyAll();
+    }
+
+    /**
+     * Consumes downloaded bytes from the token bucket of the mission, sleeping as long as needed
+     * to keep the mission below its part of the speed limit
+     *
+     * @param mission the mission which downloaded the bytes
+     * @param length  amount of bytes downloaded
+     * @throws InterruptedException if the thread is interrupted while sleeping
+     */
+    public void throttle(@NonNull DownloadMission mission, int length) throws InterruptedException {
+        long delay;
+
+        synchronized (this) {
+            Share share = getShare(mission);
+            long rate = getSpeedLimit(share);
+            long now = System.currentTimeMillis();
+
+            if (rate <= 0) {
+                share.tokens = 0;
+                share.lastRefill = now;
+                return;
+            }
+
+            // allow bursts of one second at most
+            share.tokens = Math.min(rate, share.tokens + (now - share.lastRefill) * rate / 1000.0);
+            share.lastRefill = now;
+            share.tokens -= length;
+
+            if (share.tokens >= 0) return;
+            delay = (long) (-share.tokens * 1000 / rate);
+        }
+
+        if (delay > 0) Thread.sleep(delay);
+    }
+
+    /**
+     * Set the speed limit shared by all missions, chosen by the user in the settings
+     *
+     * @param bytesPerSecond the limit, or {@code 0} for no limit
+     */
+    public synchronized void setSpeedLimit(long bytesPerSecond) {
+        mSpeedLimit = Math.max(0, bytesPerSecond);
+    }
+
+    /**
+     * Called by the player, the downloads use less connections and bandwidth while the playback
+     * is buffering
+     *
+     * @param buffering {@code true} if the player is waiting for data
+     */
+    public synchronized void setPlaybackBuffering(boolean buffering) {
+        if (mPlaybackBuffering == buffering) return;
+
+        if (DEBUG) Log.d(TAG, "setPlaybackBuffering() buffering = " + buffering);
+
+        mPlaybackBuffering = buffering;
+        notifyAll();
+    }
+
+    private Share getShare(DownloadMission mission) {
+        Share share = mShares.get(mission);
+        if (share == null) {
+            share = new Share();
+            mShares.put(mission, share);
+        }
+        return share;
+    }
+
+    /**
+     * @return the biggest thread count of the missions using or waiting for a connection
+     */
+    private int getConnectionBudget() {
+        if (mPlaybackBuffering) return BUFFERING_CONNECTION_BUDGET;
+
+        int budget = 1;
+        for (Share share : mShares.values()) {
+            if (share.isActive()) budget = Math.max(budget, share.threadCount);
+        }
+        return budget;
+    }
+
+    /**
+     * @return sum of the weights of the missions using or waiting for a connection
+     */
+    private int getActiveWeight() {
+        int weight = 0;
+        for (Share share : mShares.values()) {
+            if (share.isActive()) weight += share.threadCount;
+        }
+        return Math.max(1, weight);
+    }
+
+    private int getFairShare(Share share) {
+        int budget = getConnectionBudget();
+        int activeWeight = getActiveWeight();
+
+        // round up, the global budget is checked anyway
+        return Math.max(1, (budget * share.threadCount + activeWeight - 1) / activeWeight);
+    }
+
+    private long getSpeedLimit(Share share) {
+        long limit = mSpeedLimit;
+        if (mPlaybackBuffering) {
+            limit = limit > 0 ? Math.min(limit, BUFFERING_SPEED_LIMIT) : BUFFERING_SPEED_LIMIT;
+        }
+        if (limit <= 0) return 0;
+
+        return Math.max(1, limit * share.threadCount / getActiveWeight());
+    }
+
+    private static class Share {
+        // also the weight of the mission
+        int threadCount = 1;
+        int connections = 0;
+        int waiting = 0;
+        double tokens = 0;
+        long lastRefill = System.currentTimeMillis();
+
+        boolean isActive() {
+            return connections > 0 || waiting > 0;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.schabi.newpipe.local.feed.service
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class AdaptiveConcurrencyLimiterTest {
+    private fun AdaptiveConcurrencyLimiter.runRequest(
+        serviceId: Int,
+        latencyMillis: Long,
+        congested: Boolean = false
+    ) {
+        acquire(serviceId).blockingAwait()
+        release(serviceId, latencyMillis, congested)
+    }
+
+    @Test
+    fun `Limit increases with fast successful requests`() {
+        val limiter = AdaptiveConcurrencyLimiter(initialLimit = 2, maxLimit = 8)
+        repeat(20) { limiter.runRequest(0, 100) }
+        assertTrue(limiter.getLimits()[0]!! > 2)
+    }
+
+    @Test
+    fun `Limit never exceeds the maximum`() {
+        val limiter = AdaptiveConcurrencyLimiter(initialLimit = 2, maxLimit = 4)
+        repeat(1000) { limiter.runRequest(0, 100) }
+        assertEquals(4, limiter.getLimits()[0])
+    }
+
+    @Test
+    fun `Limit decreases on congestion but not below the minimum`() {
+        val limiter = AdaptiveConcurrencyLimiter(initialLimit = 6, minLimit = 2)
+        limiter.runRequest(0, 0, congested = true)
+        assertTrue(limiter.getLimits()[0]!! < 6)
+
+        repeat(100) {
+            limiter.runRequest(0, 0, congested = true)
+            Thread.sleep(1) // decreases happen at most once per average latency
+        }
+        assertEquals(2, limiter.getLimits()[0])
+    }
+
+    @Test
+    fun `Services are limited independently`() {
+        val limiter = AdaptiveConcurrencyLimiter(initialLimit = 6)
+        limiter.runRequest(0, 0, congested = true)
+        limiter.runRequest(1, 100)
+        assertTrue(limiter.getLimits()[0]!! < 6)
+        assertEquals(6, limiter.getLimits()[1])
+    }
+
+    @Test
+    fun `Waiting requests don't hold back other services`() {
+        val limiter = AdaptiveConcurrencyLimiter(initialLimit = 1, maxLimit = 1)
+        limiter.acquire(0).test().assertComplete()
+        val waiting = limiter.acquire(0).test()
+        waiting.assertNotComplete()
+
+        limiter.acquire(1).test().assertComplete()
+
+        limiter.release(0, 100, false)
+        waiting.assertComplete()
+    }
+
+    @Test
+    fun `Disposed waiting requests don't take a slot`() {
+        val limiter = AdaptiveConcurrencyLimiter(initialLimit = 1, maxLimit = 1)
+        limiter.acquire(0).test().assertComplete()
+        limiter.acquire(0).test().dispose()
+        val waiting = limiter.acquire(0).test()
+
+        limiter.release(0, 100, false)
+        waiting.assertComplete()
+    }
+}
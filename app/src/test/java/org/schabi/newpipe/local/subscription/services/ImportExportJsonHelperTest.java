@@ -1,5 +1,6 @@
 package org.schabi.newpipe.local.subscription.services;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -11,6 +12,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -55,6 +57,28 @@ public class ImportExportJsonHelperTest {
         }
     }
 
+    @Test
+    public void testStreamingSkipsUnknownValues() throws Exception {
+        final String source = "{\"app_version\":\"0.11.6\",\"extra\":{\"a\":[1,{\"b\":null}]},"
+                + "\"subscriptions\":[{\"service_id\":0,\"url\":\"https://a\",\"name\":\"A\","
+                + "\"avatar\":[true,false]},\"garbage\",{\"url\":\"https://b\"},"
+                + "{\"service_id\":1,\"name\":\"C\",\"url\":\"https://c\"}],"
+                + "\"app_version_int\":47}";
+
+        final List<SubscriptionItem> items = new ArrayList<>();
+        ImportExportJsonHelper.readFrom(
+                new ByteArrayInputStream(source.getBytes(StandardCharsets.UTF_8)), null,
+                items::add);
+
+        assertEquals(2, items.size());
+        assertEquals(0, items.get(0).getServiceId());
+        assertEquals("https://a", items.get(0).getUrl());
+        assertEquals("A", items.get(0).getName());
+        assertEquals(1, items.get(1).getServiceId());
+        assertEquals("https://c", items.get(1).getUrl());
+        assertEquals("C", items.get(1).getName());
+    }
+
     @Test
     public void ultimateTest() throws Exception {
         // Read from file
@@ -0,0 +1,143 @@
+package org.schabi.newpipe.streams;
+
+import org.junit.Test;
+import org.schabi.newpipe.streams.io.SharpStream;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class DataReaderTest {
+    private static final int SOURCE_SIZE = 1024 * 1024;
+
+    @Test
+    public void readAheadLimitsTheBytesReadFromTheSource() throws IOException {
+        final ByteSource source = new ByteSource(SOURCE_SIZE, Integer.MAX_VALUE);
+        final DataReader reader = new DataReader(source);
+        reader.setReadAhead(16);
+
+        // read a small header every 64 KiB, like the moof boxes of a fragmented mp4
+        for (int offset = 0; offset < SOURCE_SIZE; offset += 64 * 1024) {
+            assertEquals(offset, reader.position());
+            assertEquals(ByteSource.valueAt(offset), reader.read());
+            reader.skipBytes(64 * 1024 - 1);
+        }
+
+        assertEquals(SOURCE_SIZE / (64 * 1024) * 16, source.bytesRead);
+    }
+
+    @Test
+    public void shortReadsOfTheSourceAreNotTheEnd() throws IOException {
+        final DataReader reader = new DataReader(new ByteSource(SOURCE_SIZE, 1000));
+
+        for (int i = 0; i < SOURCE_SIZE; i++) {
+            assertEquals(ByteSource.valueAt(i), reader.read());
+        }
+        assertEquals(-1, reader.read());
+        assertFalse(reader.available());
+    }
+
+    /**
+     * Source of predictable bytes, which returns at most {@code maxRead} bytes per read and
+     * counts the bytes read.
+     */
+    private static final class ByteSource extends SharpStream {
+        private final int length;
+        private final int maxRead;
+        private int position = 0;
+        private int bytesRead = 0;
+
+        ByteSource(final int length, final int maxRead) {
+            this.length = length;
+            this.maxRead = maxRead;
+        }
+
+        static int valueAt(final int offset) {
+            return (offset * 31) & 0xFF;
+        }
+
+        @Override
+        public int read() {
+            if (position >= length) {
+                return -1;
+            }
+            bytesRead++;
+            return valueAt(position++);
+        }
+
+        @Override
+        public int read(final byte[] buffer) {
+            return read(buffer, 0, buffer.length);
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int count) {
+            if (position >= length) {
+                return -1;
+            }
+            final int amount = Math.min(Math.min(count, maxRead), length - position);
+            for (int i = 0; i < amount; i++) {
+                buffer[offset + i] = (byte) valueAt(position++);
+            }
+            bytesRead += amount;
+            return amount;
+        }
+
+        @Override
+        public long skip(final long amount) {
+            final int skipped = (int) Math.min(amount, length - position);
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public long available() {
+            return length - position;
+        }
+
+        @Override
+        public void rewind() {
+            position = 0;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public boolean canRewind() {
+            return true;
+        }
+
+        @Override
+        public boolean canRead() {
+            return true;
+        }
+
+        @Override
+        public boolean canWrite() {
+            return false;
+        }
+
+        @Override
+        public void write(final byte value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void write(final byte[] buffer) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void write(final byte[] buffer, final int offset, final int count) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package org.schabi.newpipe.streams;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import us.shandian.giga.io.FileStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OggFromWebMWriterTest {
+    private static final byte[] OPUS_HEAD = "OpusHead-----------".getBytes(StandardCharsets.UTF_8);
+    private static final int BLOCKS_PER_CLUSTER = 50;
+    private static final int BLOCK_DURATION_MS = 20;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void buildCopiesEveryBlockIntoValidPages() throws IOException {
+        final Random random = new Random(42);
+        final List<byte[]> blocks = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            // include sizes which are a multiple of 255, they need an extra lacing value
+            final byte[] data = new byte[i % 10 == 0 ? 510 : 1 + random.nextInt(600)];
+            random.nextBytes(data);
+            blocks.add(data);
+        }
+
+        final List<byte[]> packets = readPackets(convert(makeWebM(blocks)));
+
+        assertEquals(blocks.size() + 2, packets.size());
+        assertArrayEquals(OPUS_HEAD, packets.get(0));
+        assertTrue(new String(packets.get(1), StandardCharsets.US_ASCII).startsWith("OpusTags"));
+        for (int i = 0; i < blocks.size(); i++) {
+            assertArrayEquals("block " + i, blocks.get(i), packets.get(i + 2));
+        }
+    }
+
+    private byte[] convert(final byte[] webm) throws IOException {
+        final File source = folder.newFile("source.webm");
+        final File target = folder.newFile("target.ogg");
+        Files.write(source.toPath(), webm);
+
+        try (OggFromWebMWriter writer =
+                     new OggFromWebMWriter(new FileStream(source), new FileStream(target))) {
+            writer.parseSource();
+            writer.selectTrack(0);
+            writer.build();
+        }
+
+        return Files.readAllBytes(target.toPath());
+    }
+
+    // checks the structure and the checksum of every page and joins the segments into packets
+    private static List<byte[]> readPackets(final byte[] ogg) {
+        final ByteBuffer buffer = ByteBuffer.wrap(ogg).order(ByteOrder.LITTLE_ENDIAN);
+        final List<byte[]> packets = new ArrayList<>();
+        final ByteArrayOutputStream packet = new ByteArrayOutputStream();
+        long lastGranulePosition = 0;
+        byte lastFlags = 0;
+
+        while (buffer.hasRemaining()) {
+            final int start = buffer.position();
+            assertEquals(0x5367674f, buffer.getInt()); // "OggS"
+            assertEquals(0, buffer.get()); // version
+            lastFlags = buffer.get();
+            final long granulePosition = buffer.getLong();
+            assertTrue(granulePosition >= lastGranulePosition);
+            lastGranulePosition = granulePosition;
+            buffer.position(start + 22);
+            final int checksum = buffer.getInt();
+            final int segmentCount = buffer.get() & 0xff;
+
+            final int[] segments = new int[segmentCount];
+            int pageSize = 27 + segmentCount;
+            for (int i = 0; i < segmentCount; i++) {
+                segments[i] = buffer.get() & 0xff;
+                pageSize += segments[i];
+            }
+            for (final int segment : segments) {
+                final byte[] data = new byte[segment];
+                buffer.get(data);
+                packet.write(data, 0, data.length);
+                if (segment < 255) {
+                    packets.add(packet.toByteArray());
+                    packet.reset();
+                }
+            }
+
+            final byte[] page = Arrays.copyOfRange(ogg, start, start + pageSize);
+            Arrays.fill(page, 22, 26, (byte) 0);
+            assertEquals("checksum of page at " + start, crc32(page), checksum);
+        }
+
+        assertEquals(0x04, lastFlags); // last page
+        assertEquals(0, packet.size());
+        return packets;
+    }
+
+    // plain bit by bit implementation of the Ogg checksum, as reference
+    private static int crc32(final byte[] data) {
+        int crc = 0;
+        for (final byte b : data) {
+            crc ^= (b & 0xff) << 24;
+            for (int i = 0; i < 8; i++) {
+                crc = crc < 0 ? (crc << 1) ^ 0x04c11db7 : crc << 1;
+            }
+        }
+        return crc;
+    }
+
+    private static byte[] makeWebM(final List<byte[]> blocks) {
+        final ByteArrayOutputStream ebml = new ByteArrayOutputStream();
+        element(ebml, 0x42F7, number(1)); // EBMLReadVersion
+        element(ebml, 0x4282, "webm".getBytes(StandardCharsets.US_ASCII)); // DocType
+        element(ebml, 0x4285, number(2)); // DocTypeReadVersion
+
+        final ByteArrayOutputStream segment = new ByteArrayOutputStream();
+        element(segment, 0x1549A966, element(0x2AD7B1, number(1_000_000))); // Info, TimecodeScale
+
+        final ByteArrayOutputStream track = new ByteArrayOutputStream();
+        element(track, 0xD7, number(1)); // TrackNumber
+        element(track, 0x83, number(2)); // TrackType: audio
+        element(track, 0x86, "A_OPUS".getBytes(StandardCharsets.US_ASCII)); // CodecID
+        element(track, 0x63A2, OPUS_HEAD); // CodecPrivate
+        element(track, 0x56AA, number(6_500_000)); // CodecDelay
+        // Audio, SamplingFrequency
+        element(track, 0xE1, ByteBuffer.allocate(6).putShort((short) 0xB584)
+                .putFloat(48000f).array());
+        element(segment, 0x1654AE6B, element(0xAE, track.toByteArray())); // Tracks, TrackEntry
+
+        for (int i = 0; i < blocks.size(); i += BLOCKS_PER_CLUSTER) {
+            final ByteArrayOutputStream cluster = new ByteArrayOutputStream();
+            element(cluster, 0xE7, number((long) i * BLOCK_DURATION_MS)); // Timecode
+
+            for (int j = 0; j < BLOCKS_PER_CLUSTER && i + j < blocks.size(); j++) {
+                final byte[] data = blocks.get(i + j);
+                final ByteBuffer block = ByteBuffer.allocate(4 + data.length);
+                block.put((byte) 0x81); // track number
+                block.putShort((short) (j * BLOCK_DURATION_MS));
+                block.put((byte) 0x80); // keyframe
+                block.put(data);
+
+                if (j % 2 == 0) {
+                    element(cluster, 0xA3, block.array()); // SimpleBlock
+                } else {
+                    element(cluster, 0xA0, element(0xA1, block.array())); // BlockGroup, Block
+                }
+            }
+            element(segment, 0x1F43B675, cluster.toByteArray()); // Cluster
+        }
+
+        final ByteArrayOutputStream webm = new ByteArrayOutputStream();
+        element(webm, 0x1A45DFA3, ebml.toByteArray());
+        element(webm, 0x18538067, segment.toByteArray());
+        return webm.toByteArray();
+    }
+
+    private static byte[] number(final long value) {
+        return ByteBuffer.allocate(8).putLong(value).array();
+    }
+
+    private static byte[] element(final int id, final byte[] content) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        element(out, id, content);
+        return out.toByteArray();
+    }
+
+    private static void element(final ByteArrayOutputStream out, final int id,
+                                final byte[] content) {
+        // the id already contains its length marker
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            if ((id >>> shift) != 0) {
+                out.write(id >>> shift);
+            }
+        }
+
+        // the size is always written with 8 bytes
+        out.write(0x01);
+        for (int shift = 48; shift >= 0; shift -= 8) {
+            out.write((int) ((long) content.length >>> shift));
+        }
+        out.write(content, 0, content.length);
+    }
+}
@@ -0,0 +1,55 @@
+package us.shandian.giga.get;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import us.shandian.giga.util.Utility;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class DownloadMissionTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DownloadMission createMission() {
+        return new DownloadMission(new String[]{"https://example.com/video"}, null, 'v', null);
+    }
+
+    @Test
+    public void restoredMissionDeletesPostprocessingOutput() throws IOException {
+        final File output = folder.newFile(".video.mp4.tmp");
+        final File metadata = folder.newFile("mission");
+        final DownloadMission mission = createMission();
+        mission.psOutputWhileDownloading = output;
+
+        // the app is killed while the output is written, only the saved mission is left
+        Utility.writeToFile(metadata, mission);
+        final DownloadMission restored = Utility.readFromFile(metadata);
+
+        assertNotNull(restored);
+        assertEquals(output, restored.psOutputWhileDownloading);
+        restored.deletePostprocessingOutput();
+        assertFalse(output.exists());
+        assertNull(restored.psOutputWhileDownloading);
+    }
+
+    @Test
+    public void resetStateDeletesPostprocessingOutput() throws IOException {
+        final File output = folder.newFile(".video.mp4.tmp");
+        final DownloadMission mission = createMission();
+        mission.psOutputWhileDownloading = output;
+
+        // e.g. the download is restarted after the server sent different data
+        mission.resetState(true, false, DownloadMission.ERROR_NOTHING);
+
+        assertFalse(output.exists());
+        assertNull(mission.psOutputWhileDownloading);
+    }
+}
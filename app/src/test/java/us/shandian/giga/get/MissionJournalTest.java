@@ -0,0 +1,97 @@
+package us.shandian.giga.get;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MissionJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File metadata;
+    private MissionJournal journal;
+
+    @Before
+    public void setUp() throws IOException {
+        metadata = folder.newFile("mission");
+        journal = new MissionJournal(metadata);
+    }
+
+    private static DownloadMission createMission(final long generation) {
+        final DownloadMission mission = new DownloadMission(
+                new String[]{"https://example.com/video"}, null, 'v', null);
+        mission.journalGeneration = generation;
+        mission.blocks = new int[4];
+        return mission;
+    }
+
+    private void flush(final long generation, final long done, final long length)
+            throws IOException {
+        final DownloadMission progress = createMission(generation);
+        progress.done = done;
+        progress.length = length;
+        assertTrue(journal.flush(generation, journal.takePending(progress)));
+    }
+
+    @Test
+    public void replayAppliesFlushedRecords() throws IOException {
+        journal.reset(1);
+        journal.addBlock(0, -1);
+        journal.addBlock(1, 1000);
+        flush(1, 2000, 5000);
+        journal.addBlock(1, -1);
+        flush(1, 3000, 6000);
+
+        final DownloadMission mission = createMission(1);
+        MissionJournal.replay(metadata, mission);
+
+        assertArrayEquals(new int[]{-1, -1, 0, 0}, mission.blocks);
+        assertEquals(3000, mission.done);
+        assertEquals(6000, mission.length);
+    }
+
+    @Test
+    public void replayIgnoresTruncatedRecord() throws IOException {
+        journal.reset(1);
+        journal.addBlock(0, -1);
+        flush(1, 1000, 5000);
+
+        // the app was killed while appending the next batch
+        try (FileOutputStream out = new FileOutputStream(MissionJournal.getFile(metadata), true)) {
+            out.write(new byte[]{1, 0, 0, 0, 2, 0, 0});
+        }
+
+        final DownloadMission mission = createMission(1);
+        MissionJournal.replay(metadata, mission);
+
+        assertArrayEquals(new int[]{-1, 0, 0, 0}, mission.blocks);
+        assertEquals(1000, mission.done);
+        assertEquals(5000, mission.length);
+    }
+
+    @Test
+    public void recordsOfPreviousGenerationAreDiscarded() throws IOException {
+        journal.reset(1);
+        journal.addBlock(0, -1);
+        final byte[] records = journal.takePending(createMission(1));
+
+        // the metadata was written again before the records were flushed
+        journal.reset(2);
+        assertTrue(journal.flush(1, records));
+
+        final DownloadMission mission = createMission(2);
+        MissionJournal.replay(metadata, mission);
+
+        assertArrayEquals(new int[]{0, 0, 0, 0}, mission.blocks);
+        assertEquals(0, mission.done);
+    }
+}
@@ -0,0 +1,245 @@
+package us.shandian.giga.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.schabi.newpipe.streams.io.SharpStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import us.shandian.giga.io.CircularFileWriter.OffsetChecker;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+public class MappedFileStreamTest {
+    private static final int HEADER_SIZE = 64 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void overwritesAndAppendsLikeFileStream() throws IOException {
+        final File file = folder.newFile();
+        final byte[] initial = randomBytes(3 * 1024 * 1024, 1);
+        Files.write(file.toPath(), initial);
+        final byte[] expected = Arrays.copyOf(initial, 5 * 1024 * 1024);
+        int expectedLength = initial.length;
+
+        final Random random = new Random(2);
+        try (MappedFileStream stream = new MappedFileStream(file)) {
+            for (int i = 0; i < 2000; i++) {
+                final int offset = random.nextInt(expectedLength + 1);
+                final byte[] data = randomBytes(1 + random.nextInt(64 * 1024), i);
+                final int length = Math.min(data.length, expected.length - offset);
+
+                stream.seek(offset);
+                if (random.nextBoolean()) {
+                    stream.write(data, 0, length);
+                    System.arraycopy(data, 0, expected, offset, length);
+                    expectedLength = Math.max(expectedLength, offset + length);
+                } else {
+                    final byte[] read = new byte[length];
+                    int total = 0;
+                    while (total < length) {
+                        final int amount = stream.read(read, total, length - total);
+                        if (amount < 0) {
+                            break;
+                        }
+                        total += amount;
+                    }
+                    assertEquals(Math.min(length, expectedLength - offset), total);
+                    assertArrayEquals(Arrays.copyOfRange(expected, offset, offset + total),
+                            Arrays.copyOf(read, total));
+                }
+            }
+            assertEquals(expectedLength, stream.length());
+        }
+
+        assertArrayEquals(Arrays.copyOf(expected, expectedLength),
+                Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void setLengthTruncatesAndExtends() throws IOException {
+        final File file = folder.newFile();
+        Files.write(file.toPath(), randomBytes(1024 * 1024, 3));
+
+        try (MappedFileStream stream = new MappedFileStream(file)) {
+            stream.seek(1000);
+            assertEquals(file.length() - 1000, stream.available());
+
+            stream.setLength(2000);
+            assertEquals(1000, stream.available());
+            stream.seek(2000);
+            assertEquals(-1, stream.read());
+
+            stream.setLength(4000);
+            stream.write((byte) 7);
+            stream.seek(2000);
+            assertEquals(7, stream.read());
+            assertEquals(0, stream.read());
+        }
+
+        assertEquals(4000, file.length());
+    }
+
+    @Test
+    public void seekingBackAndForthReusesTheWindows() throws IOException {
+        final File file = folder.newFile();
+        Files.write(file.toPath(), randomBytes(32 * 1024 * 1024, 7));
+
+        try (MappedFileStream stream = new MappedFileStream(file)) {
+            for (int i = 0; i < 100; i++) {
+                stream.seek(i);
+                stream.read();
+                stream.seek(20 * 1024 * 1024 + i);
+                stream.write((byte) i);
+            }
+            assertEquals(2, stream.mappedWindows);
+
+            // a third region drops the least recently used window
+            stream.seek(10 * 1024 * 1024);
+            stream.read();
+            stream.seek(20 * 1024 * 1024);
+            stream.read();
+            assertEquals(3, stream.mappedWindows);
+            stream.seek(0);
+            stream.read();
+            assertEquals(4, stream.mappedWindows);
+        }
+    }
+
+    @Test
+    public void appendsAfterTheWindowIsMapped() throws IOException {
+        final File file = folder.newFile();
+        final byte[] data = randomBytes(3000, 8);
+
+        try (MappedFileStream stream = new MappedFileStream(file)) {
+            stream.write(data, 0, 1000);
+            stream.seek(10);
+            assertEquals(data[10] & 0xFF, stream.read());
+
+            // the window mapped the first 1000 bytes only
+            stream.seek(1000);
+            stream.write(data, 1000, 2000);
+            stream.seek(2500);
+            assertEquals(data[2500] & 0xFF, stream.read());
+        }
+
+        assertArrayEquals(data, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void muxInPlaceProducesTheSameFile() throws IOException {
+        final File file = folder.newFile();
+        final byte[] sources = randomBytes(HEADER_SIZE + 4 * 1024 * 1024, 4);
+
+        Files.write(file.toPath(), sources);
+        mux(file, sources.length - 1024 * 1024, sources.length, FileStream::new);
+        final byte[] expected = Files.readAllBytes(file.toPath());
+
+        Files.write(file.toPath(), sources);
+        mux(file, sources.length - 1024 * 1024, sources.length, MappedFileStream::new);
+
+        assertArrayEquals(expected, Files.readAllBytes(file.toPath()));
+    }
+
+    /**
+     * Compares the time taken by the post-processing in place with each stream, on a big file.
+     * Skipped unless the {@code BENCHMARK} environment variable is {@code true}:
+     * <pre>
+     * BENCHMARK=true ./gradlew testDebugUnitTest --tests us.shandian.giga.io.MappedFileStreamTest
+     * </pre>
+     */
+    @Test
+    public void muxBenchmark() throws IOException {
+        assumeTrue("true".equals(System.getenv("BENCHMARK")));
+
+        final File file = folder.newFile();
+        final byte[] sources = randomBytes(HEADER_SIZE + 128 * 1024 * 1024, 5);
+        final long videoEnd = sources.length - 32 * 1024 * 1024;
+
+        for (final boolean mapped : new boolean[]{false, true, false, true}) {
+            Files.write(file.toPath(), sources);
+
+            final long start = System.nanoTime();
+            mux(file, videoEnd, sources.length, mapped ? MappedFileStream::new : FileStream::new);
+            final long millis = (System.nanoTime() - start) / 1_000_000;
+
+            System.out.println((mapped ? "MappedFileStream: " : "FileStream: ") + millis + " ms");
+        }
+    }
+
+    private interface StreamFactory {
+        SharpStream open(File file) throws IOException;
+    }
+
+    // interleaves the two sources in small chunks, like the muxers do, patching the header from
+    // time to time. The output is written over the sources, as done by Postprocessing.run()
+    private void mux(final File file, final long videoEnd, final long audioEnd,
+                     final StreamFactory factory) throws IOException {
+        final ChunkFileInputStream[] sources = {
+                new ChunkFileInputStream(factory.open(file), HEADER_SIZE, videoEnd, null),
+                new ChunkFileInputStream(factory.open(file), videoEnd, audioEnd, null)
+        };
+        final OffsetChecker checker = () -> {
+            for (final ChunkFileInputStream source : sources) {
+                if (source.available() > 0) {
+                    return source.getFilePointer() - 1;
+                }
+            }
+            return -1;
+        };
+
+        final File temp = new File(folder.getRoot(), "mux.tmp");
+        final Random random = new Random(6);
+        final byte[] buffer = new byte[16 * 1024];
+
+        try (CircularFileWriter out = new CircularFileWriter(factory.open(file), temp, checker)) {
+            out.write(new byte[HEADER_SIZE]);
+            long end = HEADER_SIZE;
+            int chunks = 0;
+
+            while (sources[0].available() > 0 || sources[1].available() > 0) {
+                final boolean audio = sources[1].available() > 0
+                        && (chunks % 4 == 3 || sources[0].available() < 1);
+                final ChunkFileInputStream source = audio ? sources[1] : sources[0];
+                final int read = source.read(buffer, 0, 1 + random.nextInt(buffer.length));
+
+                out.write(ByteBuffer.allocate(8).putInt(chunks).putInt(read).array());
+                out.write(buffer, 0, read);
+                end += 8 + read;
+                chunks++;
+
+                if (chunks % 64 == 0) {
+                    out.seek((chunks / 64 * 4) % HEADER_SIZE);
+                    out.write(ByteBuffer.allocate(4).putInt(chunks).array());
+                    out.seek(end);
+                }
+            }
+
+            out.finalizeFile();
+        } finally {
+            for (final ChunkFileInputStream source : sources) {
+                if (!source.isClosed()) {
+                    source.close();
+                }
+            }
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+        }
+    }
+
+    private static byte[] randomBytes(final int length, final long seed) {
+        final byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
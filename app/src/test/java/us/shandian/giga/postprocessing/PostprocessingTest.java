@@ -0,0 +1,137 @@
+package us.shandian.giga.postprocessing;
+
+import android.net.Uri;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.schabi.newpipe.streams.io.SharpStream;
+import org.schabi.newpipe.streams.io.StoredFileHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import us.shandian.giga.get.DownloadMission;
+import us.shandian.giga.io.FileStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+public class PostprocessingTest {
+    private static final byte[] FIRST = "first source ".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] LAST = "last source".getBytes(StandardCharsets.UTF_8);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private StoredFileHelper storage;
+
+    @Before
+    public void setUp() throws IOException {
+        file = folder.newFile("video.mp4");
+        try (FileStream out = new FileStream(file)) {
+            out.write(FIRST);
+            out.write(LAST);
+        }
+
+        final Uri uri = mock(Uri.class);
+        when(uri.getPath()).thenReturn(file.getPath());
+        storage = mock(StoredFileHelper.class);
+        when(storage.getUri()).thenReturn(uri);
+        when(storage.getStream()).thenAnswer(invocation -> new FileStream(file));
+    }
+
+    private DownloadMission createMission(final Postprocessing algorithm) {
+        final DownloadMission mission = spy(new DownloadMission(
+                new String[]{"https://example.com/video", "https://example.com/audio"},
+                storage, 'v', algorithm));
+        mission.offsets = new long[]{0, FIRST.length};
+        // the length of the last resource
+        mission.length = LAST.length;
+        return mission;
+    }
+
+    @Test
+    public void runWhileDownloadingWritesHiddenOutput() throws IOException {
+        final Postprocessing algorithm = new ConcatAlgorithm(false);
+        final DownloadMission mission = createMission(algorithm);
+        doNothing().when(mission).waitForDownloaded(anyLong());
+
+        final File output = algorithm.runWhileDownloading(mission);
+
+        assertNotNull(output);
+        assertEquals(Postprocessing.getOutputWhileDownloading(mission), output);
+        assertEquals("." + file.getName() + ".tmp", output.getName());
+        // the mission file is left untouched until the download is finished
+        assertArrayEquals(Files.readAllBytes(file.toPath()), Files.readAllBytes(output.toPath()));
+    }
+
+    @Test
+    public void runWhileDownloadingDeletesOutputOnFailure() throws IOException {
+        final Postprocessing algorithm = new ConcatAlgorithm(true);
+        final DownloadMission mission = createMission(algorithm);
+        doNothing().when(mission).waitForDownloaded(anyLong());
+
+        assertNull(algorithm.runWhileDownloading(mission));
+        assertFalse(Postprocessing.getOutputWhileDownloading(mission).exists());
+    }
+
+    @Test
+    public void runWhileDownloadingDeletesOutputWhenStopped() throws IOException {
+        final Postprocessing algorithm = new ConcatAlgorithm(false);
+        final DownloadMission mission = createMission(algorithm);
+        // the download is paused while the last source is processed
+        doThrow(new InterruptedIOException("the download was stopped"))
+                .when(mission).waitForDownloaded(anyLong());
+
+        assertNull(algorithm.runWhileDownloading(mission));
+        assertFalse(Postprocessing.getOutputWhileDownloading(mission).exists());
+    }
+
+    /**
+     * Copies the sources one after the other, reading each of them only once.
+     */
+    private static final class ConcatAlgorithm extends Postprocessing {
+        private final boolean fail;
+
+        ConcatAlgorithm(final boolean fail) {
+            super(false, true, "concat");
+            this.fail = fail;
+        }
+
+        @Override
+        boolean readsSourcesOnce() {
+            return true;
+        }
+
+        @Override
+        int process(final SharpStream out, final SharpStream... sources) throws IOException {
+            final byte[] buffer = new byte[4];
+            for (final SharpStream source : sources) {
+                while (source.available() > 0) {
+                    final int read = source.read(buffer);
+                    out.write(buffer, 0, read);
+                }
+            }
+
+            if (fail) {
+                throw new IOException("the output is invalid");
+            }
+            return OK_RESULT;
+        }
+    }
+}